@@ -0,0 +1,51 @@
+package dev.startupstack.storageservice;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.core.Response;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.startupstack.storageservice.utils.WebResponseBuilder;
+
+/**
+ * Benchmarks building error responses, which every failed request goes
+ * through.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseBenchmark {
+
+    ErrorMapper errorMapper;
+
+    @Setup
+    public void setup() {
+        java.util.logging.Logger.getLogger("").setLevel(Level.OFF);
+        this.errorMapper = new ErrorMapper();
+    }
+
+    @Benchmark
+    public Response webResponseBuilder() {
+        return WebResponseBuilder.build("Object download: FAILED - object not found", 404);
+    }
+
+    @Benchmark
+    public Response errorMapper() {
+        return this.errorMapper.toResponse(new NotFoundException("Repository 'benchmark' not found"));
+    }
+}
@@ -0,0 +1,361 @@
+package dev.startupstack.storageservice.objects;
+
+import static dev.startupstack.storageservice.Constants.METADATA_TENANT_ID;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
+
+import com.azure.storage.blob.BlobAsyncClient;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerAsyncClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobContainerProperties;
+import com.azure.storage.blob.models.BlobDownloadAsyncResponse;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.jboss.resteasy.plugins.providers.RegisterBuiltin;
+import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInputImpl;
+import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+import org.jboss.resteasy.spi.AsyncStreamingOutput;
+import org.jboss.resteasy.spi.ResteasyProviderFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import dev.startupstack.storageservice.utils.StorageMetrics;
+import dev.startupstack.storageservice.utils.TransferExecutor;
+import dev.startupstack.storageservice.utils.UploadResponseBuilder;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import dev.startupstack.storageservice.utils.azure.RepositoryMetadataCache;
+import io.smallrye.metrics.MetricsRegistryImpl;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Benchmarks the upload and download paths of the objects API of the Azure
+ * backend, with the storage SDK clients mocked so only our own request
+ * handling is measured: multipart parsing, filename extraction, block staging
+ * by the {@link dev.startupstack.storageservice.utils.azure.BlockBlobUploader},
+ * tenant validation through the {@link RepositoryMetadataCache}, ranged reads
+ * and response building. The mocks answer right away with buffers of the size
+ * Azure Storage streams, so the numbers include the mock dispatch but no
+ * network. The object caches and request coalescing are off, as they are by
+ * default, so every download reads from the mocked client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ObjectsBenchmark {
+
+    static final String REPOSITORY = "benchmark";
+    static final String OBJECT_NAME = "object.bin";
+    static final String TENANT_ID = "benchmark-tenant";
+    static final String BOUNDARY = "benchmark-boundary";
+
+    /**
+     * Blocks are staged from this size on, so the larger object is uploaded in
+     * blocks and the smaller one in a single request
+     */
+    static final int BLOCK_SIZE = 256 * 1024;
+
+    /**
+     * The size of the buffers Azure Storage streams downloads in
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    @Param({ "1024", "1048576" })
+    int objectSize;
+
+    ObjectsServiceAzureBlobImpl service;
+    TransferExecutor transferExecutor;
+    byte[] data;
+    Providers providers;
+    MediaType multipartType;
+    byte[] multipartBody;
+    MultivaluedMap<String, String> partHeaders;
+    HttpHeaders noHeaders;
+    HttpHeaders rangeHeaders;
+
+    @Setup
+    public void setup() throws IOException {
+        java.util.logging.Logger.getLogger("").setLevel(Level.OFF);
+
+        this.data = new byte[this.objectSize];
+        new Random(42).nextBytes(this.data);
+
+        MetricRegistry registry = new MetricsRegistryImpl();
+        AzureCallMetrics azureCalls = new AzureCallMetrics(registry);
+        this.transferExecutor = new TransferExecutor(4);
+
+        this.service = new ObjectsServiceAzureBlobImpl();
+        this.service.uploadBlockSize = BLOCK_SIZE;
+        this.service.uploadMaxConcurrency = 4;
+        this.service.uploadSingleShotThreshold = BLOCK_SIZE;
+        this.service.uploadMaxParts = 1000;
+        this.service.uploadMaxPartsConcurrency = 8;
+        this.service.downloadChunkSize = 8 * 1024 * 1024;
+        this.service.downloadMaxConcurrency = 4;
+        this.service.downloadParallelThreshold = 64 * 1024 * 1024;
+        this.service.defaultCacheControl = "private, no-cache";
+        this.service.compressionLevel = 6;
+        this.service.jwt = new TenantToken(TENANT_ID);
+        this.service.transferExecutor = this.transferExecutor;
+        this.service.azureCalls = azureCalls;
+        this.service.storageMetrics = new StorageMetrics(registry);
+        this.service.repositoryMetadataCache = new RepositoryMetadataCache(10_000, 300, azureCalls, registry);
+        this.service.objectInfoCache = new ObjectInfoCache(10_000, 60, false, registry);
+        this.service.diskCache = new ObjectDiskCache();
+        this.service.diskCache.registry = registry;
+        this.service.diskCache.initialize();
+        this.service.memoryCache = new ObjectMemoryCache();
+        this.service.memoryCache.registry = registry;
+        this.service.memoryCache.initialize();
+        this.service.coalescer = new ObjectRequestCoalescer();
+        this.service.coalescer.azureCalls = azureCalls;
+        this.service.coalescer.initialize();
+        this.service.blobStorageClient = blobServiceClient();
+        this.service.blobStorageAsyncClient = blobServiceAsyncClient();
+
+        ResteasyProviderFactory factory = ResteasyProviderFactory.newInstance();
+        RegisterBuiltin.register(factory);
+        this.providers = factory;
+        this.multipartType = MediaType.valueOf(MediaType.MULTIPART_FORM_DATA + "; boundary=" + BOUNDARY);
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"object\"; filename=\"" + OBJECT_NAME + "\"\r\n"
+                + "Content-Type: " + MediaType.APPLICATION_OCTET_STREAM + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+        body.write(this.data);
+        body.write(("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        this.multipartBody = body.toByteArray();
+
+        this.partHeaders = new MultivaluedHashMap<>();
+        this.partHeaders.putSingle("Content-Disposition",
+                "form-data; name=\"object\"; filename=\"" + OBJECT_NAME + "\"");
+
+        this.noHeaders = new ResteasyHttpHeaders(new MultivaluedHashMap<>());
+        MultivaluedMap<String, String> range = new MultivaluedHashMap<>();
+        range.putSingle("Range", "bytes=0-1023");
+        this.rangeHeaders = new ResteasyHttpHeaders(range);
+    }
+
+    /**
+     * A client of a repository owned by the tenant, that reads every block it
+     * is asked to store
+     */
+    BlobServiceClient blobServiceClient() {
+        BlobServiceClient client = stub(BlobServiceClient.class);
+        BlobContainerClient container = stub(BlobContainerClient.class);
+        BlobClient blob = stub(BlobClient.class);
+        BlockBlobClient blockBlob = stub(BlockBlobClient.class);
+        BlobContainerProperties properties = containerProperties();
+
+        when(client.getBlobContainerClient(REPOSITORY)).thenReturn(container);
+        when(container.getProperties()).thenReturn(properties);
+        when(container.getBlobClient(anyString())).thenReturn(blob);
+        when(blob.getBlockBlobClient()).thenReturn(blockBlob);
+        when(blockBlob.uploadWithResponse(any(), anyLong(), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    ((InputStream) invocation.getArgument(0)).transferTo(OutputStream.nullOutputStream());
+                    return null;
+                });
+        doAnswer(invocation -> {
+            ((InputStream) invocation.getArgument(1)).transferTo(OutputStream.nullOutputStream());
+            return null;
+        }).when(blockBlob).stageBlock(anyString(), any(), anyLong());
+        return client;
+    }
+
+    /**
+     * An async client of the same repository, that streams ranges of the object
+     * in buffers of {@value #BUFFER_SIZE} bytes
+     */
+    BlobServiceAsyncClient blobServiceAsyncClient() {
+        BlobServiceAsyncClient client = stub(BlobServiceAsyncClient.class);
+        BlobContainerAsyncClient container = stub(BlobContainerAsyncClient.class);
+        BlobAsyncClient blob = stub(BlobAsyncClient.class);
+        BlobContainerProperties containerProperties = containerProperties();
+        BlobProperties properties = stub(BlobProperties.class);
+        OffsetDateTime lastModified = OffsetDateTime.now(ZoneOffset.UTC);
+        when(properties.getETag()).thenReturn("\"0x8D7C1E5A7B4F3A2\"");
+        when(properties.getBlobSize()).thenReturn((long) this.objectSize);
+        when(properties.getContentType()).thenReturn(MediaType.APPLICATION_OCTET_STREAM);
+        when(properties.getCreationTime()).thenReturn(lastModified);
+        when(properties.getLastModified()).thenReturn(lastModified);
+        when(properties.getMetadata()).thenReturn(Map.of(METADATA_TENANT_ID, TENANT_ID));
+
+        when(client.getBlobContainerAsyncClient(REPOSITORY)).thenReturn(container);
+        when(container.getProperties()).thenReturn(Mono.just(containerProperties));
+        when(container.getBlobAsyncClient(OBJECT_NAME)).thenReturn(blob);
+        when(blob.getProperties()).thenReturn(Mono.just(properties));
+        when(blob.downloadWithResponse(any(), any(), any(), anyBoolean())).thenAnswer(invocation -> {
+            BlobRange range = invocation.getArgument(0);
+            long offset = range == null ? 0 : range.getOffset();
+            long count = range == null || range.getCount() == null ? this.objectSize - offset : range.getCount();
+            Flux<ByteBuffer> body = Flux.range(0, (int) ((count + BUFFER_SIZE - 1) / BUFFER_SIZE))
+                    .map(i -> ByteBuffer.wrap(this.data, (int) offset + i * BUFFER_SIZE,
+                            (int) Math.min(BUFFER_SIZE, count - (long) i * BUFFER_SIZE)));
+            return Mono.just(new BlobDownloadAsyncResponse(null, 206, null, body, null));
+        });
+        return client;
+    }
+
+    /**
+     * A mock that does not record its invocations, which would otherwise pile up
+     * on the heap for the whole run
+     */
+    static <T> T stub(Class<T> type) {
+        return mock(type, withSettings().stubOnly());
+    }
+
+    static BlobContainerProperties containerProperties() {
+        BlobContainerProperties properties = stub(BlobContainerProperties.class);
+        when(properties.getMetadata()).thenReturn(Map.of(METADATA_TENANT_ID, TENANT_ID));
+        return properties;
+    }
+
+    @TearDown
+    public void teardown() {
+        this.transferExecutor.getExecutorService().shutdownNow();
+    }
+
+    @Benchmark
+    public Response upload() throws IOException {
+        MultipartFormDataInputImpl input = new MultipartFormDataInputImpl(this.multipartType, this.providers);
+        input.parse(new ByteArrayInputStream(this.multipartBody));
+        return this.service.uploadObject(REPOSITORY, input);
+    }
+
+    @Benchmark
+    public Response download() throws IOException {
+        return stream(this.service.downloadObject(REPOSITORY, OBJECT_NAME, this.noHeaders));
+    }
+
+    @Benchmark
+    public Response downloadRange() throws IOException {
+        return stream(this.service.downloadObject(REPOSITORY, OBJECT_NAME, this.rangeHeaders));
+    }
+
+    @Benchmark
+    public Response objectInfo() {
+        return this.service.getObjectInfo(REPOSITORY, OBJECT_NAME, this.noHeaders);
+    }
+
+    @Benchmark
+    public String validateTenantID() {
+        return this.service.validateTenantID(REPOSITORY, OBJECT_NAME);
+    }
+
+    @Benchmark
+    public String getFilenameFromHeaders() {
+        return UploadResponseBuilder.getFilename(this.partHeaders);
+    }
+
+    static Response stream(Response response) throws IOException {
+        ((AsyncStreamingOutput) response.getEntity()).asyncWrite(new DiscardingOutputStream()).toCompletableFuture()
+                .join();
+        return response;
+    }
+
+    /**
+     * A client connection that accepts every write right away
+     */
+    static class DiscardingOutputStream extends AsyncOutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+        }
+
+        @Override
+        public CompletionStage<Void> asyncFlush() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Void> asyncWrite(byte[] bytes, int offset, int length) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * A token that only carries the tenant id claim
+     */
+    static class TenantToken implements JsonWebToken {
+
+        private final String tenantID;
+
+        TenantToken(String tenantID) {
+            this.tenantID = tenantID;
+        }
+
+        @Override
+        public String getName() {
+            return "benchmark";
+        }
+
+        @Override
+        public Set<String> getClaimNames() {
+            return Collections.singleton(METADATA_TENANT_ID);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getClaim(String claimName) {
+            return METADATA_TENANT_ID.equals(claimName) ? (T) this.tenantID : null;
+        }
+    }
+}
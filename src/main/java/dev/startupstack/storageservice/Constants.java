@@ -25,6 +25,16 @@ public class Constants {
     public static final String REPOSITORIES_URL = API_URL_PREFIX + "/repositories";
 
     public static final String METADATA_TENANT_ID = "tenant_id";
+    public static final String METADATA_CACHE_CONTROL = "cache_control";
+    public static final String METADATA_COMPRESSION = "compression";
+    public static final String METADATA_UNCOMPRESSED_SIZE = "uncompressed_size";
+    public static final String METADATA_DEDUPLICATION = "deduplication";
+    public static final String METADATA_CONTENT_MD5 = "content_md5";
+    public static final String METADATA_CONTENT_CRC32C = "content_crc32c";
+
+    public static final String BACKEND_AZURE = "azure";
+    public static final String BACKEND_FILESYSTEM = "filesystem";
+    public static final String BACKEND_MEMORY = "memory";
 
     public static final String ROLE_TENANT_USER = "tenant_user";
     public static final String ROLE_TENANT_ADMIN = "tenant_admin";
@@ -0,0 +1,494 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+import dev.startupstack.storageservice.utils.TransferExecutor;
+
+/**
+ * The bookkeeping shared by the {@link ObjectDiskCache} and the
+ * {@link ObjectMemoryCache}. Entries are keyed by repository and object name
+ * and remember the ETag they were filled with, so a lookup only hits when the
+ * object in storage is unchanged. The cache is bounded by the total bytes of
+ * its entries and evicts the least recently used ones first.
+ * 
+ * Entries are reference counted. The cache holds one reference and every hit
+ * holds another until its response was sent, the storage of an entry is only
+ * freed once it was removed from the cache and all hits were closed.
+ */
+public abstract class ObjectCache<E extends ObjectCache.Entry> {
+
+    private static final Logger LOG = Logger.getLogger(ObjectCache.class);
+
+    /**
+     * Writes the complete object to the given output stream. A filler that
+     * holds resources releases them when closed, which the cache does once the
+     * fill is done or was not started.
+     */
+    @FunctionalInterface
+    public interface ObjectFiller extends AutoCloseable {
+        void write(OutputStream output) throws IOException;
+
+        @Override
+        default void close() {
+        }
+    }
+
+    @Inject
+    TransferExecutor transferExecutor;
+
+    @Inject
+    MetricRegistry registry;
+
+    Counter hits;
+
+    Counter misses;
+
+    private final String name;
+
+    private final Map<String, E> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Set<String> filling = ConcurrentHashMap.newKeySet();
+
+    private long size;
+
+    ObjectCache(String name) {
+        this.name = name;
+    }
+
+    public abstract boolean isEnabled();
+
+    abstract long getMaxBytes();
+
+    abstract long getMaxObjectSize();
+
+    /**
+     * Creates the fill of an object that is cacheable and not being filled yet
+     *
+     * @return Fill The fill, or null if the object is not admitted
+     */
+    abstract Fill createFill(String key, String etag, long objectSize) throws IOException;
+
+    void registerMetrics() {
+        String prefix = "object_" + this.name + "_cache";
+        this.hits = this.registry.counter(prefix + "_hits");
+        this.misses = this.registry.counter(prefix + "_misses");
+        this.registry.register(Metadata.builder().withName(prefix + "_hit_ratio").withType(MetricType.GAUGE)
+                .withDescription("Share of cacheable downloads served from the " + this.name + " cache").build(),
+                (Gauge<Double>) this::getHitRatio);
+        this.registry.register(Metadata.builder().withName(prefix + "_bytes").withType(MetricType.GAUGE)
+                .withUnit(MetricUnits.BYTES).withDescription("Bytes of objects in the " + this.name + " cache")
+                .build(), (Gauge<Long>) this::getSize);
+    }
+
+    /**
+     * Looks up a cached object and takes a reference to it. An entry filled
+     * with a different ETag is stale and dropped. Objects too large to be
+     * cached are not counted as a miss.
+     *
+     * @param etag       The current ETag of the object in storage
+     * @param objectSize The current size of the object in storage
+     * @return E The entry, which has to be released, or null on a miss
+     */
+    E lookup(String repository, String objectName, String etag, long objectSize) {
+        if (!isCacheable(etag, objectSize)) {
+            return null;
+        }
+        String key = key(repository, objectName);
+        E entry;
+        E stale = null;
+        synchronized (this) {
+            entry = this.entries.get(key);
+            if (entry != null && !entry.etag.equals(etag)) {
+                stale = this.entries.remove(key);
+                this.size -= stale.size;
+                entry = null;
+            }
+            if (entry != null) {
+                entry.retain();
+            }
+        }
+        if (stale != null) {
+            stale.release();
+        }
+        if (entry == null) {
+            this.misses.inc();
+        } else {
+            this.hits.inc();
+        }
+        return entry;
+    }
+
+    /**
+     * Starts filling the cache with an object that the caller is about to read
+     * in full anyway, so it does not have to be downloaded a second time. The
+     * object is only added once all of it was written and
+     * {@link Fill#complete()} was called.
+     *
+     * @return Fill The fill to write the object to, which has to be closed, or
+     *         null if the object is not cacheable or already being filled
+     */
+    public Fill startFill(String repository, String objectName, String etag, long objectSize) {
+        if (!isCacheable(etag, objectSize)) {
+            return null;
+        }
+        String key = key(repository, objectName);
+        if (!this.filling.add(key)) {
+            return null;
+        }
+        try {
+            Fill fill = createFill(key, etag, objectSize);
+            if (fill != null) {
+                return fill;
+            }
+        } catch (IOException | RuntimeException exc) {
+            LOG.warnf("Filling %s cache with '%s': FAILED - %s", this.name, key, exc.getMessage());
+        }
+        this.filling.remove(key);
+        return null;
+    }
+
+    /**
+     * Fills the cache with an object in the background, unless it is not
+     * cacheable or already being filled. The filler should only write the
+     * object if it still has the given ETag, and is closed in any case.
+     */
+    public void fill(String repository, String objectName, String etag, long objectSize, ObjectFiller filler) {
+        Fill fill = startFill(repository, objectName, etag, objectSize);
+        if (fill == null) {
+            filler.close();
+            return;
+        }
+        try {
+            this.transferExecutor.getExecutorService().submit(() -> {
+                try (Fill running = fill; ObjectFiller source = filler) {
+                    source.write(running.output);
+                    running.complete();
+                } catch (IOException | RuntimeException exc) {
+                    LOG.warnf("Filling %s cache with '%s': FAILED - %s", this.name, fill.key, exc.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException exc) {
+            fill.close();
+            filler.close();
+        }
+    }
+
+    public void invalidate(String repository, String objectName) {
+        E entry;
+        synchronized (this) {
+            entry = this.entries.remove(key(repository, objectName));
+            if (entry != null) {
+                this.size -= entry.size;
+            }
+        }
+        if (entry != null) {
+            entry.release();
+        }
+    }
+
+    public void invalidateRepository(String repository) {
+        String prefix = key(repository, "");
+        List<E> removed = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, E>> iterator = this.entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, E> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    iterator.remove();
+                    this.size -= entry.getValue().size;
+                    removed.add(entry.getValue());
+                }
+            }
+        }
+        removed.forEach(Entry::release);
+    }
+
+    /**
+     * @return long The bytes of the objects in the cache, not counting evicted
+     *         objects that are still being read
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    public double getHitRatio() {
+        long hitCount = this.hits.getCount();
+        long total = hitCount + this.misses.getCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    boolean isCacheable(String etag, long objectSize) {
+        return isEnabled() && etag != null && objectSize <= getMaxObjectSize() && objectSize <= getMaxBytes();
+    }
+
+    /**
+     * Adds a completed object, evicting the least recently used objects while
+     * the cache holds more than max-bytes
+     */
+    void put(String key, E entry) {
+        List<E> evicted = new ArrayList<>();
+        synchronized (this) {
+            E previous = this.entries.put(key, entry);
+            this.size += entry.size;
+            if (previous != null) {
+                this.size -= previous.size;
+                evicted.add(previous);
+            }
+            Iterator<E> eldest = this.entries.values().iterator();
+            while (this.size > getMaxBytes() && eldest.hasNext()) {
+                E next = eldest.next();
+                eldest.remove();
+                this.size -= next.size;
+                evicted.add(next);
+            }
+        }
+        evicted.forEach(Entry::release);
+        LOG.debugf("Filling %s cache with '%s' (%d bytes): OK", this.name, key, entry.size);
+    }
+
+    /**
+     * Evicts the least recently used object
+     *
+     * @return boolean false if the cache was empty
+     */
+    boolean evictEldest() {
+        E eldest;
+        synchronized (this) {
+            Iterator<E> iterator = this.entries.values().iterator();
+            if (!iterator.hasNext()) {
+                return false;
+            }
+            eldest = iterator.next();
+            iterator.remove();
+            this.size -= eldest.size;
+        }
+        eldest.release();
+        return true;
+    }
+
+    static String key(String repository, String objectName) {
+        return repository + "/" + objectName;
+    }
+
+    /**
+     * A cached object, whose storage is freed once the last reference to it
+     * was released
+     */
+    abstract static class Entry {
+        final String etag;
+        final long size;
+        private int references = 1;
+
+        Entry(String etag, long size) {
+            this.etag = etag;
+            this.size = size;
+        }
+
+        synchronized void retain() {
+            this.references++;
+        }
+
+        void release() {
+            boolean free;
+            synchronized (this) {
+                free = --this.references == 0;
+            }
+            if (free) {
+                free();
+            }
+        }
+
+        abstract void free();
+    }
+
+    /**
+     * An object being written to the cache. A fill that is closed before it was
+     * completed is dropped.
+     */
+    public abstract static class Fill implements AutoCloseable {
+        final ObjectCache<?> cache;
+        final String key;
+        final String etag;
+        final long objectSize;
+        final OutputStream output;
+        private long written;
+        private boolean failed;
+        private boolean closed;
+
+        Fill(ObjectCache<?> cache, String key, String etag, long objectSize) {
+            this.cache = cache;
+            this.key = key;
+            this.etag = etag;
+            this.objectSize = objectSize;
+            this.output = new OutputStream() {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    Fill.this.write(bytes, offset, length);
+                    written += length;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+            };
+        }
+
+        abstract void write(byte[] bytes, int offset, int length) throws IOException;
+
+        /**
+         * Adds the object, all of which was written, to the cache
+         */
+        abstract void finish() throws IOException;
+
+        /**
+         * Frees what was written so far
+         */
+        abstract void discard();
+
+        /**
+         * Wraps the output of a download so everything written to it is also
+         * written to the cache. Failing to write to the cache drops the fill,
+         * but does not fail the download.
+         */
+        public OutputStream tee(OutputStream download) {
+            return new FilterOutputStream(download) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                    append(bytes, offset, length);
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // The download is owned by the caller
+                    flush();
+                }
+            };
+        }
+
+        /**
+         * The non-blocking counterpart of {@link #tee(OutputStream)}. Every
+         * buffer is appended to the fill before it is written to the download,
+         * writing it to the page cache or memory is short enough not to move off
+         * the calling thread.
+         */
+        public AsyncOutputStream tee(AsyncOutputStream download) {
+            return new AsyncOutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    write(new byte[] { (byte) b }, 0, 1);
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    download.write(bytes, offset, length);
+                    append(bytes, offset, length);
+                }
+
+                @Override
+                public CompletionStage<Void> asyncFlush() {
+                    return download.asyncFlush();
+                }
+
+                @Override
+                public CompletionStage<Void> asyncWrite(byte[] bytes, int offset, int length) {
+                    append(bytes, offset, length);
+                    return download.asyncWrite(bytes, offset, length);
+                }
+            };
+        }
+
+        /**
+         * Appends bytes of the object. Failing to write to the cache drops the
+         * fill.
+         */
+        public void append(byte[] bytes, int offset, int length) {
+            if (this.failed || this.closed) {
+                return;
+            }
+            try {
+                this.output.write(bytes, offset, length);
+            } catch (IOException exc) {
+                LOG.warnf("Filling %s cache with '%s': FAILED - %s", this.cache.name, this.key, exc.getMessage());
+                this.failed = true;
+            }
+        }
+
+        /**
+         * Adds the object to the cache if all of it was written. Failing to do
+         * so only drops the fill.
+         */
+        public void complete() {
+            if (this.failed || this.closed) {
+                return;
+            }
+            this.closed = true;
+            try {
+                if (this.written != this.objectSize) {
+                    throw new IOException("Expected " + this.objectSize + " bytes but got " + this.written);
+                }
+                finish();
+            } catch (IOException exc) {
+                LOG.warnf("Filling %s cache with '%s': FAILED - %s", this.cache.name, this.key, exc.getMessage());
+                discard();
+            } finally {
+                this.cache.filling.remove(this.key);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            discard();
+            this.cache.filling.remove(this.key);
+        }
+    }
+}
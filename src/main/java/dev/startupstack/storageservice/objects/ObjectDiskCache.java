@@ -0,0 +1,342 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.RangeWriter;
+import dev.startupstack.storageservice.utils.TransferExecutor;
+import dev.startupstack.storageservice.utils.filesystem.FilesystemStorage;
+
+/**
+ * A read-through cache of object contents on local disk, for objects that are
+ * downloaded over and over again, see {@link ObjectCache}.
+ * 
+ * A download that reads a missed object in full fills the cache with the bytes
+ * it sends anyway, see {@link #startFill}. Other misses are filled by a
+ * download in the background. Objects are written to a temporary file and
+ * renamed into place once complete, so readers never see a partial object.
+ * Every fill gets a new file name, and a file is only deleted once no hit is
+ * reading it anymore. The index lives in memory, the cache files left in the
+ * directory are deleted on start.
+ * 
+ * Hits are sent with FileChannel.transferTo, which is not zero-copy into a
+ * response OutputStream, see {@link FilesystemStorage#transfer}, or read in
+ * chunks without blocking for non-blocking responses.
+ */
+@ApplicationScoped
+public class ObjectDiskCache extends ObjectCache<ObjectDiskCache.FileEntry> {
+
+    private static final Logger LOG = Logger.getLogger(ObjectDiskCache.class);
+
+    private static final String OBJECT_SUFFIX = ".object";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.disk.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.disk.directory", defaultValue = "cache")
+    String directory;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.disk.max-bytes", defaultValue = "1073741824")
+    long maxBytes;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.disk.max-object-size", defaultValue = "16777216")
+    long maxObjectSize;
+
+    Path path;
+
+    ObjectDiskCache() {
+        super("disk");
+    }
+
+    /**
+     * Creates an enabled cache in the given directory, outside of CDI
+     */
+    public ObjectDiskCache(String directory, long maxBytes, long maxObjectSize, TransferExecutor transferExecutor,
+            MetricRegistry registry) {
+        this();
+        this.enabled = true;
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.maxObjectSize = maxObjectSize;
+        this.transferExecutor = transferExecutor;
+        this.registry = registry;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        registerMetrics();
+
+        if (!this.enabled) {
+            return;
+        }
+        this.path = Paths.get(this.directory);
+        try {
+            Files.createDirectories(this.path);
+            // Only the files of a previous run are removed, in case the directory is shared
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(this.path,
+                    "*{" + OBJECT_SUFFIX + "," + TEMP_SUFFIX + "}")) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            LOG.infof("Object disk cache in '%s' holding up to %d bytes: OK", this.path.toAbsolutePath(),
+                    this.maxBytes);
+        } catch (IOException exc) {
+            LOG.errorf("Object disk cache in '%s': FAILED - %s, disabling", this.path.toAbsolutePath(),
+                    exc.getMessage());
+            this.enabled = false;
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    @Override
+    long getMaxObjectSize() {
+        return this.maxObjectSize;
+    }
+
+    /**
+     * Looks up a cached object and opens its file, see
+     * {@link ObjectCache#lookup}
+     *
+     * @return CachedFile The open file holding the object, which has to be
+     *         closed, or null on a miss
+     */
+    public CachedFile get(String repository, String objectName, String etag, long objectSize) {
+        FileEntry entry = lookup(repository, objectName, etag, objectSize);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return new CachedFile(entry, FileChannel.open(entry.file, StandardOpenOption.READ));
+        } catch (IOException exc) {
+            LOG.warnf("Reading '%s' from disk cache: FAILED - %s", entry.file, exc.getMessage());
+            entry.release();
+            invalidate(repository, objectName);
+            return null;
+        }
+    }
+
+    @Override
+    Fill createFill(String key, String etag, long objectSize) throws IOException {
+        String name = UUID.randomUUID().toString();
+        Path temp = this.path.resolve(name + TEMP_SUFFIX);
+        return new FileFill(key, etag, objectSize, temp, this.path.resolve(name + OBJECT_SUFFIX),
+                Files.newOutputStream(temp));
+    }
+
+    /**
+     * An object in the cache, whose file is deleted once it was evicted and is
+     * no longer read
+     */
+    static class FileEntry extends ObjectCache.Entry {
+        final Path file;
+
+        FileEntry(String etag, long size, Path file) {
+            super(etag, size);
+            this.file = file;
+        }
+
+        @Override
+        void free() {
+            try {
+                Files.deleteIfExists(this.file);
+            } catch (IOException exc) {
+                LOG.warnf("Removing '%s' from disk cache: FAILED - %s", this.file, exc.getMessage());
+            }
+        }
+    }
+
+    /**
+     * A hit on a cached object, which keeps its file until it is closed
+     */
+    public static class CachedFile implements RangeWriter {
+        private final FileEntry entry;
+        private final FileChannel channel;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        CachedFile(FileEntry entry, FileChannel channel) {
+            this.entry = entry;
+            this.channel = channel;
+        }
+
+        /**
+         * @return Path The file holding the object, which may be gone once this
+         *         hit was closed
+         */
+        public Path getFile() {
+            return this.entry.file;
+        }
+
+        /**
+         * Takes another reference to the object for a fill that reads it in the
+         * background, so its file is kept until the fill is closed even if this
+         * hit was closed before
+         *
+         * @return ObjectFiller A filler writing the whole object, which has to
+         *         be closed
+         */
+        public ObjectFiller toFiller() {
+            FileEntry source = this.entry;
+            source.retain();
+            AtomicBoolean released = new AtomicBoolean();
+            return new ObjectFiller() {
+                @Override
+                public void write(OutputStream output) throws IOException {
+                    FilesystemStorage.transfer(source.file, 0, source.size, output);
+                }
+
+                @Override
+                public void close() {
+                    if (released.compareAndSet(false, true)) {
+                        source.release();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void write(long offset, long count, OutputStream output) throws IOException {
+            FilesystemStorage.transfer(this.channel, offset, count, output);
+        }
+
+        /**
+         * @return AsyncRangeWriter A writer that reads the file without
+         *         blocking, see {@link FilesystemStorage#transferAsync}, and
+         *         closes this hit when closed
+         */
+        public AsyncRangeWriter toAsyncWriter() {
+            return new AsyncRangeWriter() {
+                private AsynchronousFileChannel asyncChannel;
+
+                @Override
+                public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+                    if (this.asyncChannel == null) {
+                        try {
+                            this.asyncChannel = AsynchronousFileChannel.open(entry.file, StandardOpenOption.READ);
+                        } catch (IOException exc) {
+                            return CompletableFuture.failedFuture(exc);
+                        }
+                    }
+                    return FilesystemStorage.transferAsync(this.asyncChannel, offset, count, output);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        if (this.asyncChannel != null) {
+                            this.asyncChannel.close();
+                        }
+                    } finally {
+                        CachedFile.this.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                this.channel.close();
+            } finally {
+                this.entry.release();
+            }
+        }
+    }
+
+    /**
+     * Writes an object to a temporary file, which is renamed into place once
+     * complete
+     */
+    private class FileFill extends ObjectCache.Fill {
+        private final Path temp;
+        private final Path file;
+        private final OutputStream output;
+
+        FileFill(String key, String etag, long objectSize, Path temp, Path file, OutputStream output) {
+            super(ObjectDiskCache.this, key, etag, objectSize);
+            this.temp = temp;
+            this.file = file;
+            this.output = output;
+        }
+
+        @Override
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            this.output.write(bytes, offset, length);
+        }
+
+        @Override
+        void finish() throws IOException {
+            this.output.close();
+            Files.move(this.temp, this.file, StandardCopyOption.ATOMIC_MOVE);
+            put(this.key, new FileEntry(this.etag, this.objectSize, this.file));
+        }
+
+        @Override
+        void discard() {
+            try {
+                this.output.close();
+                Files.deleteIfExists(this.temp);
+            } catch (IOException exc) {
+                // Removed with the other cache files on the next start
+                LOG.warnf("Dropping '%s' from disk cache: FAILED - %s", this.temp, exc.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.utils.cache.ExpiringCache;
+
+/**
+ * Caches {@link ObjectInfoModel} results by repository and object name, so
+ * clients polling the same objects are served from memory. Implementations of
+ * {@link ObjectsService} invalidate entries when an object is uploaded or
+ * deleted. When revalidation is enabled, cached entries are checked against
+ * storage with a conditional request on their ETag before being served.
+ * Lookups take the {@link #generation()} before asking storage, so the result
+ * of a lookup that raced with an upload or delete is not put back.
+ */
+@ApplicationScoped
+public class ObjectInfoCache {
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.objects.max-size", defaultValue = "10000")
+    int maxSize;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.objects.ttl-seconds", defaultValue = "60")
+    long ttlSeconds;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.objects.revalidate", defaultValue = "false")
+    boolean revalidate;
+
+    @Inject
+    MetricRegistry registry;
+
+    ExpiringCache<String, ObjectInfoModel> cache;
+
+    Counter hits;
+
+    Counter misses;
+
+    ObjectInfoCache() {
+    }
+
+    /**
+     * Creates a cache, outside of CDI
+     */
+    public ObjectInfoCache(int maxSize, long ttlSeconds, boolean revalidate, MetricRegistry registry) {
+        this.maxSize = maxSize;
+        this.ttlSeconds = ttlSeconds;
+        this.revalidate = revalidate;
+        this.registry = registry;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        this.cache = new ExpiringCache<>(maxSize, ttlSeconds * 1000);
+        this.hits = registry.counter("object_info_cache_hits");
+        this.misses = registry.counter("object_info_cache_misses");
+    }
+
+    public ObjectInfoModel get(String repository, String objectName) {
+        ObjectInfoModel objectInfo = this.cache.get(key(repository, objectName));
+        if (objectInfo == null) {
+            this.misses.inc();
+        } else {
+            this.hits.inc();
+        }
+        return objectInfo;
+    }
+
+    /**
+     * Caches the info of an object unless it was invalidated since the
+     * generation was taken
+     *
+     * @param generation The {@link #generation()} taken before the lookup
+     */
+    public void put(String repository, String objectName, ObjectInfoModel objectInfo, long generation) {
+        this.cache.put(key(repository, objectName), objectInfo, generation);
+    }
+
+    public long generation() {
+        return this.cache.generation();
+    }
+
+    public void invalidate(String repository, String objectName) {
+        this.cache.invalidate(key(repository, objectName));
+    }
+
+    public void invalidateRepository(String repository) {
+        String prefix = key(repository, "");
+        this.cache.invalidateIf(key -> key.startsWith(prefix));
+    }
+
+    public boolean isRevalidate() {
+        return this.revalidate;
+    }
+
+    private static String key(String repository, String objectName) {
+        return repository + "/" + objectName;
+    }
+}
@@ -0,0 +1,345 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.BitSet;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.RangeWriter;
+import dev.startupstack.storageservice.utils.TransferExecutor;
+
+/**
+ * An in-process cache for small objects that are downloaded very often, in
+ * front of the {@link ObjectDiskCache}, see {@link ObjectCache}. Object data is
+ * kept in direct buffers, outside of the heap, so a full cache adds no work for
+ * the garbage collector.
+ * 
+ * A buffer is dropped once its object was evicted and is no longer read.
+ * Buffers count towards max-bytes until then, including those of evicted
+ * objects that are still being read, so the cache never holds more than
+ * max-bytes. A fill that finds no room, because all of it is being read, is
+ * rejected. Dropped buffers are returned to the system by the garbage
+ * collector, the memory they take until then is bounded by the JVM's
+ * -XX:MaxDirectMemorySize, and running out of it triggers a collection.
+ * 
+ * To keep objects that are only downloaded once from pushing out the hot ones,
+ * an object is only admitted on its second miss. Misses are remembered in a
+ * small Bloom filter, the doorkeeper, which is cleared once it has seen
+ * doorkeeper-size objects so old misses are forgotten.
+ */
+@ApplicationScoped
+public class ObjectMemoryCache extends ObjectCache<ObjectMemoryCache.BufferEntry> {
+
+    private static final int DOORKEEPER_HASHES = 3;
+
+    private static final int DOORKEEPER_BITS_PER_OBJECT = 10;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.memory.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.memory.max-bytes", defaultValue = "67108864")
+    long maxBytes;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.memory.max-object-size", defaultValue = "65536")
+    int maxObjectSize;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.memory.doorkeeper-size", defaultValue = "100000")
+    int doorkeeperSize;
+
+    Counter rejections;
+
+    private final AtomicLong allocated = new AtomicLong();
+
+    private BitSet doorkeeper;
+
+    private int doorkeeperBits;
+
+    private int doorkeeperCount;
+
+    ObjectMemoryCache() {
+        super("memory");
+    }
+
+    /**
+     * Creates an enabled cache, outside of CDI
+     */
+    public ObjectMemoryCache(long maxBytes, int maxObjectSize, int doorkeeperSize,
+            TransferExecutor transferExecutor, MetricRegistry registry) {
+        this();
+        this.enabled = true;
+        this.maxBytes = maxBytes;
+        this.maxObjectSize = maxObjectSize;
+        this.doorkeeperSize = doorkeeperSize;
+        this.transferExecutor = transferExecutor;
+        this.registry = registry;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        registerMetrics();
+        this.rejections = this.registry.counter("object_memory_cache_rejections");
+        this.registry.register(Metadata.builder().withName("object_memory_cache_allocated_bytes")
+                .withType(MetricType.GAUGE).withUnit(MetricUnits.BYTES)
+                .withDescription("Off-heap bytes of cached objects and of evicted ones still being read").build(),
+                (Gauge<Long>) this::getAllocated);
+
+        this.doorkeeperBits = Math.max(64, this.doorkeeperSize * DOORKEEPER_BITS_PER_OBJECT);
+        this.doorkeeper = new BitSet(this.doorkeeperBits);
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    @Override
+    long getMaxObjectSize() {
+        return this.maxObjectSize;
+    }
+
+    /**
+     * @return long The off-heap bytes in use, including evicted objects that
+     *         are still being read
+     */
+    public long getAllocated() {
+        return this.allocated.get();
+    }
+
+    /**
+     * Looks up a cached object, see {@link ObjectCache#lookup}
+     *
+     * @return CachedObject The object, which has to be closed, or null on a miss
+     */
+    public CachedObject get(String repository, String objectName, String etag, long objectSize) {
+        BufferEntry entry = lookup(repository, objectName, etag, objectSize);
+        return entry == null ? null : new CachedObject(entry);
+    }
+
+    @Override
+    Fill createFill(String key, String etag, long objectSize) {
+        if (!admit(key) || !reserve(objectSize)) {
+            this.rejections.inc();
+            return null;
+        }
+        try {
+            return new BufferFill(key, etag, ByteBuffer.allocateDirect((int) objectSize));
+        } catch (OutOfMemoryError exc) {
+            this.allocated.addAndGet(-objectSize);
+            throw exc;
+        }
+    }
+
+    /**
+     * Records the key in the doorkeeper.
+     *
+     * @return boolean true if the key was probably recorded before
+     */
+    synchronized boolean admit(String key) {
+        int hash = key.hashCode();
+        int step = Integer.rotateLeft(hash * 0x9E3779B9, 16) | 1;
+        boolean seen = true;
+        for (int i = 0; i < DOORKEEPER_HASHES; i++) {
+            int bit = Math.floorMod(hash + i * step, this.doorkeeperBits);
+            if (!this.doorkeeper.get(bit)) {
+                this.doorkeeper.set(bit);
+                seen = false;
+            }
+        }
+        if (!seen && ++this.doorkeeperCount >= this.doorkeeperSize) {
+            this.doorkeeper.clear();
+            this.doorkeeperCount = 0;
+        }
+        return seen;
+    }
+
+    /**
+     * Reserves off-heap memory for an object, evicting the least recently used
+     * objects until it fits
+     *
+     * @return boolean false if the memory in use by objects being read leaves
+     *         no room
+     */
+    boolean reserve(long bytes) {
+        while (true) {
+            long current = this.allocated.get();
+            if (current + bytes <= this.maxBytes) {
+                if (this.allocated.compareAndSet(current, current + bytes)) {
+                    return true;
+                }
+            } else if (!evictEldest()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Stops counting a buffer that is no longer used, leaving it to the garbage
+     * collector
+     */
+    void free(ByteBuffer buffer) {
+        this.allocated.addAndGet(-buffer.capacity());
+    }
+
+    /**
+     * An object in the cache, whose buffer is freed once it was evicted and is
+     * no longer read
+     */
+    class BufferEntry extends ObjectCache.Entry {
+        private final ByteBuffer data;
+
+        BufferEntry(String etag, ByteBuffer data) {
+            super(etag, data.capacity());
+            this.data = data;
+        }
+
+        @Override
+        void free() {
+            ObjectMemoryCache.this.free(this.data);
+        }
+    }
+
+    /**
+     * A hit on a cached object, which keeps its buffer until it is closed.
+     * Every write works on its own view of the buffer, so concurrent reads
+     * don't interfere.
+     */
+    public static class CachedObject implements RangeWriter {
+        private final BufferEntry entry;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        CachedObject(BufferEntry entry) {
+            this.entry = entry;
+        }
+
+        public long getSize() {
+            return this.entry.size;
+        }
+
+        @Override
+        public void write(long offset, long count, OutputStream output) throws IOException {
+            ByteBuffer view = this.entry.data.asReadOnlyBuffer();
+            view.position(Math.toIntExact(offset));
+            view.limit(Math.toIntExact(offset + count));
+            WritableByteChannel channel = Channels.newChannel(output);
+            while (view.hasRemaining()) {
+                channel.write(view);
+            }
+        }
+
+        /**
+         * @return byte[] A copy of a range of the object, for non-blocking writes
+         */
+        public byte[] toByteArray(long offset, long count) {
+            ByteBuffer view = this.entry.data.asReadOnlyBuffer();
+            view.position(Math.toIntExact(offset));
+            byte[] bytes = new byte[Math.toIntExact(count)];
+            view.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * @return AsyncRangeWriter A writer of copies of the object, which
+         *         closes this hit when closed
+         */
+        public AsyncRangeWriter toAsyncWriter() {
+            return new AsyncRangeWriter() {
+                @Override
+                public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+                    return output.asyncWrite(toByteArray(offset, count));
+                }
+
+                @Override
+                public void close() {
+                    CachedObject.this.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            if (this.closed.compareAndSet(false, true)) {
+                this.entry.release();
+            }
+        }
+    }
+
+    /**
+     * Writes an object to a buffer of the expected size, failing if more is
+     * written
+     */
+    private class BufferFill extends ObjectCache.Fill {
+        private final ByteBuffer buffer;
+
+        BufferFill(String key, String etag, ByteBuffer buffer) {
+            super(ObjectMemoryCache.this, key, etag, buffer.capacity());
+            this.buffer = buffer;
+        }
+
+        @Override
+        void write(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                this.buffer.put(bytes, offset, length);
+            } catch (BufferOverflowException exc) {
+                throw new IOException("Object is larger than expected", exc);
+            }
+        }
+
+        @Override
+        void finish() {
+            this.buffer.flip();
+            put(this.key, new BufferEntry(this.etag, this.buffer));
+        }
+
+        @Override
+        void discard() {
+            free(this.buffer);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import com.azure.storage.blob.models.BlobProperties;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import dev.startupstack.storageservice.utils.SharedDownload;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import dev.startupstack.storageservice.utils.cache.SingleFlight;
+
+/**
+ * Coalesces concurrent identical storage requests for objects, so a burst of
+ * requests for a popular object results in a single round trip. Property
+ * lookups of the same object share one call, and downloads of the same object
+ * and ETag share one {@link SharedDownload} that all responses stream from as
+ * it arrives. Only objects up to coalesce.max-object-size bytes are
+ * downloaded this way, as the shared download is buffered in memory.
+ * Coalescing is off by default, as every download of a whole object then
+ * buffers it on the heap even if no other request joins.
+ * 
+ * A shared download is started by a request for the whole object and runs
+ * without blocking a thread, the request that started it streams from it like
+ * the ones that join. Requests for a range join a download in flight, but
+ * never start one.
+ * 
+ * Implementations of {@link ObjectsService} call {@link #forget} when an
+ * object is uploaded or deleted, so requests arriving afterwards never join a
+ * call that may return the previous version.
+ */
+@ApplicationScoped
+public class ObjectRequestCoalescer {
+
+    private static final Logger LOG = Logger.getLogger(ObjectRequestCoalescer.class);
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.coalesce.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.coalesce.max-object-size", defaultValue = "4194304")
+    long maxObjectSize;
+
+    @Inject
+    AzureCallMetrics azureCalls;
+
+    SingleFlight<String, BlobProperties> properties;
+
+    private final ConcurrentMap<String, SharedDownload> downloads = new ConcurrentHashMap<>();
+
+    ObjectRequestCoalescer() {
+    }
+
+    /**
+     * Creates an enabled coalescer, outside of CDI
+     */
+    public ObjectRequestCoalescer(long maxObjectSize, AzureCallMetrics azureCalls) {
+        this.enabled = true;
+        this.maxObjectSize = maxObjectSize;
+        this.azureCalls = azureCalls;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        this.properties = new SingleFlight<>(() -> azureCalls.recordCoalesced(AzureCallMetrics.GET_PROPERTIES));
+    }
+
+    /**
+     * Starts a property lookup of an object, or joins the same lookup in flight,
+     * without blocking.
+     */
+    public CompletionStage<BlobProperties> getPropertiesAsync(String repository, String objectName,
+            Supplier<CompletionStage<BlobProperties>> call) {
+        if (!this.enabled) {
+            return call.get();
+        }
+        return this.properties.executeAsync(key(repository, objectName), call);
+    }
+
+    /**
+     * Returns the download of an object in flight with the same ETag, or starts
+     * one if asked to. The downloader should only write the object if it still
+     * has the given ETag, and must not block.
+     *
+     * @param objectSize The size of the object in bytes
+     * @param start      Whether to start a download if none is in flight,
+     *                   which only pays off for requests of the whole object
+     * @param downloader Starts downloading the complete object into the given
+     *                   download, completing once all of it was written
+     * @param onComplete Runs once with the download after it completed, e.g. to
+     *                   fill caches from it
+     * @return SharedDownload The download to stream from, or null if the object
+     *         is too large to share or no download was in flight or started
+     */
+    public SharedDownload download(String repository, String objectName, String etag, long objectSize,
+            boolean start, Function<SharedDownload, CompletionStage<Void>> downloader,
+            Consumer<SharedDownload> onComplete) {
+        if (!this.enabled || etag == null || objectSize > this.maxObjectSize || objectSize > Integer.MAX_VALUE) {
+            return null;
+        }
+        String key = key(repository, objectName) + "@" + etag;
+        SharedDownload inFlight = this.downloads.get(key);
+        if (inFlight == null && start) {
+            SharedDownload download = new SharedDownload((int) objectSize);
+            inFlight = this.downloads.putIfAbsent(key, download);
+            if (inFlight == null) {
+                return start(key, download, downloader, onComplete);
+            }
+        }
+        if (inFlight != null) {
+            this.azureCalls.recordCoalesced(AzureCallMetrics.DOWNLOAD);
+        }
+        return inFlight;
+    }
+
+    private SharedDownload start(String key, SharedDownload download,
+            Function<SharedDownload, CompletionStage<Void>> downloader, Consumer<SharedDownload> onComplete) {
+        CompletionStage<Void> result;
+        try {
+            result = downloader.apply(download);
+        } catch (RuntimeException exc) {
+            LOG.warnf("Shared download of '%s': FAILED - %s", key, exc.getMessage());
+            download.fail(exc);
+            this.downloads.remove(key, download);
+            return null;
+        }
+        result.whenComplete((done, exc) -> {
+            if (exc == null) {
+                download.close();
+            } else {
+                Throwable cause = exc instanceof CompletionException && exc.getCause() != null ? exc.getCause()
+                        : exc;
+                LOG.warnf("Shared download of '%s': FAILED - %s", key, cause.getMessage());
+                download.fail(cause);
+            }
+            this.downloads.remove(key, download);
+        });
+        download.completion().thenRun(() -> onComplete.accept(download));
+        return download;
+    }
+
+    /**
+     * Downloads are keyed by ETag and never shared across versions, so only
+     * property lookups need to be forgotten.
+     */
+    public void forget(String repository, String objectName) {
+        this.properties.forget(key(repository, objectName));
+    }
+
+    public void forgetRepository(String repository) {
+        String prefix = key(repository, "");
+        this.properties.forgetIf(key -> key.startsWith(prefix));
+    }
+
+    private static String key(String repository, String objectName) {
+        return repository + "/" + objectName;
+    }
+}
@@ -20,28 +20,41 @@ package dev.startupstack.storageservice.objects;
 import static dev.startupstack.storageservice.Constants.OBJECTS_URL;
 import static dev.startupstack.storageservice.Constants.ROLE_TENANT_ADMIN;
 import static dev.startupstack.storageservice.Constants.ROLE_TENANT_USER;
-import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletionStage;
 import javax.annotation.security.RolesAllowed;
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
 import javax.validation.constraints.NotBlank;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import org.eclipse.microprofile.metrics.annotation.Timed;
 import org.eclipse.microprofile.openapi.annotations.Operation;
+import org.eclipse.microprofile.openapi.annotations.enums.SchemaType;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.media.Schema;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
 import org.eclipse.microprofile.openapi.annotations.tags.Tag;
 import org.jboss.resteasy.annotations.providers.multipart.MultipartForm;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
+import dev.startupstack.storageservice.objects.models.BatchDeleteModel;
+import dev.startupstack.storageservice.objects.models.ObjectDeleteResultModel;
+import dev.startupstack.storageservice.objects.models.ObjectUploadResultModel;
 import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.objects.models.ObjectListModel;
+import dev.startupstack.storageservice.objects.models.UploadSessionModel;
 
 /**
  * RepositoriesResource
@@ -55,46 +68,88 @@ public class ObjectsResource {
     @Inject
     ObjectsService objectService;
 
+    @GET
+    @Operation(summary = "Lists the objects in a given repository, one page at a time")
+    @APIResponse(responseCode = "200", description = "A page of objects, continuationToken is set when more pages follow", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ObjectListModel.class)))
+    @APIResponse(responseCode = "400", description = "Invalid page size or continuation token")
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to list this repository")
+    @APIResponse(responseCode = "404", description = "Repository not found")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/{repository}")
+    @Timed(name = "objects_list", absolute = true, description = "Time spent until an object listing starts streaming")
+    public Response listObjects(@NotBlank @PathParam("repository") final String repository,
+            @QueryParam("prefix") final String prefix,
+            @QueryParam("pageSize") @DefaultValue("1000") final int pageSize,
+            @QueryParam("continuationToken") final String continuationToken) {
+        return objectService.listObjects(repository, prefix, pageSize, continuationToken);
+    }
+
     @GET
     @Operation(summary = "Fetches info and metadata of a given object in a given repository")
     @APIResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = ObjectInfoModel.class)))
+    @APIResponse(responseCode = "304", description = "Object not modified since the given ETag or date")
     @APIResponse(responseCode = "401", description = "No valid JWT token found")
     @APIResponse(responseCode = "403", description = "Not authorized to query this object")
     @APIResponse(responseCode = "404", description = "Object or repository not found")
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{repository}/{name}")
-    public Response getObjectInfo(@NotBlank @PathParam("repository") final String repository,
-            @NotBlank @PathParam("name") final String objectName) {
-        return objectService.getObjectInfo(repository, objectName);
+    @Timed(name = "objects_get_info", absolute = true, description = "Time spent retrieving object info")
+    public CompletionStage<Response> getObjectInfo(@NotBlank @PathParam("repository") final String repository,
+            @NotBlank @PathParam("name") final String objectName, @Context HttpHeaders headers) {
+        return objectService.getObjectInfoAsync(repository, objectName, headers);
     }
 
     @GET
     @Operation(summary = "Downloads object from a given repository")
     @APIResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_OCTET_STREAM))
+    @APIResponse(responseCode = "206", description = "Partial object as requested by the Range header")
+    @APIResponse(responseCode = "304", description = "Object not modified since the given ETag or date")
     @APIResponse(responseCode = "401", description = "No valid JWT token found")
     @APIResponse(responseCode = "403", description = "Not authorized to download this object")
     @APIResponse(responseCode = "404", description = "Object or repository not found")
+    @APIResponse(responseCode = "416", description = "Requested range not satisfiable")
     @Produces(MediaType.APPLICATION_OCTET_STREAM)
     @Path("/download/{repository}/{name}")
-    public Response downloadObject(@NotBlank @PathParam("repository") final String repository,
-            @NotBlank @PathParam("name") final String objectName) throws IOException {
-        return objectService.downloadObject(repository, objectName);
+    @Timed(name = "objects_download", absolute = true, description = "Time spent until an object download starts streaming")
+    public CompletionStage<Response> downloadObject(@NotBlank @PathParam("repository") final String repository,
+            @NotBlank @PathParam("name") final String objectName, @Context HttpHeaders headers) {
+        return objectService.downloadObjectAsync(repository, objectName, headers);
     }
 
     @POST
-    @Operation(summary = "Uploads object to a given repository")
-    @APIResponse(responseCode = "201", description = "Upload was successful")
+    @Operation(summary = "Uploads one or more objects to a given repository")
+    @APIResponse(responseCode = "201", description = "Upload was successful, lists the result of each object when several were uploaded", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(type = SchemaType.ARRAY, implementation = ObjectUploadResultModel.class)))
+    @APIResponse(responseCode = "207", description = "Some of the objects could not be uploaded, lists the result of each object", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(type = SchemaType.ARRAY, implementation = ObjectUploadResultModel.class)))
+    @APIResponse(responseCode = "400", description = "Too many objects given")
     @APIResponse(responseCode = "401", description = "No valid JWT token found")
     @APIResponse(responseCode = "403", description = "Not authorized to upload to given repository")
     @APIResponse(responseCode = "404", description = "Repository not found")
     @Consumes(MediaType.MULTIPART_FORM_DATA)
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/upload/{repository}")
+    @Timed(name = "objects_upload", absolute = true, description = "Time spent uploading objects")
     public Response uploadObject(@NotBlank @PathParam("repository") final String repository,
             @MultipartForm MultipartFormDataInput objectUpload) {
         return objectService.uploadObject(repository, objectUpload);
     }
 
+    @POST
+    @Operation(summary = "Deletes multiple objects from a given repository")
+    @APIResponse(responseCode = "200", description = "The result of deleting each object", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(type = SchemaType.ARRAY, implementation = ObjectDeleteResultModel.class)))
+    @APIResponse(responseCode = "400", description = "No or too many objects given")
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to delete from given repository")
+    @APIResponse(responseCode = "404", description = "Repository not found")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/delete/{repository}")
+    @Timed(name = "objects_batch_delete", absolute = true, description = "Time spent deleting batches of objects")
+    public Response deleteObjects(@NotBlank @PathParam("repository") final String repository,
+            BatchDeleteModel model) {
+        return objectService.deleteObjects(repository, model);
+    }
+
     @DELETE
     @Operation(summary = "Deletes object from a given repository")
     @APIResponse(responseCode = "204", description = "Delete was successful")
@@ -103,9 +158,87 @@ public class ObjectsResource {
     @APIResponse(responseCode = "404", description = "Object or repository not found")
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{repository}/{name}")
-    public Response deleteObject(@NotBlank @PathParam("repository") final String repository,
+    @Timed(name = "objects_delete", absolute = true, description = "Time spent deleting objects")
+    public CompletionStage<Response> deleteObject(@NotBlank @PathParam("repository") final String repository,
             @NotBlank @PathParam("name") final String objectName) {
-        return objectService.deleteObject(repository, objectName);
+        return objectService.deleteObjectAsync(repository, objectName);
+    }
+
+    @POST
+    @Operation(summary = "Opens a resumable upload session for an object in a given repository")
+    @APIResponse(responseCode = "201", description = "The session, chunks are appended starting at offset 0", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionModel.class)))
+    @APIResponse(responseCode = "400", description = "No or a reserved objectName given, or the repository does not support sessions")
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to upload to given repository")
+    @APIResponse(responseCode = "404", description = "Repository not found")
+    @APIResponse(responseCode = "501", description = "The storage backend does not support sessions")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/sessions/{repository}")
+    @Timed(name = "objects_session_create", absolute = true, description = "Time spent opening upload sessions")
+    public Response createUploadSession(@NotBlank @PathParam("repository") final String repository,
+            UploadSessionModel model) {
+        return objectService.createUploadSession(repository, model);
+    }
+
+    @GET
+    @Operation(summary = "Fetches an upload session with the offset to continue at")
+    @APIResponse(responseCode = "200", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionModel.class)))
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to upload to given repository")
+    @APIResponse(responseCode = "404", description = "Session or repository not found, or the session expired")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/sessions/{repository}/{session}")
+    @Timed(name = "objects_session_get", absolute = true, description = "Time spent retrieving upload sessions")
+    public Response getUploadSession(@NotBlank @PathParam("repository") final String repository,
+            @NotBlank @PathParam("session") final String sessionID) {
+        return objectService.getUploadSession(repository, sessionID);
+    }
+
+    @PUT
+    @Operation(summary = "Appends a chunk to an upload session, starting at the given offset")
+    @APIResponse(responseCode = "200", description = "The session with the offset to continue at", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionModel.class)))
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to upload to given repository")
+    @APIResponse(responseCode = "404", description = "Session or repository not found, or the session expired")
+    @APIResponse(responseCode = "409", description = "The session does not continue at the given offset")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/sessions/{repository}/{session}")
+    @Timed(name = "objects_session_append", absolute = true, description = "Time spent appending chunks to upload sessions")
+    public Response appendUploadSession(@NotBlank @PathParam("repository") final String repository,
+            @NotBlank @PathParam("session") final String sessionID, @QueryParam("offset") final long offset,
+            InputStream chunk) {
+        return objectService.appendUploadSession(repository, sessionID, offset, chunk);
+    }
+
+    @POST
+    @Operation(summary = "Stores the bytes of an upload session as the object and closes the session")
+    @APIResponse(responseCode = "201", description = "The object was stored", content = @Content(mediaType = MediaType.APPLICATION_JSON, schema = @Schema(implementation = UploadSessionModel.class)))
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to upload to given repository")
+    @APIResponse(responseCode = "404", description = "Session or repository not found, or the session expired")
+    @APIResponse(responseCode = "409", description = "Fewer bytes than the announced size were received")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/sessions/{repository}/{session}/complete")
+    @Timed(name = "objects_session_complete", absolute = true, description = "Time spent completing upload sessions")
+    public Response completeUploadSession(@NotBlank @PathParam("repository") final String repository,
+            @NotBlank @PathParam("session") final String sessionID) {
+        return objectService.completeUploadSession(repository, sessionID);
+    }
+
+    @DELETE
+    @Operation(summary = "Closes an upload session without storing the object")
+    @APIResponse(responseCode = "204", description = "The session was closed")
+    @APIResponse(responseCode = "401", description = "No valid JWT token found")
+    @APIResponse(responseCode = "403", description = "Not authorized to upload to given repository")
+    @APIResponse(responseCode = "404", description = "Session or repository not found, or the session expired")
+    @Produces(MediaType.APPLICATION_JSON)
+    @Path("/sessions/{repository}/{session}")
+    @Timed(name = "objects_session_abort", absolute = true, description = "Time spent aborting upload sessions")
+    public Response abortUploadSession(@NotBlank @PathParam("repository") final String repository,
+            @NotBlank @PathParam("session") final String sessionID) {
+        return objectService.abortUploadSession(repository, sessionID);
     }
 
 }
\ No newline at end of file
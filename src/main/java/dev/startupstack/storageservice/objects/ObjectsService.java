@@ -18,23 +18,110 @@
 package dev.startupstack.storageservice.objects;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import javax.enterprise.context.Dependent;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
 
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 
+import dev.startupstack.storageservice.objects.models.BatchDeleteModel;
+import dev.startupstack.storageservice.objects.models.UploadSessionModel;
+import dev.startupstack.storageservice.utils.WebResponseBuilder;
+
 /**
  * ObjectsService
  */
 @Dependent
 public interface ObjectsService {
 
-    public Response getObjectInfo(String repository, String objectName);
+    public Response getObjectInfo(String repository, String objectName, HttpHeaders headers);
 
-    public Response downloadObject(String repository, String objectName) throws IOException;
+    public Response downloadObject(String repository, String objectName, HttpHeaders headers) throws IOException;
 
     public Response uploadObject(String repository, MultipartFormDataInput objectUpload);
 
     public Response deleteObject(String repository, String objectName);
-}
\ No newline at end of file
+
+    public Response deleteObjects(String repository, BatchDeleteModel model);
+
+    public Response listObjects(String repository, String prefix, int pageSize, String continuationToken);
+
+    /**
+     * Non-blocking variant of {@link #getObjectInfo}. Backends without a
+     * non-blocking client complete it on the calling thread.
+     */
+    public default CompletionStage<Response> getObjectInfoAsync(String repository, String objectName,
+            HttpHeaders headers) {
+        return CompletableFuture.completedFuture(getObjectInfo(repository, objectName, headers));
+    }
+
+    /**
+     * Non-blocking variant of {@link #downloadObject}. Backends without a
+     * non-blocking client complete it on the calling thread.
+     */
+    public default CompletionStage<Response> downloadObjectAsync(String repository, String objectName,
+            HttpHeaders headers) {
+        try {
+            return CompletableFuture.completedFuture(downloadObject(repository, objectName, headers));
+        } catch (IOException exc) {
+            return CompletableFuture.failedFuture(exc);
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #deleteObject}. Backends without a
+     * non-blocking client complete it on the calling thread.
+     */
+    public default CompletionStage<Response> deleteObjectAsync(String repository, String objectName) {
+        return CompletableFuture.completedFuture(deleteObject(repository, objectName));
+    }
+
+    /**
+     * Opens a resumable upload session for an object. Backends without
+     * resumable uploads answer with 501 Not Implemented, as do the other
+     * session operations.
+     */
+    public default Response createUploadSession(String repository, UploadSessionModel model) {
+        return uploadSessionsNotImplemented();
+    }
+
+    /**
+     * Returns an upload session with the offset the next chunk has to start at
+     */
+    public default Response getUploadSession(String repository, String sessionID) {
+        return uploadSessionsNotImplemented();
+    }
+
+    /**
+     * Appends a chunk starting at the given offset to an upload session
+     */
+    public default Response appendUploadSession(String repository, String sessionID, long offset,
+            InputStream chunk) {
+        return uploadSessionsNotImplemented();
+    }
+
+    /**
+     * Stores the bytes received by an upload session as the object and closes
+     * the session
+     */
+    public default Response completeUploadSession(String repository, String sessionID) {
+        return uploadSessionsNotImplemented();
+    }
+
+    /**
+     * Closes an upload session without storing the object
+     */
+    public default Response abortUploadSession(String repository, String sessionID) {
+        return uploadSessionsNotImplemented();
+    }
+
+    public static Response uploadSessionsNotImplemented() {
+        return WebResponseBuilder.build("Upload sessions are not supported by this storage backend",
+                Status.NOT_IMPLEMENTED.getStatusCode());
+    }
+}
@@ -17,41 +17,107 @@
 */
 package dev.startupstack.storageservice.objects;
 
+import static dev.startupstack.storageservice.Constants.BACKEND_AZURE;
+import static dev.startupstack.storageservice.Constants.METADATA_CACHE_CONTROL;
+import static dev.startupstack.storageservice.Constants.METADATA_COMPRESSION;
+import static dev.startupstack.storageservice.Constants.METADATA_CONTENT_CRC32C;
+import static dev.startupstack.storageservice.Constants.METADATA_CONTENT_MD5;
+import static dev.startupstack.storageservice.Constants.METADATA_DEDUPLICATION;
 import static dev.startupstack.storageservice.Constants.METADATA_TENANT_ID;
+import static dev.startupstack.storageservice.Constants.METADATA_UNCOMPRESSED_SIZE;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.annotation.PostConstruct;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.WebApplicationException;
-import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobAsyncClient;
 import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerAsyncClient;
 import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceAsyncClient;
 import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.batch.BlobBatch;
+import com.azure.storage.blob.batch.BlobBatchClient;
+import com.azure.storage.blob.models.BlobContainerProperties;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobItemProperties;
+import com.azure.storage.blob.models.BlobListDetails;
 import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobRequestConditions;
 import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.BlobDownloadAsyncResponse;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.FileUtils;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.jwt.JsonWebToken;
 import org.jboss.logging.Logger;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 
+import dev.startupstack.storageservice.objects.ObjectCache.Fill;
+import dev.startupstack.storageservice.objects.ObjectCache.ObjectFiller;
+import dev.startupstack.storageservice.objects.ObjectDiskCache.CachedFile;
+import dev.startupstack.storageservice.objects.ObjectMemoryCache.CachedObject;
+import dev.startupstack.storageservice.objects.models.BatchDeleteModel;
+import dev.startupstack.storageservice.objects.models.ObjectDeleteResultModel;
 import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.objects.models.ObjectUploadResultModel;
+import dev.startupstack.storageservice.objects.models.UploadSessionModel;
+import dev.startupstack.storageservice.utils.ChecksumInputStream;
+import dev.startupstack.storageservice.utils.ConditionalRequests;
+import dev.startupstack.storageservice.utils.ContentCoding;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.GzipCompressingInputStream;
+import dev.startupstack.storageservice.utils.ListingResponseBuilder;
+import dev.startupstack.storageservice.utils.ParallelRangeWriter;
+import dev.startupstack.storageservice.utils.SharedDownload;
+import dev.startupstack.storageservice.utils.StorageBackend;
+import dev.startupstack.storageservice.utils.StorageMetrics;
+import dev.startupstack.storageservice.utils.TransferExecutor;
+import dev.startupstack.storageservice.utils.UploadResponseBuilder;
 import dev.startupstack.storageservice.utils.WebResponseBuilder;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
 import dev.startupstack.storageservice.utils.azure.AzureIdentityService;
+import dev.startupstack.storageservice.utils.azure.BlockBlobUploader;
+import dev.startupstack.storageservice.utils.azure.DeduplicationIndex;
+import dev.startupstack.storageservice.utils.azure.RepositoryMetadataCache;
+import dev.startupstack.storageservice.utils.azure.UploadSessions;
+import reactor.core.publisher.Mono;
 
 /**
  * This implements the ObjectsService in Azure Blob Storage. It assumes that
@@ -59,217 +125,1086 @@ import dev.startupstack.storageservice.utils.azure.AzureIdentityService;
  * repositories API) and writes objects in there.
  */
 @Dependent
+@StorageBackend(BACKEND_AZURE)
 public class ObjectsServiceAzureBlobImpl implements ObjectsService {
 
     private static final Logger LOG = Logger.getLogger(ObjectsServiceAzureBlobImpl.class);
 
+    /**
+     * The maximum number of sub-requests the Blob Batch API accepts per batch
+     */
+    static final int MAX_BATCH_SIZE = 256;
+
     @Inject
     @ConfigProperty(name = "startupstack.storageservice.azure.storageaccount.endpoint")
     String endpoint;
 
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.block-size", defaultValue = "4194304")
+    int uploadBlockSize;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.max-concurrency", defaultValue = "4")
+    int uploadMaxConcurrency;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.single-shot-threshold", defaultValue = "4194304")
+    long uploadSingleShotThreshold;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.max-parts", defaultValue = "1000")
+    int uploadMaxParts;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.max-parts-concurrency", defaultValue = "8")
+    int uploadMaxPartsConcurrency;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.sessions.ttl-seconds", defaultValue = "86400")
+    long uploadSessionTtlSeconds;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.download.chunk-size", defaultValue = "8388608")
+    int downloadChunkSize;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.download.max-concurrency", defaultValue = "4")
+    int downloadMaxConcurrency;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.download.parallel-threshold", defaultValue = "67108864")
+    long downloadParallelThreshold;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache-control.default", defaultValue = "private, no-cache")
+    String defaultCacheControl;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.compression.level", defaultValue = "6")
+    int compressionLevel;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.batch.max-objects", defaultValue = "10000")
+    int batchMaxObjects;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.batch.max-concurrency", defaultValue = "4")
+    int batchMaxConcurrency;
+
     @Inject
     AzureIdentityService azureIdentityService;
 
+    @Inject
+    TransferExecutor transferExecutor;
+
+    @Inject
+    RepositoryMetadataCache repositoryMetadataCache;
+
+    @Inject
+    ObjectInfoCache objectInfoCache;
+
+    @Inject
+    ObjectDiskCache diskCache;
+
+    @Inject
+    ObjectMemoryCache memoryCache;
+
+    @Inject
+    ObjectRequestCoalescer coalescer;
+
+    @Inject
+    AzureCallMetrics azureCalls;
+
+    @Inject
+    StorageMetrics storageMetrics;
+
+    @Inject
+    ObjectMapper objectMapper;
+
     @Inject
     JsonWebToken jwt;
 
     BlobServiceClient blobStorageClient;
 
+    BlobServiceAsyncClient blobStorageAsyncClient;
+
+    BlobBatchClient blobBatchClient;
+
     @PostConstruct
     void createClient() {
         this.blobStorageClient = azureIdentityService.getBlobServiceClient();
+        this.blobStorageAsyncClient = azureIdentityService.getBlobServiceAsyncClient();
+        this.blobBatchClient = azureIdentityService.getBlobBatchClient();
+    }
+
+    /**
+     * Blocking variant of
+     * {@link #getObjectInfoAsync(String, String, HttpHeaders)}
+     */
+    @Override
+    public Response getObjectInfo(String repository, String objectName, HttpHeaders headers) {
+        return join(getObjectInfoAsync(repository, objectName, headers));
     }
 
     /**
-     * Retrieves metadata about an object. Validates if the tenant id in the JWT
-     * token matches the tenant id of the file.
+     * Blocking variant of
+     * {@link #downloadObjectAsync(String, String, HttpHeaders)}
+     */
+    @Override
+    public Response downloadObject(String repository, String objectName, HttpHeaders headers) {
+        return join(downloadObjectAsync(repository, objectName, headers));
+    }
+
+    /**
+     * Uploads the requested objects assuming the requestor has a valid JWT that
+     * gives them access. Takes a {@link MultipartFormDataInput} with one or more
+     * parts under the key "object", the tenant is validated once for the
+     * repository. A single object is streamed to storage staging several blocks
+     * in parallel, see {@link BlockBlobUploader}. Several objects are uploaded
+     * concurrently instead, up to upload.max-parts-concurrency at a time, each
+     * staging its blocks sequentially so part uploads never wait on the transfer
+     * pool they are running on.
      * 
-     * @param repository The name of the repository
-     * @param objectName The name of the object
-     * @return Response A JAX-RS Response object containing a
-     *         {@link ObjectInfoModel} model, or an error built by
-     *         {@link WebResponseBuilder}
+     * @param repository   name of the repository
+     * @param objectUpload a multi-part form {@link MultipartFormDataInput}
+     *                     containing the contents of the files
+     * @return Response A Response object containing either an error message, an
+     *         empty body with 201 Created for a single object, or a list of
+     *         {@link ObjectUploadResultModel} with 201 Created or 207
+     *         Multi-Status for several objects
      */
     @Override
-    public Response getObjectInfo(String repository, String objectName) {
+    public Response uploadObject(String repository, MultipartFormDataInput objectUpload) throws ForbiddenException {
         try {
-            LOG.infof("Retrieving object info from '%s/%s' ...", repository, objectName);
+            LOG.infof("Object upload to '%s' ...", repository);
+            Map<String, List<InputPart>> uploadForm = objectUpload.getFormDataMap();
+            List<InputPart> inputParts = uploadForm.get("object");
 
-            validateTenantID(repository, objectName);
+            if (inputParts == null || inputParts.isEmpty()) {
+                return WebResponseBuilder.build("Object upload: FAILED - missing form parameter 'object'",
+                        Status.BAD_REQUEST.getStatusCode());
+            }
+            if (inputParts.size() > this.uploadMaxParts) {
+                return WebResponseBuilder.build("Object upload: FAILED - at most " + this.uploadMaxParts
+                        + " objects can be uploaded at once", Status.BAD_REQUEST.getStatusCode());
+            }
 
-            BlobProperties properties = this.blobStorageClient.getBlobContainerClient(repository)
-                    .getBlobClient(objectName).getProperties();
+            String tenantID = validateTenantID(repository, null);
 
-            ObjectInfoModel objectInfo = new ObjectInfoModel();
-            objectInfo.setContentType(properties.getContentType());
-            objectInfo.setCreationTime(properties.getCreationTime());
-            objectInfo.setEtag(properties.getETag());
-            objectInfo.setMd5sum(Hex.encodeHexString(properties.getContentMd5()));
-            objectInfo.setObjectName(objectName);
-            objectInfo.setObjectSize(properties.getBlobSize());
-            objectInfo.setTenantID(properties.getMetadata().get(METADATA_TENANT_ID));
+            if (inputParts.size() == 1) {
+                uploadPart(repository, inputParts.get(0), tenantID, this.uploadMaxConcurrency);
+                LOG.infof("Object upload to '%s': OK", repository);
+                return Response.status(Status.CREATED).build();
+            }
 
-            LOG.infof("Retrieving object info from '%s/%s': OK", repository, objectName);
-            return Response.status(Status.OK).entity(objectInfo).build();
+            List<ObjectUploadResultModel> results = new ArrayList<>();
+            Deque<Future<ObjectUploadResultModel>> pending = new ArrayDeque<>();
+            try {
+                for (InputPart inputPart : inputParts) {
+                    if (pending.size() >= this.uploadMaxPartsConcurrency) {
+                        results.add(pending.removeFirst().get());
+                    }
+                    pending.addLast(this.transferExecutor.getExecutorService()
+                            .submit(() -> UploadResponseBuilder.uploadPart(repository, inputPart,
+                                    part -> uploadPartSequentially(repository, part, tenantID))));
+                }
+                while (!pending.isEmpty()) {
+                    results.add(pending.removeFirst().get());
+                }
+            } finally {
+                for (Future<ObjectUploadResultModel> future : pending) {
+                    future.cancel(true);
+                }
+            }
+
+            LOG.infof("Object upload of %d objects to '%s': OK", inputParts.size(), repository);
+            return UploadResponseBuilder.build(results);
+
+        } catch (IOException exc) {
+            LOG.errorf("Object upload to '%s': FAILED - %s", repository, exc.getMessage());
+            return WebResponseBuilder.build("Object upload error: " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
         } catch (BlobStorageException exc) {
-            LOG.errorf("Retrieving object info from '%s/%s': FAILED - %s", repository, objectName,
-                    exc.getServiceMessage());
-            return WebResponseBuilder.build("Retrieving object info: FAILED - " + exc.getServiceMessage(),
+            LOG.errorf("Object upload to '%s': FAILED - %s", repository, exc.getServiceMessage());
+            return WebResponseBuilder.build("Object upload: FAILED - " + exc.getServiceMessage(),
                     exc.getStatusCode());
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            LOG.errorf("Object upload to '%s': FAILED - interrupted", repository);
+            return WebResponseBuilder.build("Object upload: FAILED - interrupted",
+                    Status.SERVICE_UNAVAILABLE.getStatusCode());
+        } catch (ExecutionException exc) {
+            LOG.errorf("Object upload to '%s': FAILED - %s", repository, exc.getCause().getMessage());
+            return WebResponseBuilder.build("Object upload: FAILED - " + exc.getCause().getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
         }
     }
 
     /**
-     * Downloads the requested object assuming the requestor has a valid JWT that
-     * gives them access. A valid response contains a ByteArray with the appropiate
-     * Content-Disposition header, errors return a {@link WebResponseBuilder}
-     * wrapped error
+     * Streams a single part to a block blob, staging up to blockConcurrency
+     * blocks in parallel on the transfer pool. The MD5 and CRC32C of the part are
+     * computed while streaming and stored in the blob metadata on commit, as
+     * Azure Storage does not keep a Content-MD5 for blobs uploaded in blocks.
+     *
+     * @return long The number of bytes uploaded
+     */
+    long uploadPart(String repository, InputPart inputPart, String tenantID, int blockConcurrency)
+            throws IOException {
+        String fileName = UploadResponseBuilder.getFilename(inputPart.getHeaders());
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(METADATA_TENANT_ID, tenantID);
+        BlobHttpHeaders headers = new BlobHttpHeaders().setContentType(inputPart.getMediaType().toString());
+        Map<String, String> repositoryMetadata = getRepositoryMetadata(repository);
+        boolean deduplicate = isDeduplicated(repositoryMetadata);
+        if (isReserved(fileName, deduplicate)) {
+            throw new WebApplicationException("Object name '" + fileName + "' is reserved",
+                    Status.BAD_REQUEST.getStatusCode());
+        }
+        boolean compress = ContentCoding.GZIP.equals(repositoryMetadata.get(METADATA_COMPRESSION));
+        if (compress) {
+            headers.setContentEncoding(ContentCoding.GZIP);
+        }
+
+        BlockBlobClient client = this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(fileName)
+                .getBlockBlobClient();
+
+        BlockBlobUploader uploader = new BlockBlobUploader(client, this.azureCalls, this.uploadBlockSize,
+                blockConcurrency, this.uploadSingleShotThreshold, this.transferExecutor.getExecutorService());
+
+        LOG.infof("Object upload to '%s': Streaming '%s' ... ", repository, fileName);
+        long size = -1;
+        this.storageMetrics.uploadStarted();
+        try (ChecksumInputStream inputStream = new ChecksumInputStream(inputPart.getBody(InputStream.class, null))) {
+            if (deduplicate) {
+                size = uploadDeduplicated(repository, fileName, inputStream, headers, metadata, blockConcurrency);
+            } else if (compress) {
+                try (GzipCompressingInputStream compressed = new GzipCompressingInputStream(inputStream,
+                        this.compressionLevel)) {
+                    long storedSize = uploader.upload(compressed, headers, () -> {
+                        metadata.put(METADATA_UNCOMPRESSED_SIZE, String.valueOf(compressed.getUncompressedSize()));
+                        return withChecksums(metadata, inputStream);
+                    });
+                    size = compressed.getUncompressedSize();
+                    LOG.infof("Object upload to '%s': Streamed %d bytes to '%s' compressed to %d bytes: OK",
+                            repository, size, fileName, storedSize);
+                }
+            } else {
+                size = uploader.upload(inputStream, headers, () -> withChecksums(metadata, inputStream));
+                LOG.infof("Object upload to '%s': Streamed %d bytes to '%s': OK", repository, size, fileName);
+            }
+        } finally {
+            this.storageMetrics.uploadFinished(tenantID, size);
+        }
+        this.objectInfoCache.invalidate(repository, fileName);
+        this.diskCache.invalidate(repository, fileName);
+        this.memoryCache.invalidate(repository, fileName);
+        this.coalescer.forget(repository, fileName);
+        return size;
+    }
+
+    /**
+     * Streams a part into a deduplicating repository, see
+     * {@link DeduplicationIndex}. The part is hashed while it is staged as new
+     * content. If identical content is already stored, the new content is never
+     * committed, so parts below the single-shot threshold are not even
+     * transferred, and the object becomes another reference to the stored
+     * content.
+     *
+     * @return long The number of bytes uploaded
+     */
+    long uploadDeduplicated(String repository, String fileName, ChecksumInputStream inputStream,
+            BlobHttpHeaders headers, Map<String, String> metadata, int blockConcurrency) throws IOException {
+        DeduplicationIndex index = deduplicationIndex(repository);
+        String contentID = UUID.randomUUID().toString();
+        BlockBlobClient client = this.blobStorageClient.getBlobContainerClient(repository)
+                .getBlobClient(DeduplicationIndex.contentBlobName(contentID)).getBlockBlobClient();
+        BlockBlobUploader uploader = new BlockBlobUploader(client, this.azureCalls, this.uploadBlockSize,
+                blockConcurrency, this.uploadSingleShotThreshold, this.transferExecutor.getExecutorService());
+
+        MessageDigest digest = DeduplicationIndex.newDigest();
+        Map<String, String> contentMetadata = new HashMap<>(metadata);
+        contentMetadata.put(DeduplicationIndex.METADATA_CONTENT_ID, contentID);
+        AtomicReference<String> existing = new AtomicReference<>();
+
+        long size;
+        try (DigestInputStream hashing = new DigestInputStream(inputStream, digest)) {
+            size = uploader.upload(hashing, headers, () -> withChecksums(contentMetadata, inputStream), () -> {
+                String hash = Hex.encodeHexString(digest.digest());
+                contentMetadata.put(DeduplicationIndex.METADATA_CONTENT_HASH, hash);
+                existing.set(index.addReference(hash));
+                return existing.get() == null;
+            });
+        }
+
+        String hash = contentMetadata.get(DeduplicationIndex.METADATA_CONTENT_HASH);
+        String storedID = existing.get() == null ? index.register(hash, contentID) : existing.get();
+        try {
+            index.writeReference(fileName, hash, storedID, size, headers, withChecksums(metadata, inputStream));
+        } catch (RuntimeException exc) {
+            index.removeReference(hash);
+            throw exc;
+        }
+
+        if (existing.get() != null) {
+            this.storageMetrics.uploadDeduplicated(metadata.get(METADATA_TENANT_ID), size);
+            LOG.infof("Object upload to '%s': Streamed %d bytes to '%s' already stored: OK", repository, size,
+                    fileName);
+        } else {
+            LOG.infof("Object upload to '%s': Streamed %d bytes to '%s': OK", repository, size, fileName);
+        }
+        return size;
+    }
+
+    static Map<String, String> withChecksums(Map<String, String> metadata, ChecksumInputStream checksums) {
+        metadata.put(METADATA_CONTENT_MD5, checksums.getMd5());
+        metadata.put(METADATA_CONTENT_CRC32C, checksums.getCrc32c());
+        return metadata;
+    }
+
+    /**
+     * Uploads a single part of a multi-object upload, staging its blocks one
+     * after the other. Runs on the transfer pool, so it must not touch the
+     * request scoped JWT. Azure Storage errors keep their status in the result
+     * of the part, see {@link UploadResponseBuilder#uploadPart}.
+     */
+    long uploadPartSequentially(String repository, InputPart inputPart, String tenantID) throws IOException {
+        try {
+            return uploadPart(repository, inputPart, tenantID, 1);
+        } catch (BlobStorageException exc) {
+            throw new WebApplicationException(exc.getServiceMessage(), exc.getStatusCode());
+        }
+    }
+
+    /**
+     * Blocking variant of {@link #deleteObjectAsync(String, String)}
+     */
+    @Override
+    public Response deleteObject(String repository, String objectName) {
+        return join(deleteObjectAsync(repository, objectName));
+    }
+
+    /**
+     * Deletes several objects of a repository assuming the requestor has a valid
+     * JWT that gives them access. The tenant is validated once for the
+     * repository, after which the objects are deleted through the Blob Batch API
+     * in batches of up to {@value #MAX_BATCH_SIZE} objects, with up to
+     * batch.max-concurrency batches in flight. Objects of deduplicating
+     * repositories are deleted one by one, as their references need counting.
      * 
      * @param repository name of the repository
-     * @param objectName name of the object
-     * @return Response A JAX-RS response object containing on of the above
-     *         mentioned body
+     * @param model      a {@link BatchDeleteModel} listing the objects to delete
+     * @return Response A JAX-RS Response object containing a list of
+     *         {@link ObjectDeleteResultModel} in the order of the request, or an
+     *         error built by {@link WebResponseBuilder}
      */
     @Override
-    public Response downloadObject(String repository, String objectName) {
-        try {
-            LOG.infof("Object download from '%s/%s' ...", repository, objectName);
+    public Response deleteObjects(String repository, BatchDeleteModel model) {
+        List<String> objectNames = model == null ? null : model.getObjectNames();
+        if (objectNames == null || objectNames.isEmpty() || objectNames.size() > this.batchMaxObjects) {
+            return WebResponseBuilder.build("Batch delete: FAILED - between 1 and " + this.batchMaxObjects
+                    + " objects must be given", Status.BAD_REQUEST.getStatusCode());
+        }
 
-            validateTenantID(repository, objectName);
+        try {
+            LOG.infof("Batch deleting %d objects from '%s' ...", objectNames.size(), repository);
+            validateTenantID(repository, null);
+            boolean deduplicated = isDeduplicated(getRepositoryMetadata(repository));
 
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            BlobClient client = this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(objectName);
-            client.download(outputStream);
-            outputStream.close();
+            List<ObjectDeleteResultModel> results = new ArrayList<>();
+            Deque<Future<List<ObjectDeleteResultModel>>> pending = new ArrayDeque<>();
+            for (int start = 0; start < objectNames.size(); start += MAX_BATCH_SIZE) {
+                List<String> batch = objectNames.subList(start, Math.min(start + MAX_BATCH_SIZE, objectNames.size()));
+                if (pending.size() >= this.batchMaxConcurrency) {
+                    results.addAll(pending.removeFirst().get());
+                }
+                pending.addLast(this.transferExecutor.getExecutorService().submit(
+                        () -> deduplicated ? deleteReferences(repository, batch) : deleteBatch(repository, batch)));
+            }
+            while (!pending.isEmpty()) {
+                results.addAll(pending.removeFirst().get());
+            }
 
-            LOG.infof("Object download from '%s/%s': OK", repository, objectName);
-            return Response.status(Status.OK).entity(outputStream.toByteArray())
-                    .header("Content-Disposition", "attachment;filename=" + objectName).build();
-        } catch (IOException exc) {
-            LOG.errorf("Object download from '%s/%s': FAILED - %s", repository, objectName, exc.getMessage());
-            return WebResponseBuilder.build("Object download: FAILED - " + exc.getMessage(),
+            LOG.infof("Batch deleting %d objects from '%s': OK", objectNames.size(), repository);
+            return Response.status(Status.OK).entity(results).build();
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            LOG.errorf("Batch deleting objects from '%s': FAILED - interrupted", repository);
+            return WebResponseBuilder.build("Batch delete: FAILED - interrupted",
+                    Status.SERVICE_UNAVAILABLE.getStatusCode());
+        } catch (ExecutionException exc) {
+            LOG.errorf("Batch deleting objects from '%s': FAILED - %s", repository, exc.getCause().getMessage());
+            return WebResponseBuilder.build("Batch delete: FAILED - " + exc.getCause().getMessage(),
                     Status.INTERNAL_SERVER_ERROR.getStatusCode());
         } catch (BlobStorageException exc) {
-            LOG.errorf("Object download from '%s/%s': FAILED - %s", repository, objectName, exc.getServiceMessage());
-            return WebResponseBuilder.build("Object download: FAILED - " + exc.getServiceMessage(),
+            LOG.errorf("Batch deleting objects from '%s': FAILED - %s", repository, exc.getServiceMessage());
+            return WebResponseBuilder.build("Batch delete: FAILED - " + exc.getServiceMessage(),
                     exc.getStatusCode());
         }
     }
 
     /**
-     * Uploads the requested object assuming the requestor has a valid JWT that
-     * gives them access. Takes a {@link MultipartFormDataInput} that has a key
-     * called "object" in it. Later versions may improve this to have actual
-     * multi-part uploads, for now single objects are expected.
+     * Submits a single Blob Batch request deleting the given objects. A failing
+     * batch request fails all of its objects, failing objects within a batch do
+     * not affect the others.
+     */
+    List<ObjectDeleteResultModel> deleteBatch(String repository, List<String> objectNames) {
+        BlobBatch batch = this.blobBatchClient.getBlobBatch();
+        List<com.azure.core.http.rest.Response<Void>> responses = new ArrayList<>();
+        for (String objectName : objectNames) {
+            responses.add(batch.deleteBlob(repository, objectName));
+        }
+
+        List<ObjectDeleteResultModel> results = new ArrayList<>();
+        try {
+            this.azureCalls.time(AzureCallMetrics.BATCH_DELETE,
+                    () -> this.blobBatchClient.submitBatchWithResponse(batch, false, null, Context.NONE));
+        } catch (BlobStorageException exc) {
+            LOG.errorf("Batch deleting objects from '%s': FAILED - %s", repository, exc.getServiceMessage());
+            for (String objectName : objectNames) {
+                results.add(new ObjectDeleteResultModel(objectName, exc.getStatusCode(), exc.getServiceMessage()));
+            }
+            return results;
+        }
+
+        for (int i = 0; i < objectNames.size(); i++) {
+            String objectName = objectNames.get(i);
+            int statusCode = responses.get(i).getStatusCode();
+            if (statusCode >= 200 && statusCode < 300) {
+                this.objectInfoCache.invalidate(repository, objectName);
+                this.diskCache.invalidate(repository, objectName);
+                this.memoryCache.invalidate(repository, objectName);
+                this.coalescer.forget(repository, objectName);
+                results.add(new ObjectDeleteResultModel(objectName, Status.NO_CONTENT.getStatusCode(), "OK"));
+            } else {
+                Status status = Status.fromStatusCode(statusCode);
+                results.add(new ObjectDeleteResultModel(objectName, statusCode,
+                        "FAILED - " + (status == null ? "error" : status.getReasonPhrase())));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Deletes the given objects of a deduplicating repository one by one,
+     * reporting the outcome per object like {@link #deleteBatch(String, List)}.
+     */
+    List<ObjectDeleteResultModel> deleteReferences(String repository, List<String> objectNames) {
+        DeduplicationIndex index = deduplicationIndex(repository);
+        List<ObjectDeleteResultModel> results = new ArrayList<>();
+        for (String objectName : objectNames) {
+            if (DeduplicationIndex.isReserved(objectName)) {
+                results.add(new ObjectDeleteResultModel(objectName, Status.BAD_REQUEST.getStatusCode(),
+                        "FAILED - object name is reserved"));
+                continue;
+            }
+            try {
+                index.deleteReference(objectName);
+                this.objectInfoCache.invalidate(repository, objectName);
+                this.diskCache.invalidate(repository, objectName);
+                this.memoryCache.invalidate(repository, objectName);
+                this.coalescer.forget(repository, objectName);
+                results.add(new ObjectDeleteResultModel(objectName, Status.NO_CONTENT.getStatusCode(), "OK"));
+            } catch (BlobStorageException exc) {
+                results.add(new ObjectDeleteResultModel(objectName, exc.getStatusCode(),
+                        "FAILED - " + exc.getServiceMessage()));
+            } catch (WebApplicationException exc) {
+                results.add(new ObjectDeleteResultModel(objectName, exc.getResponse().getStatus(),
+                        "FAILED - " + exc.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Lists one page of the objects in a repository assuming the requestor has a
+     * valid JWT that gives them access. A page maps onto a single page of the
+     * Azure blob listing, the continuation token wraps its marker. Upload
+     * sessions and the index and content of deduplicating repositories are left
+     * out, so pages may hold fewer objects.
      * 
-     * @param repository   name of the repository
-     * @param objectUpload a multi-part form {@link MultipartFormDataInput}
-     *                     containing the contents of the file
-     * @return Response A Response object containing either an error message or an
-     *         empty body with 201 Created
+     * @param repository        name of the repository
+     * @param prefix            only list objects whose name starts with this,
+     *                          may be null
+     * @param pageSize          the maximum number of objects to return
+     * @param continuationToken the token of a previous page, or null for the
+     *                          first page
+     * @return Response A JAX-RS Response object streaming the page, or an error
+     *         built by {@link WebResponseBuilder}
      */
     @Override
-    public Response uploadObject(String repository, MultipartFormDataInput objectUpload) throws ForbiddenException {
+    public Response listObjects(String repository, String prefix, int pageSize, String continuationToken) {
+        if (pageSize < 1 || pageSize > ListingResponseBuilder.MAX_PAGE_SIZE) {
+            return WebResponseBuilder.build("Listing objects: FAILED - pageSize must be between 1 and "
+                    + ListingResponseBuilder.MAX_PAGE_SIZE, Status.BAD_REQUEST.getStatusCode());
+        }
+
         try {
-            LOG.infof("Object upload to '%s' ...", repository);
-            Map<String, List<InputPart>> uploadForm = objectUpload.getFormDataMap();
-            List<InputPart> inputParts = uploadForm.get("object");
+            LOG.infof("Listing objects of '%s' ...", repository);
+            String tenantID = validateTenantID(repository, null);
+            boolean deduplicated = isDeduplicated(getRepositoryMetadata(repository));
+            String marker = ListingResponseBuilder.decodeToken(continuationToken);
 
-            if (inputParts == null) {
-                throw new WebApplicationException(
-                        "Uploading file '%s/%s': FAILED - unable to get form parameter 'object' from Multipart form");
-            }
+            ListBlobsOptions options = new ListBlobsOptions().setPrefix(prefix).setMaxResultsPerPage(pageSize)
+                    .setDetails(new BlobListDetails().setRetrieveMetadata(true));
+            BlobContainerClient client = this.blobStorageClient.getBlobContainerClient(repository);
+            PagedResponse<BlobItem> page = this.azureCalls.time(AzureCallMetrics.LIST, () -> {
+                PagedIterable<BlobItem> blobs = client.listBlobs(options, null);
+                return (marker == null ? blobs.iterableByPage() : blobs.iterableByPage(marker)).iterator().next();
+            });
 
-            // There is a bug that inputStream.available() only returns 1kb which causes the
-            // file to be truncated, and passing any other int to blockblobclient.upload()
-            // causes the Azure SDK to throw an exception on number of bytes read being
-            // mismatched. To work around it we write to disk first so we can use the
-            // blobclient.uploadFromFile() functionality.
-
-            // InputStream inputStream = inputParts.get(0).getBody(InputStream.class, null);
-            // this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(objectName).getBlockBlobClient().upload(inputStream,
-            // inputStream.available());
-            // inputStream.close();
-
-            InputStream inputStream = inputParts.get(0).getBody(InputStream.class, null);
-            String fileName = getFilenameFromHeaders(inputParts.get(0).getHeaders());
-            File tempFile = new File("/tmp/" + fileName);
-
-            String repositoryTenantID = this.blobStorageClient.getBlobContainerClient(repository).getProperties()
-                    .getMetadata().get(METADATA_TENANT_ID);
-            String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
-            if (repositoryTenantID.equals(jwtTenantID)) {
-                LOG.infof("Object upload to '%s': Writing tempfile to '%s'", repository, tempFile);
-                FileUtils.copyInputStreamToFile(inputStream, tempFile);
-                inputStream.close();
-
-                LOG.infof("Object upload to '%s': Uploading tempfile '%s' ... ", repository, tempFile.getName());
-                BlobClient client = this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(fileName);
-                client.uploadFromFile(tempFile.getAbsolutePath());
-
-                Map<String, String> metadata = this.blobStorageClient.getBlobContainerClient(repository).getProperties()
-                        .getMetadata();
-                this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(fileName).getBlockBlobClient()
-                        .setMetadata(metadata);
-
-                LOG.infof("Object upload to '%s': Uploaded tempfile to '%s': OK", repository, tempFile);
-                FileUtils.deleteQuietly(tempFile);
+            Iterator<ObjectInfoModel> objects = page.getValue().stream()
+                    .filter(item -> !isReserved(item.getName(), deduplicated))
+                    .map(item -> toObjectInfo(item, tenantID)).iterator();
 
-                LOG.infof("Object upload to '%s': OK", repository);
-                return Response.status(Status.CREATED).build();
-            } else {
-                LOG.warnf("Access denied for tenant_id: %s - JWT tenant_id is: '%s'", repositoryTenantID, jwtTenantID);
-                throw new ForbiddenException(METADATA_TENANT_ID + " validation failed");
+            LOG.infof("Listing objects of '%s': OK", repository);
+            return ListingResponseBuilder.build(this.objectMapper, repository, prefix, objects,
+                    page::getContinuationToken);
+        } catch (BlobStorageException exc) {
+            LOG.errorf("Listing objects of '%s': FAILED - %s", repository, exc.getServiceMessage());
+            return WebResponseBuilder.build("Listing objects: FAILED - " + exc.getServiceMessage(),
+                    exc.getStatusCode());
+        }
+    }
+
+    /**
+     * Opens a resumable upload session for an object, see {@link UploadSessions}.
+     * Sessions expire after upload.sessions.ttl-seconds. Objects uploaded in a
+     * session are neither compressed nor deduplicated, so sessions are refused
+     * in such repositories.
+     * 
+     * @param repository name of the repository
+     * @param model      a {@link UploadSessionModel} with at least the objectName
+     * @return Response A JAX-RS Response object containing the new
+     *         {@link UploadSessionModel} with 201 Created, or an error built by
+     *         {@link WebResponseBuilder}
+     */
+    @Override
+    public Response createUploadSession(String repository, UploadSessionModel model) {
+        if (model == null || model.getObjectName() == null || model.getObjectName().isBlank()) {
+            return WebResponseBuilder.build("Creating upload session: FAILED - objectName may not be blank",
+                    Status.BAD_REQUEST.getStatusCode());
+        }
+        String objectName = model.getObjectName();
+        try {
+            LOG.infof("Creating upload session for '%s/%s' ...", repository, objectName);
+            validateTenantID(repository, null);
+
+            Map<String, String> metadata = getRepositoryMetadata(repository);
+            if (isDeduplicated(metadata) || ContentCoding.GZIP.equals(metadata.get(METADATA_COMPRESSION))) {
+                return WebResponseBuilder.build("Creating upload session: FAILED - not supported in compressed "
+                        + "or deduplicating repositories", Status.BAD_REQUEST.getStatusCode());
+            }
+            if (isReserved(objectName, false)) {
+                return WebResponseBuilder.build("Creating upload session: FAILED - object name is reserved",
+                        Status.BAD_REQUEST.getStatusCode());
             }
 
+            UploadSessionModel session = uploadSessions(repository).create(objectName, model.getContentType(),
+                    model.getSize(), OffsetDateTime.now(ZoneOffset.UTC).plusSeconds(this.uploadSessionTtlSeconds));
+            LOG.infof("Creating upload session '%s' for '%s/%s': OK", session.getSessionID(), repository,
+                    objectName);
+            return Response.status(Status.CREATED).entity(session).build();
+        } catch (BlobStorageException | WebApplicationException exc) {
+            return failed(exc, String.format("Creating upload session for '%s/%s'", repository, objectName),
+                    "Creating upload session");
+        }
+    }
+
+    /**
+     * Returns an upload session with the offset the next chunk has to start
+     * at, which is where a client continues after losing its connection.
+     */
+    @Override
+    public Response getUploadSession(String repository, String sessionID) {
+        try {
+            LOG.infof("Retrieving upload session '%s' of '%s' ...", sessionID, repository);
+            validateTenantID(repository, null);
+
+            UploadSessionModel session = uploadSessions(repository).get(sessionID);
+            LOG.infof("Retrieving upload session '%s' of '%s': OK", sessionID, repository);
+            return Response.status(Status.OK).entity(session).build();
+        } catch (BlobStorageException | WebApplicationException exc) {
+            return failed(exc, String.format("Retrieving upload session '%s' of '%s'", sessionID, repository),
+                    "Retrieving upload session");
+        }
+    }
+
+    /**
+     * Streams a chunk into an upload session, staging it in blocks of
+     * upload.block-size as it is read. The chunk has to start at the offset
+     * the session continues at, otherwise 409 Conflict is returned.
+     */
+    @Override
+    public Response appendUploadSession(String repository, String sessionID, long offset, InputStream chunk) {
+        String tenantID = null;
+        long received = -1;
+        this.storageMetrics.uploadStarted();
+        try {
+            LOG.infof("Appending to upload session '%s' of '%s' at offset %d ...", sessionID, repository, offset);
+            tenantID = validateTenantID(repository, null);
+
+            UploadSessionModel session = uploadSessions(repository).append(sessionID, offset, chunk,
+                    this.uploadBlockSize);
+            received = session.getOffset() - offset;
+            LOG.infof("Appending to upload session '%s' of '%s': Received %d bytes: OK", sessionID, repository,
+                    received);
+            return Response.status(Status.OK).entity(session).build();
         } catch (IOException exc) {
-            LOG.errorf("Object upload to '%s': FAILED - %s", repository, exc.getMessage());
-            return WebResponseBuilder.build("Object upload error: " + exc.getMessage(),
+            LOG.errorf("Appending to upload session '%s' of '%s': FAILED - %s", sessionID, repository,
+                    exc.getMessage());
+            return WebResponseBuilder.build("Appending to upload session error: " + exc.getMessage(),
                     Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        } catch (BlobStorageException | WebApplicationException exc) {
+            return failed(exc, String.format("Appending to upload session '%s' of '%s'", sessionID, repository),
+                    "Appending to upload session");
+        } finally {
+            this.storageMetrics.uploadFinished(tenantID, received);
         }
     }
 
     /**
-     * Deletes the requested object assuming the requestor has a valid JWT that
-     * gives them access.
+     * Commits the bytes received by an upload session as the object, replacing
+     * any object of the same name, and closes the session.
+     */
+    @Override
+    public Response completeUploadSession(String repository, String sessionID) {
+        try {
+            LOG.infof("Completing upload session '%s' of '%s' ...", sessionID, repository);
+            String tenantID = validateTenantID(repository, null);
+
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put(METADATA_TENANT_ID, tenantID);
+            UploadSessionModel session = uploadSessions(repository).complete(sessionID, metadata);
+            this.objectInfoCache.invalidate(repository, session.getObjectName());
+            this.diskCache.invalidate(repository, session.getObjectName());
+            this.memoryCache.invalidate(repository, session.getObjectName());
+            this.coalescer.forget(repository, session.getObjectName());
+
+            LOG.infof("Completing upload session '%s' of '%s': Stored %d bytes as '%s': OK", sessionID, repository,
+                    session.getOffset(), session.getObjectName());
+            return Response.status(Status.CREATED).entity(session).build();
+        } catch (BlobStorageException | WebApplicationException exc) {
+            return failed(exc, String.format("Completing upload session '%s' of '%s'", sessionID, repository),
+                    "Completing upload session");
+        }
+    }
+
+    /**
+     * Closes an upload session without storing the object. Its staged blocks
+     * are discarded by Azure Storage.
+     */
+    @Override
+    public Response abortUploadSession(String repository, String sessionID) {
+        try {
+            LOG.infof("Aborting upload session '%s' of '%s' ...", sessionID, repository);
+            validateTenantID(repository, null);
+
+            uploadSessions(repository).abort(sessionID);
+            LOG.infof("Aborting upload session '%s' of '%s': OK", sessionID, repository);
+            return Response.status(Status.NO_CONTENT).build();
+        } catch (BlobStorageException | WebApplicationException exc) {
+            return failed(exc, String.format("Aborting upload session '%s' of '%s'", sessionID, repository),
+                    "Aborting upload session");
+        }
+    }
+
+    /**
+     * Retrieves metadata about an object on the {@link BlobServiceAsyncClient},
+     * without holding a thread while waiting for Azure Storage. Validates if the
+     * tenant id in the JWT token matches the tenant id of the file. Results are
+     * served from the {@link ObjectInfoCache} when possible, optionally
+     * revalidated against the cached ETag. Answers with 304 Not Modified if the
+     * client's validators still match.
+     * 
+     * @param repository The name of the repository
+     * @param objectName The name of the object
+     * @param headers    The headers of the request, used for conditional requests
+     * @return CompletionStage A JAX-RS Response object containing a
+     *         {@link ObjectInfoModel} model, or an error built by
+     *         {@link WebResponseBuilder}
+     */
+    @Override
+    public CompletionStage<Response> getObjectInfoAsync(String repository, String objectName, HttpHeaders headers) {
+        LOG.infof("Retrieving object info from '%s/%s' ...", repository, objectName);
+        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
+        BlobAsyncClient client = this.blobStorageAsyncClient.getBlobContainerAsyncClient(repository)
+                .getBlobAsyncClient(objectName);
+
+        return getRepositoryMetadataAsync(repository).thenCompose(metadata -> {
+            validateTenantID(metadata, jwtTenantID);
+
+            long generation = this.objectInfoCache.generation();
+            ObjectInfoModel cached = this.objectInfoCache.get(repository, objectName);
+            Mono<ObjectInfoModel> objectInfo;
+            if (cached == null) {
+                objectInfo = getPropertiesAsync(repository, objectName, client)
+                        .map(properties -> toObjectInfo(objectName, properties));
+            } else if (this.objectInfoCache.isRevalidate()) {
+                objectInfo = this.azureCalls.timeAsync(AzureCallMetrics.GET_PROPERTIES,
+                        client.getPropertiesWithResponse(new BlobRequestConditions().setIfNoneMatch(cached.getEtag())))
+                        .map(response -> toObjectInfo(objectName, response.getValue()))
+                        .onErrorResume(BlobStorageException.class,
+                                exc -> exc.getStatusCode() == Status.NOT_MODIFIED.getStatusCode() ? Mono.just(cached)
+                                        : Mono.error(exc));
+            } else {
+                objectInfo = Mono.just(cached);
+            }
+
+            return objectInfo.map(info -> {
+                if (info != cached) {
+                    this.objectInfoCache.put(repository, objectName, info, generation);
+                }
+                String cacheControl = getCacheControl(metadata);
+                if (ConditionalRequests.isNotModified(headers, info.getEtag(), info.getLastModified())) {
+                    LOG.infof("Retrieving object info from '%s/%s': Not modified", repository, objectName);
+                    return ConditionalRequests.notModified(info.getEtag(), info.getLastModified(), cacheControl);
+                }
+                LOG.infof("Retrieving object info from '%s/%s': OK", repository, objectName);
+                return ConditionalRequests.withValidators(Response.status(Status.OK).entity(info), info.getEtag(),
+                        info.getLastModified(), cacheControl).build();
+            }).toFuture();
+        }).exceptionally(exc -> failed(exc, "Retrieving object info from '" + repository + "/" + objectName + "'",
+                "Retrieving object info"));
+    }
+
+    /**
+     * Downloads the requested object assuming the requestor has a valid JWT that
+     * gives them access. The body is streamed from the
+     * {@link BlobServiceAsyncClient} with {@link DownloadResponseBuilder#buildAsync},
+     * writing every buffer as it arrives from Azure Storage without holding a
+     * thread while the client reads, so memory use per request stays constant
+     * regardless of the object size. Range requests are mapped to ranged blob
+     * reads, and large ranges are fetched in concurrent chunks that are written
+     * in order, see {@link ParallelRangeWriter}. Conditional requests are
+     * evaluated against the blob properties, so a 304 Not Modified never
+     * transfers the blob body. Objects of compressed repositories are negotiated
+     * on Accept-Encoding, see {@link ContentCoding}, and decompressed buffer by
+     * buffer for clients that do not accept gzip.
+     * Errors return a {@link WebResponseBuilder} wrapped error
      * 
      * @param repository name of the repository
      * @param objectName name of the object
-     * @return Response A JAX-RS Response object containing either an error message
-     *         in the body or an empty body with 204 No Content
+     * @param headers    the headers of the request, used for Range and
+     *                   conditional request handling
+     * @return CompletionStage A JAX-RS response object containing one of the
+     *         above mentioned bodies
      */
     @Override
-    public Response deleteObject(String repository, String objectName) {
-        try {
-            LOG.infof("Deleting object '%s/%s' ...", objectName, repository);
-            validateTenantID(repository, objectName);
+    public CompletionStage<Response> downloadObjectAsync(String repository, String objectName,
+            HttpHeaders headers) {
+        LOG.infof("Object download from '%s/%s' ...", repository, objectName);
+        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
+        BlobAsyncClient client = this.blobStorageAsyncClient.getBlobContainerAsyncClient(repository)
+                .getBlobAsyncClient(objectName);
 
-            this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(objectName).delete();
+        return getRepositoryMetadataAsync(repository).thenCompose(metadata -> {
+            String tenantID = validateTenantID(metadata, jwtTenantID);
 
-            LOG.infof("Deleting object '%s/%s': OK", objectName, repository);
-            return Response.status(Status.NO_CONTENT).build();
-        } catch (BlobStorageException exc) {
-            LOG.errorf("Deleting object '%s/%s': FAILED - %s", repository, objectName, exc.getServiceMessage());
-            return WebResponseBuilder.build("Deleting object: FAILED - " + exc.getServiceMessage(),
+            Mono<Response> response = getPropertiesAsync(repository, objectName, client).map(properties -> {
+                if (isCompressed(properties) && !ContentCoding.acceptsGzip(headers)) {
+                    AsyncRangeWriter decoded = this.storageMetrics.meterAsyncDownload(tenantID,
+                            ContentCoding.decodeGzip(storedObjectAsyncWriter(repository, objectName, properties),
+                                    DeduplicationIndex.blobSize(properties)));
+                    return ContentCoding.withContentCoding(DownloadResponseBuilder.buildAsync(headers, objectName,
+                            uncompressedSize(properties), properties.getContentType(),
+                            ContentCoding.identityETag(properties.getETag()), properties.getLastModified(),
+                            getCacheControl(metadata), decoded), null);
+                }
+                Response stored = DownloadResponseBuilder.buildAsync(headers, objectName,
+                        DeduplicationIndex.blobSize(properties),
+                        properties.getContentType(), properties.getETag(), properties.getLastModified(),
+                        getCacheControl(metadata), this.storageMetrics.meterAsyncDownload(tenantID,
+                                storedObjectAsyncWriter(repository, objectName, properties)));
+                return isCompressed(properties) ? ContentCoding.withContentCoding(stored, ContentCoding.GZIP)
+                        : stored;
+            });
+            return response.toFuture();
+        }).exceptionally(
+                exc -> failed(exc, "Object download from '" + repository + "/" + objectName + "'", "Object download"));
+    }
+
+    /**
+     * Deletes the requested object on the {@link BlobServiceAsyncClient}
+     * assuming the requestor has a valid JWT that gives them access.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @return CompletionStage A JAX-RS Response object containing either an
+     *         error message in the body or an empty body with 204 No Content
+     */
+    @Override
+    public CompletionStage<Response> deleteObjectAsync(String repository, String objectName) {
+        LOG.infof("Deleting object '%s/%s' ...", objectName, repository);
+        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
+        BlobAsyncClient client = this.blobStorageAsyncClient.getBlobContainerAsyncClient(repository)
+                .getBlobAsyncClient(objectName);
+
+        return getRepositoryMetadataAsync(repository).thenCompose(metadata -> {
+            validateTenantID(metadata, jwtTenantID);
+
+            if (isDeduplicated(metadata)) {
+                if (DeduplicationIndex.isReserved(objectName)) {
+                    return CompletableFuture.completedFuture(WebResponseBuilder.build(
+                            "Deleting object: FAILED - object name is reserved", Status.BAD_REQUEST.getStatusCode()));
+                }
+                // Counting references takes several dependent calls, so it runs blocking on the transfer pool
+                return CompletableFuture.supplyAsync(() -> {
+                    deduplicationIndex(repository).deleteReference(objectName);
+                    return deleted(repository, objectName);
+                }, this.transferExecutor.getExecutorService());
+            }
+
+            Mono<Response> response = this.azureCalls
+                    .timeAsync(AzureCallMetrics.DELETE, client.deleteWithResponse(null, null))
+                    .then(Mono.fromCallable(() -> deleted(repository, objectName)));
+            return response.toFuture();
+        }).exceptionally(
+                exc -> failed(exc, "Deleting object '" + repository + "/" + objectName + "'", "Deleting object"));
+    }
+
+    Response deleted(String repository, String objectName) {
+        this.objectInfoCache.invalidate(repository, objectName);
+        this.diskCache.invalidate(repository, objectName);
+        this.memoryCache.invalidate(repository, objectName);
+        this.coalescer.forget(repository, objectName);
+        LOG.infof("Deleting object '%s/%s': OK", objectName, repository);
+        return Response.status(Status.NO_CONTENT).build();
+    }
+
+    /**
+     * Returns a writer of the stored bytes of an object, served from the
+     * {@link ObjectMemoryCache}, the {@link ObjectDiskCache}, a
+     * {@link SharedDownload} or ranged reads from storage, in that order. Every
+     * buffer is written as it arrives from Azure Storage, large ranges are
+     * fetched in concurrent chunks that are written in order. The caches are
+     * only looked up once the body is written, so a response without body holds
+     * no cache entry.
+     */
+    AsyncRangeWriter storedObjectAsyncWriter(String repository, String objectName, BlobProperties properties) {
+        return DownloadResponseBuilder.lazyAsync(() -> storedObjectAsyncSource(repository, objectName, properties));
+    }
+
+    AsyncRangeWriter storedObjectAsyncSource(String repository, String objectName, BlobProperties properties) {
+        String etag = properties.getETag();
+        long size = DeduplicationIndex.blobSize(properties);
+        CachedObject inMemory = this.memoryCache.get(repository, objectName, etag, size);
+        if (inMemory != null) {
+            return inMemory.toAsyncWriter();
+        }
+        CachedFile cached = this.diskCache.get(repository, objectName, etag, size);
+        if (cached != null) {
+            this.memoryCache.fill(repository, objectName, etag, size, cached.toFiller());
+            return cached.toAsyncWriter();
+        }
+        String blobName = DeduplicationIndex.blobName(objectName, properties);
+        BlobAsyncClient client = this.blobStorageAsyncClient.getBlobContainerAsyncClient(repository)
+                .getBlobAsyncClient(blobName);
+        ObjectFiller filler = fullDownload(
+                this.blobStorageClient.getBlobContainerClient(repository).getBlobClient(blobName), properties);
+
+        BlobRequestConditions conditions = DeduplicationIndex.readConditions(properties);
+        ParallelRangeWriter ranges = new ParallelRangeWriter(
+                (offset, count) -> this.azureCalls
+                        .timeAsync(AzureCallMetrics.DOWNLOAD,
+                                client.downloadWithResponse(new BlobRange(offset, count), null, conditions, false))
+                        .flatMapMany(BlobDownloadAsyncResponse::getValue),
+                this.downloadChunkSize, this.downloadMaxConcurrency, this.downloadParallelThreshold);
+        return (offset, count, output) -> {
+            SharedDownload shared = shareDownload(repository, objectName, properties, offset == 0 && count == size);
+            if (shared != null) {
+                return shared.transferToAsync(offset, count, output);
+            }
+            Fill fill = startFill(repository, objectName, etag, size, offset, count, filler);
+            return ranges.write(offset, count, fill == null ? output : fill.tee(output))
+                    .whenComplete((done, exc) -> {
+                        if (exc == null) {
+                            if (fill != null) {
+                                fill.complete();
+                            }
+                            LOG.infof("Object download from '%s/%s' (bytes %d-%d): OK", repository, objectName,
+                                    offset, offset + count - 1);
+                        } else if (!ContentCoding.isRangeComplete(exc)) {
+                            LOG.errorf("Object download from '%s/%s': FAILED - %s", repository, objectName,
+                                    exc.getMessage());
+                        }
+                        if (fill != null) {
+                            fill.close();
+                        }
+                    });
+        };
+    }
+
+    /**
+     * Objects are only decompressed for clients if they were compressed on
+     * upload, which records the uncompressed size.
+     */
+    static boolean isCompressed(BlobProperties properties) {
+        return ContentCoding.GZIP.equals(properties.getContentEncoding()) && properties.getMetadata() != null
+                && properties.getMetadata().containsKey(METADATA_UNCOMPRESSED_SIZE);
+    }
+
+    static long uncompressedSize(BlobProperties properties) {
+        return Long.parseLong(properties.getMetadata().get(METADATA_UNCOMPRESSED_SIZE));
+    }
+
+    /**
+     * Starts filling the cache that is filled after a miss with the bytes of a
+     * download that reads the whole object anyway, so it is not downloaded
+     * twice. Other downloads fill the caches in the background, see
+     * {@link #fillCaches(String, String, String, long, ObjectFiller)}.
+     *
+     * @return Fill The fill to tee the download into, or null
+     */
+    Fill startFill(String repository, String objectName, String etag, long size, long offset, long count,
+            ObjectFiller filler) {
+        ObjectCache<?> cache = this.diskCache.isEnabled() ? this.diskCache : this.memoryCache;
+        Fill fill = offset == 0 && count == size ? cache.startFill(repository, objectName, etag, size) : null;
+        if (fill == null) {
+            fillCaches(repository, objectName, etag, size, filler);
+        }
+        return fill;
+    }
+
+    /**
+     * Fills the caches after a miss. With the {@link ObjectDiskCache} enabled
+     * only the disk cache is filled, the {@link ObjectMemoryCache} is then filled
+     * from disk on hits.
+     */
+    void fillCaches(String repository, String objectName, String etag, long size, ObjectFiller filler) {
+        if (this.diskCache.isEnabled()) {
+            this.diskCache.fill(repository, objectName, etag, size, filler);
+        } else {
+            this.memoryCache.fill(repository, objectName, etag, size, filler);
+        }
+    }
+
+    /**
+     * Downloads the object as it is in storage now, failing instead when it
+     * changed since its properties were read.
+     */
+    ObjectFiller fullDownload(BlobClient client, BlobProperties properties) {
+        BlobRequestConditions conditions = DeduplicationIndex.readConditions(properties);
+        return output -> this.azureCalls.time(AzureCallMetrics.DOWNLOAD,
+                () -> client.downloadWithResponse(output, null, null, conditions, false, null, Context.NONE));
+    }
+
+    /**
+     * Joins the download of the object in flight, or starts one that concurrent
+     * requests can join, see {@link ObjectRequestCoalescer}. The download runs
+     * on the async client, and the caches are filled from it once it completed.
+     *
+     * @param start Whether to start a download if none is in flight
+     * @return SharedDownload The download, or null if it cannot be shared
+     */
+    SharedDownload shareDownload(String repository, String objectName, BlobProperties properties, boolean start) {
+        String etag = properties.getETag();
+        long size = DeduplicationIndex.blobSize(properties);
+        BlobAsyncClient client = this.blobStorageAsyncClient.getBlobContainerAsyncClient(repository)
+                .getBlobAsyncClient(DeduplicationIndex.blobName(objectName, properties));
+        return this.coalescer.download(repository, objectName, etag, size, start,
+                download -> this.azureCalls
+                        .timeAsync(AzureCallMetrics.DOWNLOAD, client.downloadWithResponse(null, null,
+                                DeduplicationIndex.readConditions(properties), false))
+                        .flatMapMany(BlobDownloadAsyncResponse::getValue)
+                        .<Void>handle((buffer, sink) -> {
+                            try {
+                                download.write(buffer);
+                            } catch (IOException exc) {
+                                sink.error(exc);
+                            }
+                        })
+                        .then().toFuture(),
+                completed -> fillCaches(repository, objectName, etag, size,
+                        output -> completed.transferTo(0, size, output)));
+    }
+
+    Mono<BlobProperties> getPropertiesAsync(String repository, String objectName, BlobAsyncClient client) {
+        return Mono.fromCompletionStage(() -> this.coalescer.getPropertiesAsync(repository, objectName,
+                () -> this.azureCalls.timeAsync(AzureCallMetrics.GET_PROPERTIES, client.getProperties()).toFuture()));
+    }
+
+    static boolean isDeduplicated(Map<String, String> repositoryMetadata) {
+        return Boolean.parseBoolean(repositoryMetadata.get(METADATA_DEDUPLICATION));
+    }
+
+    UploadSessions uploadSessions(String repository) {
+        return new UploadSessions(this.blobStorageClient.getBlobContainerClient(repository), this.azureCalls);
+    }
+
+    /**
+     * Upload sessions, and the index and content of deduplicating repositories,
+     * live next to the objects under reserved names
+     */
+    static boolean isReserved(String objectName, boolean deduplicated) {
+        return UploadSessions.isReserved(objectName) || deduplicated && DeduplicationIndex.isReserved(objectName);
+    }
+
+    DeduplicationIndex deduplicationIndex(String repository) {
+        return new DeduplicationIndex(this.blobStorageClient.getBlobContainerClient(repository), this.azureCalls);
+    }
+
+    /**
+     * Waits for the response of a non-blocking operation. Failures that were
+     * not turned into an error response are rethrown as they were raised.
+     */
+    static Response join(CompletionStage<Response> response) {
+        try {
+            return response.toCompletableFuture().join();
+        } catch (CompletionException exc) {
+            if (exc.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exc.getCause();
+            }
+            throw exc;
+        }
+    }
+
+    /**
+     * Maps the failure of an asynchronous operation to the same responses the
+     * blocking operations return, as these no longer pass through the request
+     * thread. The upload session operations map their failures here as well.
+     */
+    Response failed(Throwable failure, String target, String operation) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause()
+                : failure;
+        if (cause instanceof BlobStorageException) {
+            BlobStorageException exc = (BlobStorageException) cause;
+            LOG.errorf("%s: FAILED - %s", target, exc.getServiceMessage());
+            return WebResponseBuilder.build(operation + ": FAILED - " + exc.getServiceMessage(),
                     exc.getStatusCode());
+        } else if (cause instanceof WebApplicationException) {
+            LOG.errorf("%s: FAILED - %s", target, cause.getMessage());
+            return WebResponseBuilder.build(cause.getMessage(),
+                    ((WebApplicationException) cause).getResponse().getStatus());
         }
+        throw failure instanceof CompletionException ? (CompletionException) failure
+                : new CompletionException(failure);
     }
 
     /**
      * Takes a repository and object and validates if the given JWT token has a
-     * valid tenant id claim and matches with the tenant ID on the object.
+     * valid tenant id claim and matches with the tenant ID on the object. The
+     * repository metadata is served from the {@link RepositoryMetadataCache}.
      * 
      * @param repository name of the repository
      * @param objectName name of the object
      * @return String The tenant id if a match is found
      */
     String validateTenantID(String repository, String objectName) throws ForbiddenException {
-        BlobContainerClient client = this.blobStorageClient.getBlobContainerClient(repository);
-        String tenantID = client.getProperties().getMetadata().get(METADATA_TENANT_ID);
-        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
-
-        LOG.infof(tenantID, jwtTenantID);
+        return validateTenantID(getRepositoryMetadata(repository), jwt.getClaim(METADATA_TENANT_ID).toString());
+    }
 
+    /**
+     * Compares the tenant id of a repository with the tenant id claim of the JWT
+     * token. The claim is passed in, so this can run outside of the request
+     * context once the repository metadata has been loaded asynchronously.
+     * 
+     * @param metadata    the metadata of the repository
+     * @param jwtTenantID the tenant id claim of the JWT token
+     * @return String The tenant id if a match is found
+     */
+    String validateTenantID(Map<String, String> metadata, String jwtTenantID) throws ForbiddenException {
+        String tenantID = metadata.get(METADATA_TENANT_ID);
         if (tenantID == null) {
             throw new WebApplicationException(METADATA_TENANT_ID + " not found on repository", 500);
         } else if ((jwtTenantID.equals(tenantID)) && (tenantID != null)) {
@@ -280,8 +1215,81 @@ public class ObjectsServiceAzureBlobImpl implements ObjectsService {
         }
     }
 
-    String getFilenameFromHeaders(MultivaluedMap<String, String> headers) {
-        return headers.getFirst("Content-Disposition").split(";")[2].split("=")[1].replace("\"", "");
+    CompletionStage<Map<String, String>> getRepositoryMetadataAsync(String repository) {
+        BlobContainerAsyncClient client = this.blobStorageAsyncClient.getBlobContainerAsyncClient(repository);
+        return this.repositoryMetadataCache.getMetadataAsync(repository,
+                () -> this.azureCalls.timeAsync(AzureCallMetrics.GET_CONTAINER_PROPERTIES, client.getProperties())
+                        .map(BlobContainerProperties::getMetadata).toFuture());
+    }
+
+    Map<String, String> getRepositoryMetadata(String repository) {
+        BlobContainerClient client = this.blobStorageClient.getBlobContainerClient(repository);
+        return this.repositoryMetadataCache.getMetadata(repository,
+                () -> this.azureCalls.time(AzureCallMetrics.GET_CONTAINER_PROPERTIES, client::getProperties)
+                        .getMetadata());
+    }
+
+    /**
+     * Returns the Cache-Control policy of a repository, falling back to the
+     * configured default for repositories without a policy.
+     */
+    String getCacheControl(String repository) {
+        return getCacheControl(getRepositoryMetadata(repository));
+    }
+
+    String getCacheControl(Map<String, String> metadata) {
+        return metadata.getOrDefault(METADATA_CACHE_CONTROL, this.defaultCacheControl);
+    }
+
+    ObjectInfoModel toObjectInfo(BlobItem item, String tenantID) {
+        BlobItemProperties properties = item.getProperties();
+        ObjectInfoModel objectInfo = new ObjectInfoModel();
+        objectInfo.setContentType(properties.getContentType());
+        objectInfo.setCreationTime(properties.getCreationTime());
+        objectInfo.setEtag(properties.getETag());
+        objectInfo.setLastModified(properties.getLastModified());
+        Map<String, String> metadata = item.getMetadata() == null ? Map.of() : item.getMetadata();
+        setChecksums(objectInfo, metadata, properties.getContentMd5());
+        objectInfo.setObjectName(item.getName());
+        if (metadata.containsKey(DeduplicationIndex.METADATA_CONTENT_SIZE)) {
+            objectInfo.setObjectSize(Long.parseLong(metadata.get(DeduplicationIndex.METADATA_CONTENT_SIZE)));
+        } else if (metadata.containsKey(METADATA_UNCOMPRESSED_SIZE)) {
+            objectInfo.setObjectSize(Long.parseLong(metadata.get(METADATA_UNCOMPRESSED_SIZE)));
+        } else {
+            objectInfo.setObjectSize(properties.getContentLength());
+        }
+        objectInfo.setTenantID(tenantID);
+        return objectInfo;
+    }
+
+    ObjectInfoModel toObjectInfo(String objectName, BlobProperties properties) {
+        ObjectInfoModel objectInfo = new ObjectInfoModel();
+        objectInfo.setContentType(properties.getContentType());
+        objectInfo.setCreationTime(properties.getCreationTime());
+        objectInfo.setEtag(properties.getETag());
+        objectInfo.setLastModified(properties.getLastModified());
+        setChecksums(objectInfo, properties.getMetadata(), properties.getContentMd5());
+        objectInfo.setObjectName(objectName);
+        objectInfo.setObjectSize(
+                isCompressed(properties) ? uncompressedSize(properties) : DeduplicationIndex.blobSize(properties));
+        objectInfo.setTenantID(properties.getMetadata().get(METADATA_TENANT_ID));
+        return objectInfo;
+    }
+
+    /**
+     * Takes the checksums computed on upload from the metadata. Blobs uploaded
+     * before they were computed only have the Content-MD5 Azure Storage keeps
+     * for blobs uploaded in a single request, if any.
+     */
+    static void setChecksums(ObjectInfoModel objectInfo, Map<String, String> metadata, byte[] contentMd5) {
+        if (metadata != null && metadata.containsKey(METADATA_CONTENT_MD5)) {
+            objectInfo.setMd5sum(metadata.get(METADATA_CONTENT_MD5));
+        } else if (contentMd5 != null) {
+            objectInfo.setMd5sum(Hex.encodeHexString(contentMd5));
+        }
+        if (metadata != null) {
+            objectInfo.setCrc32c(metadata.get(METADATA_CONTENT_CRC32C));
+        }
     }
 
 }
\ No newline at end of file
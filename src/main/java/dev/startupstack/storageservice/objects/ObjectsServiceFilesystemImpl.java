@@ -0,0 +1,480 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import static dev.startupstack.storageservice.Constants.BACKEND_FILESYSTEM;
+import static dev.startupstack.storageservice.Constants.METADATA_CACHE_CONTROL;
+import static dev.startupstack.storageservice.Constants.METADATA_TENANT_ID;
+import static dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.METADATA_CONTENT_CRC32C;
+import static dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.METADATA_CONTENT_MD5;
+import static dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.METADATA_CONTENT_TYPE;
+import static dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.METADATA_CREATED;
+import static dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.METADATA_SIZE;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.NoSuchFileException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.plugins.providers.multipart.InputPart;
+import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
+
+import dev.startupstack.storageservice.objects.models.BatchDeleteModel;
+import dev.startupstack.storageservice.objects.models.ObjectDeleteResultModel;
+import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.objects.models.ObjectUploadResultModel;
+import dev.startupstack.storageservice.utils.ConditionalRequests;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.RangeWriter;
+import dev.startupstack.storageservice.utils.ListingResponseBuilder;
+import dev.startupstack.storageservice.utils.StorageBackend;
+import dev.startupstack.storageservice.utils.StorageMetrics;
+import dev.startupstack.storageservice.utils.UploadResponseBuilder;
+import dev.startupstack.storageservice.utils.WebResponseBuilder;
+import dev.startupstack.storageservice.utils.filesystem.FilesystemStorage;
+import dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.StoredObject;
+
+/**
+ * This implements the ObjectsService on a local filesystem. Objects are stored
+ * as plain files inside the repository directories managed by
+ * {@link FilesystemStorage}, with their metadata in a trailer of the file.
+ */
+@Dependent
+@StorageBackend(BACKEND_FILESYSTEM)
+public class ObjectsServiceFilesystemImpl implements ObjectsService {
+
+    private static final Logger LOG = Logger.getLogger(ObjectsServiceFilesystemImpl.class);
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache-control.default", defaultValue = "private, no-cache")
+    String defaultCacheControl;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.batch.max-objects", defaultValue = "10000")
+    int batchMaxObjects;
+
+    @Inject
+    FilesystemStorage storage;
+
+    @Inject
+    StorageMetrics storageMetrics;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    JsonWebToken jwt;
+
+    /**
+     * Retrieves metadata about an object. Validates if the tenant id in the JWT
+     * token matches the tenant id of the file. Answers with 304 Not Modified if
+     * the client's validators still match.
+     * 
+     * @param repository The name of the repository
+     * @param objectName The name of the object
+     * @param headers    The headers of the request, used for conditional requests
+     * @return Response A JAX-RS Response object containing a
+     *         {@link ObjectInfoModel} model, or an error built by
+     *         {@link WebResponseBuilder}
+     */
+    @Override
+    public Response getObjectInfo(String repository, String objectName, HttpHeaders headers) {
+        try {
+            LOG.infof("Retrieving object info from '%s/%s' ...", repository, objectName);
+
+            validateTenantID(repository, objectName);
+            ObjectInfoModel objectInfo = getObjectInfo(repository, objectName);
+
+            String cacheControl = getCacheControl(repository);
+            if (ConditionalRequests.isNotModified(headers, objectInfo.getEtag(), objectInfo.getLastModified())) {
+                LOG.infof("Retrieving object info from '%s/%s': Not modified", repository, objectName);
+                return ConditionalRequests.notModified(objectInfo.getEtag(), objectInfo.getLastModified(),
+                        cacheControl);
+            }
+
+            LOG.infof("Retrieving object info from '%s/%s': OK", repository, objectName);
+            return ConditionalRequests.withValidators(Response.status(Status.OK).entity(objectInfo),
+                    objectInfo.getEtag(), objectInfo.getLastModified(), cacheControl).build();
+        } catch (NoSuchFileException exc) {
+            LOG.errorf("Retrieving object info from '%s/%s': FAILED - not found", repository, objectName);
+            return WebResponseBuilder.build("Retrieving object info: FAILED - object not found",
+                    Status.NOT_FOUND.getStatusCode());
+        } catch (IOException exc) {
+            LOG.errorf("Retrieving object info from '%s/%s': FAILED - %s", repository, objectName, exc.getMessage());
+            return WebResponseBuilder.build("Retrieving object info: FAILED - " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    /**
+     * Downloads the requested object assuming the requestor has a valid JWT that
+     * gives them access. The file is transferred with FileChannel.transferTo, see
+     * {@link ObjectFileWriter}. Range and conditional requests are handled by the
+     * {@link DownloadResponseBuilder}.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @param headers    the headers of the request, used for Range and
+     *                   conditional request handling
+     * @return Response A JAX-RS response object containing the object or an error
+     *         built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response downloadObject(String repository, String objectName, HttpHeaders headers) {
+        try {
+            LOG.infof("Object download from '%s/%s' ...", repository, objectName);
+
+            String tenantID = validateTenantID(repository, objectName);
+            ObjectInfoModel objectInfo = getObjectInfo(repository, objectName);
+
+            return DownloadResponseBuilder.build(headers, objectName, objectInfo.getObjectSize(),
+                    objectInfo.getContentType(), objectInfo.getEtag(), objectInfo.getLastModified(),
+                    getCacheControl(repository),
+                    this.storageMetrics.meterDownload(tenantID,
+                            new ObjectFileWriter(repository, objectName, objectInfo)));
+        } catch (NoSuchFileException exc) {
+            LOG.errorf("Object download from '%s/%s': FAILED - not found", repository, objectName);
+            return WebResponseBuilder.build("Object download: FAILED - object not found",
+                    Status.NOT_FOUND.getStatusCode());
+        } catch (IOException exc) {
+            LOG.errorf("Object download from '%s/%s': FAILED - %s", repository, objectName, exc.getMessage());
+            return WebResponseBuilder.build("Object download: FAILED - " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    /**
+     * Uploads the requested objects assuming the requestor has a valid JWT that
+     * gives them access. Takes a {@link MultipartFormDataInput} with one or more
+     * parts under the key "object", the tenant is validated once for the
+     * repository. Every object is streamed straight to disk as it is received.
+     * 
+     * @param repository   name of the repository
+     * @param objectUpload a multi-part form {@link MultipartFormDataInput}
+     *                     containing the contents of the files
+     * @return Response A Response object containing either an error message, an
+     *         empty body with 201 Created for a single object, or a list of
+     *         {@link ObjectUploadResultModel} with 201 Created or 207
+     *         Multi-Status for several objects
+     */
+    @Override
+    public Response uploadObject(String repository, MultipartFormDataInput objectUpload) throws ForbiddenException {
+        try {
+            LOG.infof("Object upload to '%s' ...", repository);
+            Map<String, List<InputPart>> uploadForm = objectUpload.getFormDataMap();
+            List<InputPart> inputParts = uploadForm.get("object");
+
+            if (inputParts == null || inputParts.isEmpty()) {
+                return WebResponseBuilder.build("Object upload: FAILED - missing form parameter 'object'",
+                        Status.BAD_REQUEST.getStatusCode());
+            }
+
+            String tenantID = validateTenantID(repository, null);
+
+            if (inputParts.size() == 1) {
+                uploadPart(repository, inputParts.get(0), tenantID);
+                LOG.infof("Object upload to '%s': OK", repository);
+                return Response.status(Status.CREATED).build();
+            }
+
+            List<ObjectUploadResultModel> results = new ArrayList<>();
+            for (InputPart inputPart : inputParts) {
+                results.add(UploadResponseBuilder.uploadPart(repository, inputPart,
+                        part -> uploadPart(repository, part, tenantID)));
+            }
+
+            LOG.infof("Object upload of %d objects to '%s': OK", inputParts.size(), repository);
+            return UploadResponseBuilder.build(results);
+
+        } catch (IOException exc) {
+            LOG.errorf("Object upload to '%s': FAILED - %s", repository, exc.getMessage());
+            return WebResponseBuilder.build("Object upload error: " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    long uploadPart(String repository, InputPart inputPart, String tenantID) throws IOException {
+        String fileName = UploadResponseBuilder.getFilename(inputPart.getHeaders());
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(METADATA_TENANT_ID, tenantID);
+        metadata.put(METADATA_CONTENT_TYPE, inputPart.getMediaType().toString());
+
+        LOG.infof("Object upload to '%s': Streaming '%s' ... ", repository, fileName);
+        long size = -1;
+        this.storageMetrics.uploadStarted();
+        try (InputStream inputStream = inputPart.getBody(InputStream.class, null)) {
+            size = this.storage.writeObject(repository, fileName, inputStream, metadata);
+            LOG.infof("Object upload to '%s': Streamed %d bytes to '%s': OK", repository, size, fileName);
+        } finally {
+            this.storageMetrics.uploadFinished(tenantID, size);
+        }
+        return size;
+    }
+
+    /**
+     * Deletes the requested object assuming the requestor has a valid JWT that
+     * gives them access.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @return Response A JAX-RS Response object containing either an error message
+     *         in the body or an empty body with 204 No Content
+     */
+    @Override
+    public Response deleteObject(String repository, String objectName) {
+        try {
+            LOG.infof("Deleting object '%s/%s' ...", objectName, repository);
+            validateTenantID(repository, objectName);
+
+            this.storage.deleteObject(repository, objectName);
+
+            LOG.infof("Deleting object '%s/%s': OK", objectName, repository);
+            return Response.status(Status.NO_CONTENT).build();
+        } catch (NoSuchFileException exc) {
+            LOG.errorf("Deleting object '%s/%s': FAILED - not found", repository, objectName);
+            return WebResponseBuilder.build("Deleting object: FAILED - object not found",
+                    Status.NOT_FOUND.getStatusCode());
+        } catch (IOException exc) {
+            LOG.errorf("Deleting object '%s/%s': FAILED - %s", repository, objectName, exc.getMessage());
+            return WebResponseBuilder.build("Deleting object: FAILED - " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    /**
+     * Deletes several objects of a repository assuming the requestor has a valid
+     * JWT that gives them access. The tenant is validated once for the
+     * repository.
+     * 
+     * @param repository name of the repository
+     * @param model      a {@link BatchDeleteModel} listing the objects to delete
+     * @return Response A JAX-RS Response object containing a list of
+     *         {@link ObjectDeleteResultModel} in the order of the request, or an
+     *         error built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response deleteObjects(String repository, BatchDeleteModel model) {
+        List<String> objectNames = model == null ? null : model.getObjectNames();
+        if (objectNames == null || objectNames.isEmpty() || objectNames.size() > this.batchMaxObjects) {
+            return WebResponseBuilder.build("Batch delete: FAILED - between 1 and " + this.batchMaxObjects
+                    + " objects must be given", Status.BAD_REQUEST.getStatusCode());
+        }
+
+        LOG.infof("Batch deleting %d objects from '%s' ...", objectNames.size(), repository);
+        validateTenantID(repository, null);
+
+        List<ObjectDeleteResultModel> results = new ArrayList<>();
+        for (String objectName : objectNames) {
+            try {
+                this.storage.deleteObject(repository, objectName);
+                results.add(new ObjectDeleteResultModel(objectName, Status.NO_CONTENT.getStatusCode(), "OK"));
+            } catch (NoSuchFileException exc) {
+                results.add(new ObjectDeleteResultModel(objectName, Status.NOT_FOUND.getStatusCode(),
+                        "FAILED - object not found"));
+            } catch (WebApplicationException exc) {
+                results.add(new ObjectDeleteResultModel(objectName, exc.getResponse().getStatus(),
+                        "FAILED - " + exc.getMessage()));
+            } catch (IOException exc) {
+                LOG.errorf("Deleting object '%s/%s': FAILED - %s", repository, objectName, exc.getMessage());
+                results.add(new ObjectDeleteResultModel(objectName, Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                        "FAILED - " + exc.getMessage()));
+            }
+        }
+
+        LOG.infof("Batch deleting %d objects from '%s': OK", objectNames.size(), repository);
+        return Response.status(Status.OK).entity(results).build();
+    }
+
+    /**
+     * Lists one page of the objects in a repository assuming the requestor has a
+     * valid JWT that gives them access. The continuation token wraps the name of
+     * the last object of the previous page.
+     * 
+     * @param repository        name of the repository
+     * @param prefix            only list objects whose name starts with this,
+     *                          may be null
+     * @param pageSize          the maximum number of objects to return
+     * @param continuationToken the token of a previous page, or null for the
+     *                          first page
+     * @return Response A JAX-RS Response object streaming the page, or an error
+     *         built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response listObjects(String repository, String prefix, int pageSize, String continuationToken) {
+        if (pageSize < 1 || pageSize > ListingResponseBuilder.MAX_PAGE_SIZE) {
+            return WebResponseBuilder.build("Listing objects: FAILED - pageSize must be between 1 and "
+                    + ListingResponseBuilder.MAX_PAGE_SIZE, Status.BAD_REQUEST.getStatusCode());
+        }
+
+        try {
+            LOG.infof("Listing objects of '%s' ...", repository);
+            validateTenantID(repository, null);
+            String after = ListingResponseBuilder.decodeToken(continuationToken);
+
+            List<String> names = this.storage.listObjectNames(repository, prefix, after, pageSize + 1);
+            List<String> page = names.size() > pageSize ? names.subList(0, pageSize) : names;
+            String next = names.size() > pageSize ? page.get(page.size() - 1) : null;
+
+            Iterator<ObjectInfoModel> objects = page.stream().map(name -> {
+                try {
+                    return getObjectInfo(repository, name);
+                } catch (NoSuchFileException exc) {
+                    // Deleted since it was listed
+                    return null;
+                } catch (IOException exc) {
+                    throw new UncheckedIOException(exc);
+                }
+            }).filter(Objects::nonNull).iterator();
+
+            LOG.infof("Listing objects of '%s': OK", repository);
+            return ListingResponseBuilder.build(this.objectMapper, repository, prefix, objects, () -> next);
+        } catch (IOException exc) {
+            LOG.errorf("Listing objects of '%s': FAILED - %s", repository, exc.getMessage());
+            return WebResponseBuilder.build("Listing objects: FAILED - " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    /**
+     * Takes a repository and object and validates if the given JWT token has a
+     * valid tenant id claim and matches with the tenant ID on the repository.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @return String The tenant id if a match is found
+     */
+    String validateTenantID(String repository, String objectName) throws ForbiddenException {
+        String tenantID = getRepositoryMetadata(repository).get(METADATA_TENANT_ID);
+        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
+
+        if (tenantID == null) {
+            throw new WebApplicationException(METADATA_TENANT_ID + " not found on repository", 500);
+        } else if (jwtTenantID.equals(tenantID)) {
+            return tenantID;
+        } else {
+            LOG.warnf("Access denied for tenant_id: %s - JWT tenant_id is: '%s'", tenantID, jwtTenantID);
+            throw new ForbiddenException(METADATA_TENANT_ID + " validation failed");
+        }
+    }
+
+    Map<String, String> getRepositoryMetadata(String repository) {
+        if (!this.storage.repositoryExists(repository)) {
+            throw new NotFoundException("Repository '" + repository + "' not found");
+        }
+        try {
+            return this.storage.getRepositoryMetadata(repository);
+        } catch (IOException exc) {
+            throw new WebApplicationException("Unable to read repository metadata: " + exc.getMessage(), 500);
+        }
+    }
+
+    /**
+     * Returns the Cache-Control policy of a repository, falling back to the
+     * configured default for repositories without a policy.
+     */
+    String getCacheControl(String repository) {
+        return getRepositoryMetadata(repository).getOrDefault(METADATA_CACHE_CONTROL, this.defaultCacheControl);
+    }
+
+    ObjectInfoModel getObjectInfo(String repository, String objectName) throws IOException {
+        Map<String, String> metadata = this.storage.getObjectMetadata(repository, objectName);
+        // Objects are replaced as a whole, so the last version was created when it was last modified
+        OffsetDateTime created = OffsetDateTime.parse(metadata.get(METADATA_CREATED));
+
+        ObjectInfoModel objectInfo = new ObjectInfoModel();
+        objectInfo.setContentType(metadata.get(METADATA_CONTENT_TYPE));
+        objectInfo.setCreationTime(created);
+        objectInfo.setEtag("\"" + metadata.get(METADATA_CONTENT_MD5) + "\"");
+        objectInfo.setLastModified(created);
+        objectInfo.setMd5sum(metadata.get(METADATA_CONTENT_MD5));
+        objectInfo.setCrc32c(metadata.get(METADATA_CONTENT_CRC32C));
+        objectInfo.setObjectName(objectName);
+        objectInfo.setObjectSize(Long.parseLong(metadata.get(METADATA_SIZE)));
+        objectInfo.setTenantID(metadata.get(METADATA_TENANT_ID));
+        return objectInfo;
+    }
+
+    /**
+     * Writes the ranges of a download from one open file, so a multipart
+     * response never mixes two versions of an object. The file is opened on the
+     * first write, as responses without a body are never closed, and the
+     * download fails if the object was replaced since its info was read for
+     * the response headers.
+     */
+    class ObjectFileWriter implements RangeWriter {
+        private final String repository;
+        private final String objectName;
+        private final ObjectInfoModel objectInfo;
+        private StoredObject object;
+
+        ObjectFileWriter(String repository, String objectName, ObjectInfoModel objectInfo) {
+            this.repository = repository;
+            this.objectName = objectName;
+            this.objectInfo = objectInfo;
+        }
+
+        @Override
+        public void write(long offset, long count, OutputStream output) throws IOException {
+            if (this.object == null) {
+                this.object = open();
+            }
+            this.object.transfer(offset, count, output);
+            LOG.infof("Object download from '%s/%s' (bytes %d-%d): OK", this.repository, this.objectName, offset,
+                    offset + count - 1);
+        }
+
+        private StoredObject open() throws IOException {
+            StoredObject opened = storage.openObject(this.repository, this.objectName);
+            if (opened.getSize() != this.objectInfo.getObjectSize() || !Objects
+                    .equals(opened.getMetadata().get(METADATA_CONTENT_MD5), this.objectInfo.getMd5sum())) {
+                opened.close();
+                throw new IOException("Object '" + this.objectName + "' was replaced during the download");
+            }
+            return opened;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.object != null) {
+                this.object.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,370 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects;
+
+import static dev.startupstack.storageservice.Constants.BACKEND_MEMORY;
+import static dev.startupstack.storageservice.Constants.METADATA_CACHE_CONTROL;
+import static dev.startupstack.storageservice.Constants.METADATA_TENANT_ID;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.plugins.providers.multipart.InputPart;
+import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
+
+import dev.startupstack.storageservice.objects.models.BatchDeleteModel;
+import dev.startupstack.storageservice.objects.models.ObjectDeleteResultModel;
+import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.objects.models.ObjectUploadResultModel;
+import dev.startupstack.storageservice.utils.ConditionalRequests;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder;
+import dev.startupstack.storageservice.utils.ListingResponseBuilder;
+import dev.startupstack.storageservice.utils.StorageBackend;
+import dev.startupstack.storageservice.utils.UploadResponseBuilder;
+import dev.startupstack.storageservice.utils.WebResponseBuilder;
+import dev.startupstack.storageservice.utils.memory.MemoryStorage;
+import dev.startupstack.storageservice.utils.memory.MemoryStorage.StoredObject;
+
+/**
+ * This implements the ObjectsService in memory, see {@link MemoryStorage}. It is
+ * meant for load tests and benchmarks, all objects are lost on restart.
+ */
+@Dependent
+@StorageBackend(BACKEND_MEMORY)
+public class ObjectsServiceMemoryImpl implements ObjectsService {
+
+    private static final Logger LOG = Logger.getLogger(ObjectsServiceMemoryImpl.class);
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache-control.default", defaultValue = "private, no-cache")
+    String defaultCacheControl;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.batch.max-objects", defaultValue = "10000")
+    int batchMaxObjects;
+
+    @Inject
+    MemoryStorage storage;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    @Inject
+    JsonWebToken jwt;
+
+    /**
+     * Retrieves metadata about an object. Validates if the tenant id in the JWT
+     * token matches the tenant id of the file. Answers with 304 Not Modified if
+     * the client's validators still match.
+     * 
+     * @param repository The name of the repository
+     * @param objectName The name of the object
+     * @param headers    The headers of the request, used for conditional requests
+     * @return Response A JAX-RS Response object containing a
+     *         {@link ObjectInfoModel} model, or an error built by
+     *         {@link WebResponseBuilder}
+     */
+    @Override
+    public Response getObjectInfo(String repository, String objectName, HttpHeaders headers) {
+        LOG.infof("Retrieving object info from '%s/%s' ...", repository, objectName);
+
+        validateTenantID(repository, objectName);
+        StoredObject object = this.storage.getObject(repository, objectName);
+        if (object == null) {
+            LOG.errorf("Retrieving object info from '%s/%s': FAILED - not found", repository, objectName);
+            return WebResponseBuilder.build("Retrieving object info: FAILED - object not found",
+                    Status.NOT_FOUND.getStatusCode());
+        }
+        ObjectInfoModel objectInfo = toObjectInfo(objectName, object);
+
+        String cacheControl = getCacheControl(repository);
+        if (ConditionalRequests.isNotModified(headers, objectInfo.getEtag(), objectInfo.getLastModified())) {
+            LOG.infof("Retrieving object info from '%s/%s': Not modified", repository, objectName);
+            return ConditionalRequests.notModified(objectInfo.getEtag(), objectInfo.getLastModified(), cacheControl);
+        }
+
+        LOG.infof("Retrieving object info from '%s/%s': OK", repository, objectName);
+        return ConditionalRequests.withValidators(Response.status(Status.OK).entity(objectInfo),
+                objectInfo.getEtag(), objectInfo.getLastModified(), cacheControl).build();
+    }
+
+    /**
+     * Downloads the requested object assuming the requestor has a valid JWT that
+     * gives them access. Range and conditional requests are handled by the
+     * {@link DownloadResponseBuilder}.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @param headers    the headers of the request, used for Range and
+     *                   conditional request handling
+     * @return Response A JAX-RS response object containing the object or an error
+     *         built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response downloadObject(String repository, String objectName, HttpHeaders headers) {
+        LOG.infof("Object download from '%s/%s' ...", repository, objectName);
+
+        validateTenantID(repository, objectName);
+        StoredObject object = this.storage.getObject(repository, objectName);
+        if (object == null) {
+            LOG.errorf("Object download from '%s/%s': FAILED - not found", repository, objectName);
+            return WebResponseBuilder.build("Object download: FAILED - object not found",
+                    Status.NOT_FOUND.getStatusCode());
+        }
+
+        return DownloadResponseBuilder.build(headers, objectName, object.getSize(), object.getContentType(),
+                etag(object), object.getCreated(), getCacheControl(repository), object::write);
+    }
+
+    /**
+     * Uploads the requested objects assuming the requestor has a valid JWT that
+     * gives them access. Takes a {@link MultipartFormDataInput} with one or more
+     * parts under the key "object", the tenant is validated once for the
+     * repository.
+     * 
+     * @param repository   name of the repository
+     * @param objectUpload a multi-part form {@link MultipartFormDataInput}
+     *                     containing the contents of the files
+     * @return Response A Response object containing either an error message, an
+     *         empty body with 201 Created for a single object, or a list of
+     *         {@link ObjectUploadResultModel} with 201 Created or 207
+     *         Multi-Status for several objects
+     */
+    @Override
+    public Response uploadObject(String repository, MultipartFormDataInput objectUpload) throws ForbiddenException {
+        try {
+            LOG.infof("Object upload to '%s' ...", repository);
+            Map<String, List<InputPart>> uploadForm = objectUpload.getFormDataMap();
+            List<InputPart> inputParts = uploadForm.get("object");
+
+            if (inputParts == null || inputParts.isEmpty()) {
+                return WebResponseBuilder.build("Object upload: FAILED - missing form parameter 'object'",
+                        Status.BAD_REQUEST.getStatusCode());
+            }
+
+            String tenantID = validateTenantID(repository, null);
+
+            if (inputParts.size() == 1) {
+                uploadPart(repository, inputParts.get(0), tenantID);
+                LOG.infof("Object upload to '%s': OK", repository);
+                return Response.status(Status.CREATED).build();
+            }
+
+            List<ObjectUploadResultModel> results = new ArrayList<>();
+            for (InputPart inputPart : inputParts) {
+                results.add(UploadResponseBuilder.uploadPart(repository, inputPart,
+                        part -> uploadPart(repository, part, tenantID).getSize()));
+            }
+
+            LOG.infof("Object upload of %d objects to '%s': OK", inputParts.size(), repository);
+            return UploadResponseBuilder.build(results);
+
+        } catch (IOException exc) {
+            LOG.errorf("Object upload to '%s': FAILED - %s", repository, exc.getMessage());
+            return WebResponseBuilder.build("Object upload error: " + exc.getMessage(),
+                    Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    StoredObject uploadPart(String repository, InputPart inputPart, String tenantID) throws IOException {
+        String fileName = UploadResponseBuilder.getFilename(inputPart.getHeaders());
+
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(METADATA_TENANT_ID, tenantID);
+
+        try (InputStream inputStream = inputPart.getBody(InputStream.class, null)) {
+            StoredObject object = this.storage.putObject(repository, fileName, inputStream,
+                    inputPart.getMediaType().toString(), metadata);
+            LOG.infof("Object upload to '%s': Stored %d bytes as '%s': OK", repository, object.getSize(), fileName);
+            return object;
+        }
+    }
+
+    /**
+     * Deletes the requested object assuming the requestor has a valid JWT that
+     * gives them access.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @return Response A JAX-RS Response object containing either an error message
+     *         in the body or an empty body with 204 No Content
+     */
+    @Override
+    public Response deleteObject(String repository, String objectName) {
+        LOG.infof("Deleting object '%s/%s' ...", objectName, repository);
+        validateTenantID(repository, objectName);
+
+        if (!this.storage.deleteObject(repository, objectName)) {
+            LOG.errorf("Deleting object '%s/%s': FAILED - not found", repository, objectName);
+            return WebResponseBuilder.build("Deleting object: FAILED - object not found",
+                    Status.NOT_FOUND.getStatusCode());
+        }
+
+        LOG.infof("Deleting object '%s/%s': OK", objectName, repository);
+        return Response.status(Status.NO_CONTENT).build();
+    }
+
+    /**
+     * Deletes several objects of a repository assuming the requestor has a valid
+     * JWT that gives them access. The tenant is validated once for the
+     * repository.
+     * 
+     * @param repository name of the repository
+     * @param model      a {@link BatchDeleteModel} listing the objects to delete
+     * @return Response A JAX-RS Response object containing a list of
+     *         {@link ObjectDeleteResultModel} in the order of the request, or an
+     *         error built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response deleteObjects(String repository, BatchDeleteModel model) {
+        List<String> objectNames = model == null ? null : model.getObjectNames();
+        if (objectNames == null || objectNames.isEmpty() || objectNames.size() > this.batchMaxObjects) {
+            return WebResponseBuilder.build("Batch delete: FAILED - between 1 and " + this.batchMaxObjects
+                    + " objects must be given", Status.BAD_REQUEST.getStatusCode());
+        }
+
+        LOG.infof("Batch deleting %d objects from '%s' ...", objectNames.size(), repository);
+        validateTenantID(repository, null);
+
+        List<ObjectDeleteResultModel> results = new ArrayList<>();
+        for (String objectName : objectNames) {
+            if (this.storage.deleteObject(repository, objectName)) {
+                results.add(new ObjectDeleteResultModel(objectName, Status.NO_CONTENT.getStatusCode(), "OK"));
+            } else {
+                results.add(new ObjectDeleteResultModel(objectName, Status.NOT_FOUND.getStatusCode(),
+                        "FAILED - object not found"));
+            }
+        }
+
+        LOG.infof("Batch deleting %d objects from '%s': OK", objectNames.size(), repository);
+        return Response.status(Status.OK).entity(results).build();
+    }
+
+    /**
+     * Lists one page of the objects in a repository assuming the requestor has a
+     * valid JWT that gives them access. The continuation token wraps the name of
+     * the last object of the previous page.
+     * 
+     * @param repository        name of the repository
+     * @param prefix            only list objects whose name starts with this,
+     *                          may be null
+     * @param pageSize          the maximum number of objects to return
+     * @param continuationToken the token of a previous page, or null for the
+     *                          first page
+     * @return Response A JAX-RS Response object streaming the page, or an error
+     *         built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response listObjects(String repository, String prefix, int pageSize, String continuationToken) {
+        if (pageSize < 1 || pageSize > ListingResponseBuilder.MAX_PAGE_SIZE) {
+            return WebResponseBuilder.build("Listing objects: FAILED - pageSize must be between 1 and "
+                    + ListingResponseBuilder.MAX_PAGE_SIZE, Status.BAD_REQUEST.getStatusCode());
+        }
+
+        LOG.infof("Listing objects of '%s' ...", repository);
+        validateTenantID(repository, null);
+        String after = ListingResponseBuilder.decodeToken(continuationToken);
+
+        List<Map.Entry<String, StoredObject>> entries = this.storage.listObjects(repository, prefix, after,
+                pageSize + 1);
+        List<Map.Entry<String, StoredObject>> page = entries.size() > pageSize ? entries.subList(0, pageSize)
+                : entries;
+        String next = entries.size() > pageSize ? page.get(page.size() - 1).getKey() : null;
+
+        Iterator<ObjectInfoModel> objects = page.stream()
+                .map(entry -> toObjectInfo(entry.getKey(), entry.getValue())).iterator();
+
+        LOG.infof("Listing objects of '%s': OK", repository);
+        return ListingResponseBuilder.build(this.objectMapper, repository, prefix, objects, () -> next);
+    }
+
+    /**
+     * Takes a repository and object and validates if the given JWT token has a
+     * valid tenant id claim and matches with the tenant ID on the repository.
+     * 
+     * @param repository name of the repository
+     * @param objectName name of the object
+     * @return String The tenant id if a match is found
+     */
+    String validateTenantID(String repository, String objectName) throws ForbiddenException {
+        String tenantID = getRepositoryMetadata(repository).get(METADATA_TENANT_ID);
+        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
+
+        if (tenantID == null) {
+            throw new WebApplicationException(METADATA_TENANT_ID + " not found on repository", 500);
+        } else if (jwtTenantID.equals(tenantID)) {
+            return tenantID;
+        } else {
+            LOG.warnf("Access denied for tenant_id: %s - JWT tenant_id is: '%s'", tenantID, jwtTenantID);
+            throw new ForbiddenException(METADATA_TENANT_ID + " validation failed");
+        }
+    }
+
+    Map<String, String> getRepositoryMetadata(String repository) {
+        Map<String, String> metadata = this.storage.getRepositoryMetadata(repository);
+        if (metadata == null) {
+            throw new NotFoundException("Repository '" + repository + "' not found");
+        }
+        return metadata;
+    }
+
+    /**
+     * Returns the Cache-Control policy of a repository, falling back to the
+     * configured default for repositories without a policy.
+     */
+    String getCacheControl(String repository) {
+        return getRepositoryMetadata(repository).getOrDefault(METADATA_CACHE_CONTROL, this.defaultCacheControl);
+    }
+
+    ObjectInfoModel toObjectInfo(String objectName, StoredObject object) {
+        ObjectInfoModel objectInfo = new ObjectInfoModel();
+        objectInfo.setContentType(object.getContentType());
+        objectInfo.setCreationTime(object.getCreated());
+        objectInfo.setEtag(etag(object));
+        objectInfo.setLastModified(object.getCreated());
+        objectInfo.setMd5sum(object.getMd5());
+        objectInfo.setCrc32c(object.getCrc32c());
+        objectInfo.setObjectName(objectName);
+        objectInfo.setObjectSize(object.getSize());
+        objectInfo.setTenantID(object.getMetadata().get(METADATA_TENANT_ID));
+        return objectInfo;
+    }
+
+    static String etag(StoredObject object) {
+        return "\"" + object.getMd5() + "\"";
+    }
+
+}
@@ -29,6 +29,7 @@ public class ObjectInfoModel {
     private String objectURL;
 
     private String md5sum;
+    private String crc32c;
     private String contentType;
     private String etag;
     private String tenantID;
@@ -37,6 +38,8 @@ public class ObjectInfoModel {
 
     private OffsetDateTime creationTime;
 
+    private OffsetDateTime lastModified;
+
 
     public OffsetDateTime getCreationTime() {
         return this.creationTime;
@@ -46,6 +49,14 @@ public class ObjectInfoModel {
         this.creationTime = creationTime;
     }
 
+    public OffsetDateTime getLastModified() {
+        return this.lastModified;
+    }
+
+    public void setLastModified(OffsetDateTime lastModified) {
+        this.lastModified = lastModified;
+    }
+
     public String getObjectName() {
         return this.objectName;
     }
@@ -78,6 +89,14 @@ public class ObjectInfoModel {
         this.md5sum = md5sum;
     }
 
+    public String getCrc32c() {
+        return this.crc32c;
+    }
+
+    public void setCrc32c(String crc32c) {
+        this.crc32c = crc32c;
+    }
+
     public String getContentType() {
         return this.contentType;
     }
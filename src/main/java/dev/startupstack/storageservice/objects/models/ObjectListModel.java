@@ -0,0 +1,74 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects.models;
+
+import java.util.List;
+
+/**
+ * A page of an object listing. Listings are streamed by
+ * {@link dev.startupstack.storageservice.utils.ListingResponseBuilder} rather
+ * than serialized from this model, which describes their shape.
+ */
+public class ObjectListModel {
+
+    private String repository;
+
+    private String prefix;
+
+    private List<ObjectInfoModel> objects;
+
+    private String continuationToken;
+
+
+    public ObjectListModel() {
+
+    }
+
+    public String getRepository() {
+        return this.repository;
+    }
+
+    public void setRepository(String repository) {
+        this.repository = repository;
+    }
+
+    public String getPrefix() {
+        return this.prefix;
+    }
+
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public List<ObjectInfoModel> getObjects() {
+        return this.objects;
+    }
+
+    public void setObjects(List<ObjectInfoModel> objects) {
+        this.objects = objects;
+    }
+
+    public String getContinuationToken() {
+        return this.continuationToken;
+    }
+
+    public void setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+    }
+
+}
@@ -0,0 +1,111 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.objects.models;
+
+import java.time.OffsetDateTime;
+
+import javax.validation.constraints.NotBlank;
+
+/**
+ * A resumable upload session. Clients create it with the objectName and
+ * optionally the contentType and total size, then append chunks at the
+ * returned offset until the object is complete.
+ */
+public class UploadSessionModel {
+
+    private String sessionID;
+
+    @NotBlank(message = "objectName may not be blank")
+    private String objectName;
+
+    private String contentType;
+
+    private Long size;
+
+    private long offset;
+
+    private OffsetDateTime expiresAt;
+
+
+    public UploadSessionModel() {
+
+    }
+
+    public UploadSessionModel(String sessionID, String objectName, String contentType, Long size, long offset,
+            OffsetDateTime expiresAt) {
+        this.sessionID = sessionID;
+        this.objectName = objectName;
+        this.contentType = contentType;
+        this.size = size;
+        this.offset = offset;
+        this.expiresAt = expiresAt;
+    }
+
+    public String getSessionID() {
+        return this.sessionID;
+    }
+
+    public void setSessionID(String sessionID) {
+        this.sessionID = sessionID;
+    }
+
+    public String getObjectName() {
+        return this.objectName;
+    }
+
+    public void setObjectName(String objectName) {
+        this.objectName = objectName;
+    }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getSize() {
+        return this.size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    /**
+     * @return long The number of bytes received so far, where the next chunk
+     *         has to start
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public OffsetDateTime getExpiresAt() {
+        return this.expiresAt;
+    }
+
+    public void setExpiresAt(OffsetDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+}
@@ -35,6 +35,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+import org.eclipse.microprofile.metrics.annotation.Timed;
 import org.eclipse.microprofile.openapi.annotations.Operation;
 import org.eclipse.microprofile.openapi.annotations.media.Content;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
@@ -70,6 +71,7 @@ public class RepositoriesResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{name}")
     @RolesAllowed({ROLE_TENANT_ADMIN, ROLE_TENANT_USER})
+    @Timed(name = "repositories_get", absolute = true, description = "Time spent retrieving repositories")
     public Response getRepository(@NotBlank @PathParam("name") final String name) {
         return repositoriesService.getRepository(name);
     }
@@ -83,6 +85,7 @@ public class RepositoriesResource {
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
     @RolesAllowed(ROLE_TENANT_ADMIN)
+    @Timed(name = "repositories_create", absolute = true, description = "Time spent creating repositories")
     public Response createRepository(RepositoriesModel model) {
         return repositoriesService.createRepository(model);
     }
@@ -97,6 +100,7 @@ public class RepositoriesResource {
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/{name}")
     @RolesAllowed(ROLE_TENANT_ADMIN)
+    @Timed(name = "repositories_delete", absolute = true, description = "Time spent deleting repositories")
     public Response deleteRepository(@NotBlank @PathParam("name") final String name) {
         return repositoriesService.deleteRepository(name);
     }
@@ -17,6 +17,10 @@
 */
 package dev.startupstack.storageservice.repostitories;
 
+import static dev.startupstack.storageservice.Constants.BACKEND_AZURE;
+import static dev.startupstack.storageservice.Constants.METADATA_CACHE_CONTROL;
+import static dev.startupstack.storageservice.Constants.METADATA_COMPRESSION;
+import static dev.startupstack.storageservice.Constants.METADATA_DEDUPLICATION;
 import static dev.startupstack.storageservice.Constants.METADATA_TENANT_ID;
 
 import java.util.HashMap;
@@ -30,6 +34,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.Response.Status;
 
+import com.azure.core.util.Context;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.models.BlobStorageException;
@@ -38,10 +43,18 @@ import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.eclipse.microprofile.jwt.JsonWebToken;
 import org.jboss.logging.Logger;
 
+import dev.startupstack.storageservice.objects.ObjectDiskCache;
+import dev.startupstack.storageservice.objects.ObjectInfoCache;
+import dev.startupstack.storageservice.objects.ObjectMemoryCache;
+import dev.startupstack.storageservice.objects.ObjectRequestCoalescer;
 import dev.startupstack.storageservice.repostitories.models.RepositoriesModel;
 import dev.startupstack.storageservice.repostitories.models.RepositoriesResponseModel;
+import dev.startupstack.storageservice.utils.ContentCoding;
+import dev.startupstack.storageservice.utils.StorageBackend;
 import dev.startupstack.storageservice.utils.WebResponseBuilder;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
 import dev.startupstack.storageservice.utils.azure.AzureIdentityService;
+import dev.startupstack.storageservice.utils.azure.RepositoryMetadataCache;
 
 /**
  * This implements the RepositoriesService for an Azure Blob Storage Account. It
@@ -50,6 +63,7 @@ import dev.startupstack.storageservice.utils.azure.AzureIdentityService;
  * 
  */
 @Dependent
+@StorageBackend(BACKEND_AZURE)
 public class RepositoriesServiceAzureContainerImpl implements RepositoriesService {
 
     private static final Logger LOG = Logger.getLogger(RepositoriesServiceAzureContainerImpl.class);
@@ -61,6 +75,24 @@ public class RepositoriesServiceAzureContainerImpl implements RepositoriesServic
     @Inject
     AzureIdentityService azureIdentityService;
 
+    @Inject
+    RepositoryMetadataCache repositoryMetadataCache;
+
+    @Inject
+    ObjectInfoCache objectInfoCache;
+
+    @Inject
+    ObjectDiskCache diskCache;
+
+    @Inject
+    ObjectMemoryCache memoryCache;
+
+    @Inject
+    ObjectRequestCoalescer coalescer;
+
+    @Inject
+    AzureCallMetrics azureCalls;
+
     @Inject
     JsonWebToken jwt;
 
@@ -73,7 +105,11 @@ public class RepositoriesServiceAzureContainerImpl implements RepositoriesServic
 
     /**
      * Creates a new repository based on the given {@link RepositoriesModel}. The
-     * tenant ID will be created based on a the value set in the JWT token
+     * tenant ID will be created based on a the value set in the JWT token. An
+     * optional Cache-Control policy is stored with the repository and applied to
+     * all downloads of its objects, an optional compression mode to all uploads.
+     * Repositories created with deduplication store identical uploads once, see
+     * {@link dev.startupstack.storageservice.utils.azure.DeduplicationIndex}
      * 
      * @param model A given {@link RepositoriesModel} object
      * @return Response A JAX-RS Response containing an empty body or an error
@@ -84,11 +120,38 @@ public class RepositoriesServiceAzureContainerImpl implements RepositoriesServic
         try {
             LOG.infof("Creating repository blob storage container '%s' ...", model.getName());
 
+            String compression = model.getCompression();
+            if (compression != null && !ContentCoding.GZIP.equals(compression)
+                    && !ContentCoding.NONE.equals(compression)) {
+                LOG.errorf("Creating repository blob storage container '%s': FAILED - unsupported compression '%s'",
+                        model.getName(), compression);
+                return WebResponseBuilder.build("Unsupported compression '" + compression + "', expected '"
+                        + ContentCoding.GZIP + "' or '" + ContentCoding.NONE + "'", Status.BAD_REQUEST.getStatusCode());
+            }
+            if (model.isDeduplication() && ContentCoding.GZIP.equals(compression)) {
+                LOG.errorf("Creating repository blob storage container '%s': FAILED - deduplication with compression",
+                        model.getName());
+                return WebResponseBuilder.build("Deduplication cannot be combined with compression",
+                        Status.BAD_REQUEST.getStatusCode());
+            }
+
             Map<String, String> metadata = new HashMap<>();
             metadata.put(METADATA_TENANT_ID, jwt.getClaim(METADATA_TENANT_ID).toString());
-
-            BlobContainerClient container = this.blobStorageClient.createBlobContainer(model.getName());
-            container.setMetadata(metadata);
+            if (model.getCacheControl() != null) {
+                metadata.put(METADATA_CACHE_CONTROL, model.getCacheControl());
+            }
+            if (ContentCoding.GZIP.equals(compression)) {
+                metadata.put(METADATA_COMPRESSION, compression);
+            }
+            if (model.isDeduplication()) {
+                metadata.put(METADATA_DEDUPLICATION, Boolean.TRUE.toString());
+            }
+
+            BlobContainerClient container = this.azureCalls.time(AzureCallMetrics.CREATE_CONTAINER,
+                    () -> this.blobStorageClient.createBlobContainer(model.getName()));
+            this.azureCalls.time(AzureCallMetrics.SET_METADATA,
+                    () -> container.setMetadataWithResponse(metadata, null, null, Context.NONE));
+            this.repositoryMetadataCache.invalidate(model.getName());
 
             LOG.infof("Creating repository blob storage container '%s': OK", model.getName());
             return Response.status(Status.CREATED).build();
@@ -140,7 +203,14 @@ public class RepositoriesServiceAzureContainerImpl implements RepositoriesServic
             LOG.infof("Deleting repository blob storage container '%s' ...", name);
             validateTenantID(name);
 
-            this.blobStorageClient.deleteBlobContainer(name);
+            this.azureCalls.time(AzureCallMetrics.DELETE_CONTAINER,
+                    () -> this.blobStorageClient.getBlobContainerClient(name).deleteWithResponse(null, null,
+                            Context.NONE));
+            this.repositoryMetadataCache.invalidate(name);
+            this.objectInfoCache.invalidateRepository(name);
+            this.diskCache.invalidateRepository(name);
+            this.memoryCache.invalidateRepository(name);
+            this.coalescer.forgetRepository(name);
 
             LOG.infof("Deleting repository blob storage container '%s': OK", name);
             return Response.status(Status.NO_CONTENT).build();
@@ -153,7 +223,8 @@ public class RepositoriesServiceAzureContainerImpl implements RepositoriesServic
 
     /**
      * Takes a container name and compares the tenant ID of the JWT token with the
-     * tenant ID of the repository.
+     * tenant ID of the repository. The repository metadata is served from the
+     * {@link RepositoryMetadataCache}.
      * 
      * @param containerName The name of the container to compare
      * @return String The Tenant ID if the token and container match
@@ -162,7 +233,11 @@ public class RepositoriesServiceAzureContainerImpl implements RepositoriesServic
      */
     String validateTenantID(String containerName) throws ForbiddenException {
         BlobContainerClient container = this.blobStorageClient.getBlobContainerClient(containerName);
-        String tenantID = container.getProperties().getMetadata().get(METADATA_TENANT_ID);
+        String tenantID = this.repositoryMetadataCache
+                .getMetadata(containerName,
+                        () -> this.azureCalls.time(AzureCallMetrics.GET_CONTAINER_PROPERTIES, container::getProperties)
+                                .getMetadata())
+                .get(METADATA_TENANT_ID);
         String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
 
         if (tenantID == null) {
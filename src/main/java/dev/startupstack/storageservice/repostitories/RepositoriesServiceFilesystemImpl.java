@@ -0,0 +1,186 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.repostitories;
+
+import static dev.startupstack.storageservice.Constants.BACKEND_FILESYSTEM;
+import static dev.startupstack.storageservice.Constants.METADATA_CACHE_CONTROL;
+import static dev.startupstack.storageservice.Constants.METADATA_TENANT_ID;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+import javax.ws.rs.ForbiddenException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.jboss.logging.Logger;
+
+import dev.startupstack.storageservice.repostitories.models.RepositoriesModel;
+import dev.startupstack.storageservice.repostitories.models.RepositoriesResponseModel;
+import dev.startupstack.storageservice.utils.ContentCoding;
+import dev.startupstack.storageservice.utils.StorageBackend;
+import dev.startupstack.storageservice.utils.WebResponseBuilder;
+import dev.startupstack.storageservice.utils.filesystem.FilesystemStorage;
+
+/**
+ * This implements the RepositoriesService on a local filesystem. Repositories
+ * are directories below the configured storage root, see
+ * {@link FilesystemStorage}.
+ */
+@Dependent
+@StorageBackend(BACKEND_FILESYSTEM)
+public class RepositoriesServiceFilesystemImpl implements RepositoriesService {
+
+    private static final Logger LOG = Logger.getLogger(RepositoriesServiceFilesystemImpl.class);
+
+    @Inject
+    FilesystemStorage storage;
+
+    @Inject
+    JsonWebToken jwt;
+
+    /**
+     * Creates a new repository based on the given {@link RepositoriesModel}. The
+     * tenant ID will be created based on a the value set in the JWT token.
+     * 
+     * @param model A given {@link RepositoriesModel} object
+     * @return Response A JAX-RS Response containing an empty body or an error
+     *         message built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response createRepository(RepositoriesModel model) {
+        try {
+            LOG.infof("Creating repository directory '%s' ...", model.getName());
+
+            String compression = model.getCompression();
+            if (compression != null && !ContentCoding.NONE.equals(compression)) {
+                LOG.errorf("Creating repository directory '%s': FAILED - unsupported compression '%s'",
+                        model.getName(), compression);
+                return WebResponseBuilder.build("Unsupported compression '" + compression + "', expected '"
+                        + ContentCoding.NONE + "'", Status.BAD_REQUEST.getStatusCode());
+            }
+            if (model.isDeduplication()) {
+                LOG.errorf("Creating repository directory '%s': FAILED - deduplication is not supported",
+                        model.getName());
+                return WebResponseBuilder.build("Deduplication is not supported by this backend",
+                        Status.BAD_REQUEST.getStatusCode());
+            }
+
+            Map<String, String> metadata = new HashMap<>();
+            metadata.put(METADATA_TENANT_ID, jwt.getClaim(METADATA_TENANT_ID).toString());
+            if (model.getCacheControl() != null) {
+                metadata.put(METADATA_CACHE_CONTROL, model.getCacheControl());
+            }
+
+            if (!this.storage.createRepository(model.getName(), metadata)) {
+                LOG.errorf("Creating repository directory '%s': FAILED - already exists", model.getName());
+                return WebResponseBuilder.build("The specified repository already exists.",
+                        Status.CONFLICT.getStatusCode());
+            }
+
+            LOG.infof("Creating repository directory '%s': OK", model.getName());
+            return Response.status(Status.CREATED).build();
+
+        } catch (IOException exc) {
+            LOG.errorf("Creating repository directory '%s': FAILED - %s", model.getName(), exc.getMessage());
+            return WebResponseBuilder.build(exc.getMessage(), Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    /**
+     * Retrieves information of a given repository. You can only get info from a
+     * repository if the tenant ID in the JWT token matches the tenant ID of the
+     * repository.
+     * 
+     * @param name The name of the repository
+     * @return Response The JAX-RS Response object containing a
+     *         {@link RepositoriesResponseModel}
+     */
+    @Override
+    public Response getRepository(String name) {
+        LOG.infof("Getting repository directory '%s' ...", name);
+        String tenantID = validateTenantID(name);
+
+        LOG.infof("Getting repository directory '%s': OK", name);
+        return Response.status(Status.OK).entity(new RepositoriesResponseModel(name, tenantID)).build();
+    }
+
+    /**
+     * Deletes a given repository including all of its objects. You can only
+     * delete a repository if the tenant ID in the JWT token matches the tenant ID
+     * of the repository.
+     * 
+     * @param name The name of the repository
+     * @return Response A JAX-RS Response object with either no body or an error
+     *         message built by {@link WebResponseBuilder}
+     */
+    @Override
+    public Response deleteRepository(String name) {
+        try {
+            LOG.infof("Deleting repository directory '%s' ...", name);
+            validateTenantID(name);
+
+            this.storage.deleteRepository(name);
+
+            LOG.infof("Deleting repository directory '%s': OK", name);
+            return Response.status(Status.NO_CONTENT).build();
+
+        } catch (IOException exc) {
+            LOG.errorf("Deleting repository directory '%s': FAILED - %s", name, exc.getMessage());
+            return WebResponseBuilder.build(exc.getMessage(), Status.INTERNAL_SERVER_ERROR.getStatusCode());
+        }
+    }
+
+    /**
+     * Takes a repository name and compares the tenant ID of the JWT token with the
+     * tenant ID of the repository.
+     * 
+     * @param name The name of the repository to compare
+     * @return String The Tenant ID if the token and repository match
+     * @throws ForbiddenException If the tenant IDs don't match a ForbiddenException
+     *                            is thrown
+     */
+    String validateTenantID(String name) throws ForbiddenException {
+        if (!this.storage.repositoryExists(name)) {
+            throw new NotFoundException("Repository '" + name + "' not found");
+        }
+
+        String tenantID;
+        try {
+            tenantID = this.storage.getRepositoryMetadata(name).get(METADATA_TENANT_ID);
+        } catch (IOException exc) {
+            throw new WebApplicationException("Unable to read repository metadata: " + exc.getMessage(), 500);
+        }
+        String jwtTenantID = jwt.getClaim(METADATA_TENANT_ID).toString();
+
+        if (tenantID == null) {
+            throw new WebApplicationException(METADATA_TENANT_ID + " not found on repository", 500);
+        } else if (jwtTenantID.equals(tenantID)) {
+            return tenantID;
+        } else {
+            LOG.warnf("Access denied for tenant_id: %s - JWT tenant_id is: '%s'", tenantID, jwtTenantID);
+            throw new ForbiddenException(METADATA_TENANT_ID + " validation failed");
+        }
+    }
+}
@@ -29,6 +29,20 @@ public class RepositoriesModel {
     @NotBlank(message = "name may not be blank")
     private String name;
 
+    private String cacheControl;
+
+    /**
+     * Compression of objects at rest, either "gzip" or "none". Only the Azure
+     * backend supports gzip, the other backends reject it.
+     */
+    private String compression;
+
+    /**
+     * Whether identical uploads are stored once and referenced. Only supported
+     * by the Azure backend, and cannot be combined with compression.
+     */
+    private boolean deduplication;
+
     public RepositoriesModel() {
 
     }
@@ -45,4 +59,28 @@ public class RepositoriesModel {
         this.name = name;
     }
 
+    public String getCacheControl() {
+        return this.cacheControl;
+    }
+
+    public void setCacheControl(String cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    public String getCompression() {
+        return this.compression;
+    }
+
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public boolean isDeduplication() {
+        return this.deduplication;
+    }
+
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
 }
\ No newline at end of file
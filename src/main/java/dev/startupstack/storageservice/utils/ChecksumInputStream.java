@@ -0,0 +1,114 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.zip.CRC32C;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Computes the MD5 and CRC32C checksums of a stream while it is being read, so
+ * uploads get their checksums without a second pass over the data. The MD5 is
+ * what clients usually verify against, the CRC32C is far cheaper to verify on
+ * large objects.
+ */
+public class ChecksumInputStream extends FilterInputStream {
+
+    private final MessageDigest md5 = DigestUtils.getMd5Digest();
+    private final CRC32C crc32c = new CRC32C();
+    private String md5sum;
+
+    public ChecksumInputStream(InputStream input) {
+        super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            this.md5.update((byte) value);
+            this.crc32c.update(value);
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int read = super.read(buffer, offset, length);
+        if (read > 0) {
+            this.md5.update(buffer, offset, read);
+            this.crc32c.update(buffer, offset, read);
+        }
+        return read;
+    }
+
+    /**
+     * Skipped bytes still have to be part of the checksums, so they are read
+     */
+    @Override
+    public long skip(long count) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(count, 8192)];
+        long skipped = 0;
+        while (skipped < count) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+            if (read < 0) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * @return String The hex encoded MD5 of all bytes read, only valid once the
+     *         stream has been read completely
+     */
+    public String getMd5() {
+        if (this.md5sum == null) {
+            this.md5sum = Hex.encodeHexString(this.md5.digest());
+        }
+        return this.md5sum;
+    }
+
+    /**
+     * @return String The CRC32C of all bytes read as 8 hex digits, only valid
+     *         once the stream has been read completely
+     */
+    public String getCrc32c() {
+        return String.format("%08x", this.crc32c.getValue());
+    }
+}
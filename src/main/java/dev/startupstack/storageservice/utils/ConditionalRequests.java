@@ -0,0 +1,126 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+
+/**
+ * A helper class for HTTP validators: it emits ETag, Last-Modified and
+ * Cache-Control headers and evaluates If-None-Match and If-Modified-Since
+ * (RFC 7232) so unchanged objects can be answered with 304 Not Modified.
+ */
+public class ConditionalRequests {
+
+    public static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    public static final String HEADER_ETAG = "ETag";
+    public static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    public static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    public static final String HEADER_LAST_MODIFIED = "Last-Modified";
+
+    /**
+     * Checks whether the client already has the current representation. If
+     * If-None-Match is present If-Modified-Since is ignored, as the RFC
+     * requires.
+     *
+     * @param headers      The headers of the incoming request
+     * @param etag         The current ETag of the object, may be null
+     * @param lastModified The last modification time of the object, may be null
+     * @return boolean true if a 304 Not Modified should be returned
+     */
+    public static boolean isNotModified(HttpHeaders headers, String etag, OffsetDateTime lastModified) {
+        String ifNoneMatch = headers.getHeaderString(HEADER_IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            if (etag == null) {
+                return false;
+            }
+            String current = opaqueTag(etag);
+            for (String candidate : ifNoneMatch.split(",")) {
+                String tag = candidate.trim();
+                if (tag.equals("*") || opaqueTag(tag).equals(current)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String ifModifiedSince = headers.getHeaderString(HEADER_IF_MODIFIED_SINCE);
+        if (ifModifiedSince != null && lastModified != null) {
+            try {
+                ZonedDateTime since = ZonedDateTime.parse(ifModifiedSince.trim(),
+                        DateTimeFormatter.RFC_1123_DATE_TIME);
+                return lastModified.toEpochSecond() <= since.toEpochSecond();
+            } catch (DateTimeParseException exc) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds a 304 Not Modified response carrying the current validators.
+     */
+    public static Response notModified(String etag, OffsetDateTime lastModified, String cacheControl) {
+        return withValidators(Response.status(Status.NOT_MODIFIED), etag, lastModified, cacheControl).build();
+    }
+
+    /**
+     * Adds the ETag, Last-Modified and Cache-Control headers to a response.
+     * Missing values are skipped.
+     */
+    public static ResponseBuilder withValidators(ResponseBuilder response, String etag, OffsetDateTime lastModified,
+            String cacheControl) {
+        if (etag != null) {
+            response.header(HEADER_ETAG, quote(etag));
+        }
+        if (lastModified != null) {
+            response.header(HEADER_LAST_MODIFIED,
+                    DateTimeFormatter.RFC_1123_DATE_TIME.format(lastModified.atZoneSameInstant(ZoneOffset.UTC)));
+        }
+        if (cacheControl != null) {
+            response.header(HEADER_CACHE_CONTROL, cacheControl);
+        }
+        return response;
+    }
+
+    /**
+     * Strips the weakness indicator and quotes, for weak comparison.
+     */
+    static String opaqueTag(String etag) {
+        String value = etag.trim();
+        if (value.startsWith("W/")) {
+            value = value.substring(2);
+        }
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    static String quote(String etag) {
+        return etag.startsWith("\"") || etag.startsWith("W/") ? etag : "\"" + etag + "\"";
+    }
+}
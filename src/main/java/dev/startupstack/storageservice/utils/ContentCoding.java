@@ -0,0 +1,287 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status.Family;
+
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+
+/**
+ * Helpers for objects that are stored compressed. Clients that accept the
+ * stored content coding get the stored bytes as they are, with a matching
+ * Content-Encoding header. All other clients get the object decompressed
+ * while it is streamed, which is a different representation with its own
+ * size and ETag. Both carry Vary: Accept-Encoding, so caches keep them apart.
+ */
+public class ContentCoding {
+
+    public static final String GZIP = "gzip";
+    public static final String NONE = "none";
+
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    public static final String HEADER_VARY = "Vary";
+
+    private static final String IDENTITY_SUFFIX = "-identity";
+
+    /**
+     * Evaluates the Accept-Encoding header of a request (RFC 7231, section
+     * 5.3.4). Requests without the header are served uncompressed.
+     *
+     * @return boolean True if gzip, x-gzip or * is accepted with a non-zero
+     *         quality
+     */
+    public static boolean acceptsGzip(HttpHeaders headers) {
+        String header = headers.getHeaderString(HEADER_ACCEPT_ENCODING);
+        if (header == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double wildcard = null;
+        for (String element : header.split(",")) {
+            String[] parameters = element.split(";");
+            String coding = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException exc) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = quality;
+            } else if ("*".equals(coding)) {
+                wildcard = quality;
+            }
+        }
+        return gzip != null ? gzip > 0 : wildcard != null && wildcard > 0;
+    }
+
+    /**
+     * Derives the ETag of the decompressed representation from the ETag of the
+     * stored one, as both have to differ for conditional and range requests.
+     */
+    public static String identityETag(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        String value = DownloadResponseBuilder.stripQuotes(etag) + IDENTITY_SUFFIX;
+        return etag.trim().startsWith("\"") ? "\"" + value + "\"" : value;
+    }
+
+    /**
+     * Adds the Vary header to a download response of a compressed object, and
+     * the Content-Encoding header if the stored bytes are sent.
+     *
+     * @param contentEncoding The coding of the body, or null if it has been
+     *                        decompressed
+     */
+    public static Response withContentCoding(Response response, String contentEncoding) {
+        ResponseBuilder builder = Response.fromResponse(response).header(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        if (contentEncoding != null && response.getStatusInfo().getFamily() == Family.SUCCESSFUL) {
+            builder.header(HEADER_CONTENT_ENCODING, contentEncoding);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Wraps the writer of a gzip compressed object into a writer of the
+     * decompressed object. Every buffer is decompressed as it is written and
+     * the next one is only accepted once its output was written, so no thread
+     * blocks and memory use stays constant. As gzip streams cannot be entered
+     * in the middle, every range is decompressed from the start of the object.
+     * Once the range is written, reading the rest of the object is aborted.
+     *
+     * @param stored     Writes the compressed bytes as stored
+     * @param storedSize The size of the compressed object
+     * @return AsyncRangeWriter A writer of ranges of the decompressed object
+     */
+    public static AsyncRangeWriter decodeGzip(AsyncRangeWriter stored, long storedSize) {
+        return new AsyncRangeWriter() {
+            @Override
+            public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+                GzipDecodingOutputStream decoder = new GzipDecodingOutputStream(output, offset, count);
+                CompletionStage<Void> written;
+                try {
+                    written = stored.write(0, storedSize, decoder);
+                } catch (RuntimeException exc) {
+                    written = CompletableFuture.failedFuture(exc);
+                }
+                return written.handle((ignored, exc) -> {
+                    decoder.end();
+                    if (exc != null && !isRangeComplete(exc)) {
+                        throw exc instanceof CompletionException ? (CompletionException) exc
+                                : new CompletionException(exc);
+                    }
+                    if (decoder.remaining > 0) {
+                        throw new CompletionException(
+                                new IOException("Compressed object ended " + decoder.remaining + " bytes early"));
+                    }
+                    return null;
+                });
+            }
+
+            @Override
+            public void close() throws IOException {
+                stored.close();
+            }
+        };
+    }
+
+    /**
+     * @return boolean true if the failure only aborted reading a compressed
+     *         object because the decoded range was complete, see
+     *         {@link #decodeGzip}
+     */
+    public static boolean isRangeComplete(Throwable failure) {
+        return RangeComplete.isCause(failure);
+    }
+
+    /**
+     * Fails the writes to the decoder to stop the stored writer once the range
+     * was written. Writers may wrap it, e.g. into a CompletionException.
+     */
+    private static class RangeComplete extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RangeComplete() {
+            super("Range complete");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+
+        static boolean isCause(Throwable exc) {
+            for (Throwable cause = exc; cause != null; cause = cause.getCause()) {
+                if (cause instanceof RangeComplete) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Decompresses the gzip bytes written to it and passes a range of the
+     * result on to the target. Only the header written by
+     * {@link GzipCompressingInputStream} is supported, without optional fields.
+     * A write completes once everything decompressed from it was written, its
+     * buffer is not used after that.
+     */
+    private static class GzipDecodingOutputStream extends AsyncOutputStream {
+
+        private static final int HEADER_SIZE = 10;
+
+        private final AsyncOutputStream target;
+        private final Inflater inflater = new Inflater(true);
+        private final byte[] header = new byte[HEADER_SIZE];
+        private final byte[] buffer = new byte[64 * 1024];
+
+        private int headerRead;
+        private long skip;
+        private long remaining;
+
+        GzipDecodingOutputStream(AsyncOutputStream target, long offset, long count) {
+            this.target = target;
+            this.skip = offset;
+            this.remaining = count;
+        }
+
+        @Override
+        public void write(int value) throws IOException {
+            throw new IOException("Only non-blocking writes are supported");
+        }
+
+        @Override
+        public CompletionStage<Void> asyncFlush() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Void> asyncWrite(byte[] bytes, int offset, int length) {
+            if (this.headerRead < HEADER_SIZE) {
+                int read = Math.min(length, HEADER_SIZE - this.headerRead);
+                System.arraycopy(bytes, offset, this.header, this.headerRead, read);
+                this.headerRead += read;
+                offset += read;
+                length -= read;
+                if (this.headerRead == HEADER_SIZE && (this.header[0] != 0x1f || this.header[1] != (byte) 0x8b
+                        || this.header[2] != Deflater.DEFLATED || this.header[3] != 0)) {
+                    return CompletableFuture.failedFuture(new IOException("Unsupported gzip header"));
+                }
+            }
+            if (this.remaining == 0) {
+                return CompletableFuture.failedFuture(new RangeComplete());
+            }
+            if (length == 0 || this.inflater.finished()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            this.inflater.setInput(bytes, offset, length);
+            return inflate();
+        }
+
+        /**
+         * Decompresses the input until the inflater needs more, writing every
+         * decompressed buffer before the next one is decompressed into it
+         */
+        private CompletionStage<Void> inflate() {
+            try {
+                while (this.remaining > 0 && !this.inflater.finished() && !this.inflater.needsInput()) {
+                    int inflated = this.inflater.inflate(this.buffer);
+                    int start = (int) Math.min(this.skip, inflated);
+                    this.skip -= start;
+                    int length = (int) Math.min(this.remaining, inflated - start);
+                    if (length > 0) {
+                        this.remaining -= length;
+                        return this.target.asyncWrite(this.buffer, start, length)
+                                .thenCompose(ignored -> inflate());
+                    }
+                }
+            } catch (DataFormatException exc) {
+                return CompletableFuture
+                        .failedFuture(new IOException("Corrupt gzip data: " + exc.getMessage(), exc));
+            }
+            return this.remaining == 0 ? CompletableFuture.failedFuture(new RangeComplete())
+                    : CompletableFuture.completedFuture(null);
+        }
+
+        void end() {
+            this.inflater.end();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+import org.jboss.resteasy.spi.AsyncStreamingOutput;
+
+import dev.startupstack.storageservice.utils.HttpRange.RangeNotSatisfiableException;
+
+/**
+ * A helper class that builds the response for an object download, independent
+ * of the storage backend. It takes care of conditional requests, Range and
+ * If-Range handling and answers with either 304 Not Modified, the full object,
+ * a single partial range or a multipart/byteranges body. The actual bytes are
+ * pulled from the backend through a {@link RangeWriter}, or without blocking
+ * through an {@link AsyncRangeWriter}, while the response is being streamed.
+ * Every writer is closed exactly once per response, after its body has been
+ * written or right away on 304 and 416. The body of a response to a HEAD
+ * request is never written, so its writer is not closed either, writers that
+ * hold resources acquire them on the first write, see {@link #lazy}.
+ */
+public class DownloadResponseBuilder {
+
+    private static final Logger LOG = Logger.getLogger(DownloadResponseBuilder.class);
+
+    public static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    public static final String HEADER_CONTENT_RANGE = "Content-Range";
+    public static final String HEADER_IF_RANGE = "If-Range";
+    public static final String HEADER_RANGE = "Range";
+
+    private static final String CRLF = "\r\n";
+
+    /**
+     * Writes a part of an object to the given output stream. A writer is used
+     * for a single response and closed once that no longer needs it, writers
+     * wrapping another one have to close it in turn.
+     */
+    @FunctionalInterface
+    public interface RangeWriter extends Closeable {
+        void write(long offset, long count, OutputStream output) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * Writes a part of an object to the given output stream without blocking,
+     * completing the returned stage once all bytes have been written. Closed
+     * like a {@link RangeWriter}.
+     */
+    @FunctionalInterface
+    public interface AsyncRangeWriter extends Closeable {
+        CompletionStage<Void> write(long offset, long count, AsyncOutputStream output);
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    /**
+     * Creates the writer of a response on its first write, so the resources it
+     * holds, such as open files or cache entries, are only acquired for
+     * responses whose body is written and therefore closed.
+     *
+     * @param factory Creates the writer, called at most once
+     * @return RangeWriter A writer that closes the created one when closed
+     */
+    public static RangeWriter lazy(Supplier<RangeWriter> factory) {
+        return new RangeWriter() {
+            private RangeWriter writer;
+
+            @Override
+            public void write(long offset, long count, OutputStream output) throws IOException {
+                if (this.writer == null) {
+                    this.writer = factory.get();
+                }
+                this.writer.write(offset, count, output);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.writer != null) {
+                    this.writer.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * The non-blocking counterpart of {@link #lazy(Supplier)}. Writes of a
+     * response follow each other, so the writer is created only once.
+     */
+    public static AsyncRangeWriter lazyAsync(Supplier<AsyncRangeWriter> factory) {
+        return new AsyncRangeWriter() {
+            private AsyncRangeWriter writer;
+
+            @Override
+            public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+                if (this.writer == null) {
+                    this.writer = factory.get();
+                }
+                return this.writer.write(offset, count, output);
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (this.writer != null) {
+                    this.writer.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Builds the download response for an object.
+     *
+     * @param headers      The headers of the incoming request
+     * @param objectName   The name of the object, used for Content-Disposition
+     * @param size         The size of the object in bytes
+     * @param contentType  The content type of the object, may be null
+     * @param etag         The ETag of the object, may be null
+     * @param lastModified The last modification time of the object, may be null
+     * @param cacheControl The Cache-Control policy for the object, may be null
+     * @param writer       The {@link RangeWriter} that streams the object data
+     * @return Response A JAX-RS Response with a 200, 206, 304 or 416 status
+     */
+    public static Response build(HttpHeaders headers, String objectName, long size, String contentType, String etag,
+            OffsetDateTime lastModified, String cacheControl, RangeWriter writer) {
+        return build(headers, objectName, size, contentType, etag, lastModified, cacheControl, writer,
+                segments -> (StreamingOutput) output -> {
+                    try (RangeWriter ranges = writer) {
+                        for (Segment segment : segments) {
+                            if (segment.range == null) {
+                                output.write(segment.bytes);
+                            } else {
+                                ranges.write(segment.range.getOffset(), segment.range.getLength(), output);
+                            }
+                        }
+                        output.flush();
+                    }
+                });
+    }
+
+    /**
+     * Builds the download response for an object like
+     * {@link #build(HttpHeaders, String, long, String, String, OffsetDateTime, String, RangeWriter)},
+     * but streams the body with an {@link AsyncStreamingOutput} so no thread is
+     * held while the client is reading.
+     */
+    public static Response buildAsync(HttpHeaders headers, String objectName, long size, String contentType,
+            String etag, OffsetDateTime lastModified, String cacheControl, AsyncRangeWriter writer) {
+        return build(headers, objectName, size, contentType, etag, lastModified, cacheControl, writer,
+                segments -> (AsyncStreamingOutput) output -> {
+                    CompletionStage<Void> written = CompletableFuture.completedFuture(null);
+                    for (Segment segment : segments) {
+                        if (segment.range == null) {
+                            written = written.thenCompose(ignored -> output.asyncWrite(segment.bytes));
+                        } else {
+                            written = written.thenCompose(ignored -> writer.write(segment.range.getOffset(),
+                                    segment.range.getLength(), output));
+                        }
+                    }
+                    return written.thenCompose(ignored -> output.asyncFlush())
+                            .whenComplete((ignored, exc) -> closeQuietly(writer));
+                });
+    }
+
+    private static Response build(HttpHeaders headers, String objectName, long size, String contentType,
+            String etag, OffsetDateTime lastModified, String cacheControl, Closeable writer,
+            Function<List<Segment>, Object> body) {
+        if (ConditionalRequests.isNotModified(headers, etag, lastModified)) {
+            closeQuietly(writer);
+            return ConditionalRequests.notModified(etag, lastModified, cacheControl);
+        }
+
+        String type = contentType == null ? MediaType.APPLICATION_OCTET_STREAM : contentType;
+
+        List<HttpRange> ranges = Collections.emptyList();
+        if (isIfRangeSatisfied(headers.getHeaderString(HEADER_IF_RANGE), etag, lastModified)) {
+            try {
+                ranges = HttpRange.parse(headers.getHeaderString(HEADER_RANGE), size);
+            } catch (RangeNotSatisfiableException exc) {
+                closeQuietly(writer);
+                return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HEADER_ACCEPT_RANGES, HttpRange.BYTES_UNIT)
+                        .header(HEADER_CONTENT_RANGE, HttpRange.BYTES_UNIT + " */" + exc.getSize()).build();
+            }
+        }
+
+        ResponseBuilder response;
+        List<Segment> segments = new ArrayList<>();
+        if (ranges.isEmpty()) {
+            if (size > 0) {
+                segments.add(new Segment(new HttpRange(0, size)));
+            }
+            response = Response.status(Status.OK).type(type);
+        } else if (ranges.size() == 1) {
+            HttpRange range = ranges.get(0);
+            segments.add(new Segment(range));
+            response = Response.status(Status.PARTIAL_CONTENT).type(type)
+                    .header(HEADER_CONTENT_RANGE, range.toContentRange(size));
+        } else {
+            String boundary = UUID.randomUUID().toString().replace("-", "");
+            byte[] crlf = CRLF.getBytes(StandardCharsets.US_ASCII);
+            for (HttpRange range : ranges) {
+                segments.add(new Segment(partHeader(boundary, type, range, size)));
+                segments.add(new Segment(range));
+                segments.add(new Segment(crlf));
+            }
+            segments.add(new Segment(partTrailer(boundary)));
+            response = Response.status(Status.PARTIAL_CONTENT).type("multipart/byteranges; boundary=" + boundary);
+        }
+
+        long contentLength = 0;
+        for (Segment segment : segments) {
+            contentLength += segment.getLength();
+        }
+
+        return ConditionalRequests.withValidators(response, etag, lastModified, cacheControl)
+                .entity(body.apply(segments)).header(HttpHeaders.CONTENT_LENGTH, contentLength)
+                .header(HEADER_ACCEPT_RANGES, HttpRange.BYTES_UNIT)
+                .header("Content-Disposition", "attachment;filename=" + objectName).build();
+    }
+
+    /**
+     * Evaluates an If-Range header. The Range header may only be honored when the
+     * validator matches the current representation, otherwise the full object has
+     * to be sent. Entity tags must match strongly, dates must match exactly.
+     */
+    static boolean isIfRangeSatisfied(String ifRange, String etag, OffsetDateTime lastModified) {
+        if (ifRange == null || ifRange.trim().isEmpty()) {
+            return true;
+        }
+        String validator = ifRange.trim();
+        if (validator.startsWith("W/")) {
+            return false;
+        }
+        if (validator.startsWith("\"")) {
+            return etag != null && stripQuotes(validator).equals(stripQuotes(etag));
+        }
+        if (lastModified == null) {
+            return false;
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(validator, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return date.toEpochSecond() == lastModified.toEpochSecond();
+        } catch (DateTimeParseException exc) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes a writer whose failure can no longer affect the response
+     */
+    static void closeQuietly(Closeable writer) {
+        try {
+            writer.close();
+        } catch (IOException | RuntimeException exc) {
+            LOG.warnf("Closing range writer: FAILED - %s", exc.getMessage());
+        }
+    }
+
+    static String stripQuotes(String etag) {
+        String value = etag.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private static byte[] partHeader(String boundary, String type, HttpRange range, long size) {
+        return ("--" + boundary + CRLF + HttpHeaders.CONTENT_TYPE + ": " + type + CRLF + HEADER_CONTENT_RANGE + ": "
+                + range.toContentRange(size) + CRLF + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] partTrailer(String boundary) {
+        return ("--" + boundary + "--" + CRLF).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * A part of the response body, either literal bytes such as multipart
+     * headers or a range of the object
+     */
+    private static class Segment {
+        final byte[] bytes;
+        final HttpRange range;
+
+        Segment(byte[] bytes) {
+            this.bytes = bytes;
+            this.range = null;
+        }
+
+        Segment(HttpRange range) {
+            this.bytes = null;
+            this.range = range;
+        }
+
+        long getLength() {
+            return this.range == null ? this.bytes.length : this.range.getLength();
+        }
+    }
+}
\ No newline at end of file
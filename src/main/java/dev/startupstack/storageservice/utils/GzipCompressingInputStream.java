@@ -0,0 +1,107 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Compresses a stream to the gzip format while it is being read, so uploads
+ * can be compressed on the fly without buffering the whole object. The header
+ * is produced first, then the deflated data and finally the trailer with the
+ * CRC-32 and the size of the source, once the source is exhausted.
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final CRC32 crc = new CRC32();
+    private final Deflater deflater;
+    private final InputStream compressed;
+
+    private long uncompressedSize = -1;
+
+    public GzipCompressingInputStream(InputStream source, int level) {
+        this.deflater = new Deflater(level, true);
+        Iterator<Supplier<InputStream>> parts = List.<Supplier<InputStream>>of(
+                () -> new ByteArrayInputStream(HEADER),
+                () -> new DeflaterInputStream(new CheckedInputStream(source, this.crc), this.deflater, BUFFER_SIZE),
+                this::trailer).iterator();
+        this.compressed = new SequenceInputStream(new Enumeration<InputStream>() {
+
+            @Override
+            public boolean hasMoreElements() {
+                return parts.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return parts.next().get();
+            }
+        });
+    }
+
+    /**
+     * @return long The number of bytes read from the source, or -1 while it has
+     *         not been read completely
+     */
+    public long getUncompressedSize() {
+        return this.uncompressedSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return this.compressed.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        return this.compressed.read(buffer, offset, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            this.compressed.close();
+        } finally {
+            this.deflater.end();
+        }
+    }
+
+    private InputStream trailer() {
+        this.uncompressedSize = this.deflater.getBytesRead();
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) this.crc.getValue());
+        trailer.putInt((int) this.uncompressedSize);
+        return new ByteArrayInputStream(trailer.array());
+    }
+}
@@ -0,0 +1,175 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A single byte range as requested through the HTTP Range header (RFC 7233),
+ * resolved against the size of the object it applies to.
+ */
+public class HttpRange {
+
+    public static final String BYTES_UNIT = "bytes";
+
+    /**
+     * Requests asking for more ranges than this are served in full, which the
+     * RFC explicitly allows and protects us against range-flooding.
+     */
+    static final int MAX_RANGES = 32;
+
+    private final long offset;
+    private final long length;
+
+    public HttpRange(long offset, long length) {
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public long getLength() {
+        return this.length;
+    }
+
+    public long getLastBytePosition() {
+        return this.offset + this.length - 1;
+    }
+
+    /**
+     * Formats this range as the value of a Content-Range header
+     *
+     * @param size The total size of the object
+     * @return String e.g. "bytes 0-499/1234"
+     */
+    public String toContentRange(long size) {
+        return BYTES_UNIT + " " + this.offset + "-" + getLastBytePosition() + "/" + size;
+    }
+
+    /**
+     * Parses the value of a Range header. Malformed headers, other units than
+     * bytes and requests for too many ranges are ignored, in which case an empty
+     * list is returned and the full object should be served. Overlapping and
+     * adjacent ranges are merged.
+     *
+     * @param header The value of the Range header, may be null
+     * @param size   The total size of the object
+     * @return List The satisfiable ranges in ascending order, or an empty list if
+     *         the header should be ignored
+     * @throws RangeNotSatisfiableException If the header is valid but none of the
+     *                                      ranges overlap with the object
+     */
+    public static List<HttpRange> parse(String header, long size) throws RangeNotSatisfiableException {
+        if (header == null || !header.trim().startsWith(BYTES_UNIT + "=")) {
+            return Collections.emptyList();
+        }
+
+        String[] specs = header.trim().substring(BYTES_UNIT.length() + 1).split(",");
+        if (specs.length > MAX_RANGES) {
+            return Collections.emptyList();
+        }
+
+        List<HttpRange> ranges = new ArrayList<>();
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return Collections.emptyList();
+            }
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            try {
+                if (first.isEmpty()) {
+                    // Suffix range, e.g. "-500" for the last 500 bytes
+                    long suffixLength = Long.parseLong(last);
+                    if (suffixLength < 0) {
+                        return Collections.emptyList();
+                    }
+                    if (suffixLength > 0 && size > 0) {
+                        long length = Math.min(suffixLength, size);
+                        ranges.add(new HttpRange(size - length, length));
+                    }
+                } else {
+                    long start = Long.parseLong(first);
+                    long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+                    if (start < 0 || end < start) {
+                        return Collections.emptyList();
+                    }
+                    if (start < size) {
+                        end = Math.min(end, size - 1);
+                        ranges.add(new HttpRange(start, end - start + 1));
+                    }
+                }
+            } catch (NumberFormatException exc) {
+                return Collections.emptyList();
+            }
+        }
+
+        if (ranges.isEmpty()) {
+            throw new RangeNotSatisfiableException(size);
+        }
+        return merge(ranges);
+    }
+
+    static List<HttpRange> merge(List<HttpRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(HttpRange::getOffset));
+
+        LinkedList<HttpRange> merged = new LinkedList<>();
+        for (HttpRange range : ranges) {
+            HttpRange previous = merged.peekLast();
+            if (previous != null && range.getOffset() <= previous.getLastBytePosition() + 1) {
+                long end = Math.max(previous.getLastBytePosition(), range.getLastBytePosition());
+                merged.removeLast();
+                merged.add(new HttpRange(previous.getOffset(), end - previous.getOffset() + 1));
+            } else {
+                merged.add(range);
+            }
+        }
+        return new ArrayList<>(merged);
+    }
+
+    /**
+     * Thrown when a Range header is syntactically valid but cannot be satisfied
+     * for the object, which maps to a 416 Range Not Satisfiable response.
+     */
+    public static class RangeNotSatisfiableException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long size;
+
+        public RangeNotSatisfiableException(long size) {
+            super("Requested range not satisfiable");
+            this.size = size;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+    }
+}
\ No newline at end of file
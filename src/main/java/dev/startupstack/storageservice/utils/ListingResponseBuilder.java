@@ -0,0 +1,118 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.objects.models.ObjectListModel;
+
+/**
+ * A helper class that builds the response for a page of an object listing,
+ * independent of the storage backend. The objects are written one by one with
+ * a Jackson streaming generator while they are pulled from the backend, so a
+ * page never has to be held as a complete JSON document. The body has the
+ * shape of an {@link ObjectListModel}.
+ * 
+ * Continuation tokens are the backend's own marker, Base64 encoded so clients
+ * treat them as opaque.
+ */
+public class ListingResponseBuilder {
+
+    public static final int MAX_PAGE_SIZE = 5000;
+
+    /**
+     * Builds the listing response. The continuation token is only asked for
+     * once all objects have been written, so backends may determine it while
+     * iterating.
+     *
+     * @param mapper            The ObjectMapper used to serialize the objects
+     * @param repository        The name of the repository being listed
+     * @param prefix            The prefix the listing was filtered on, may be
+     *                          null
+     * @param objects           The objects of this page, in order
+     * @param continuationToken Supplies the backend marker of the next page, or
+     *                          null when this is the last page
+     * @return Response A JAX-RS Response with a 200 status and a streamed JSON
+     *         body
+     */
+    public static Response build(ObjectMapper mapper, String repository, String prefix,
+            Iterator<ObjectInfoModel> objects, Supplier<String> continuationToken) {
+        StreamingOutput body = output -> {
+            JsonGenerator generator = mapper.getFactory().createGenerator(output);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            try {
+                generator.writeStartObject();
+                generator.writeStringField("repository", repository);
+                generator.writeStringField("prefix", prefix);
+                generator.writeArrayFieldStart("objects");
+                while (objects.hasNext()) {
+                    generator.writeObject(objects.next());
+                }
+                generator.writeEndArray();
+                generator.writeStringField("continuationToken", encodeToken(continuationToken.get()));
+                generator.writeEndObject();
+            } catch (UncheckedIOException exc) {
+                throw exc.getCause();
+            } finally {
+                generator.close();
+            }
+        };
+        return Response.ok(body, MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * @return String The opaque token for a backend marker, or null if there is
+     *         no marker
+     */
+    public static String encodeToken(String marker) {
+        if (marker == null || marker.isEmpty()) {
+            return null;
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(marker.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return String The backend marker of a token, or null if no token was
+     *         given
+     * @throws BadRequestException If the token was not issued by this service
+     */
+    public static String decodeToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException exc) {
+            throw new BadRequestException("Invalid continuation token");
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+import org.jboss.resteasy.spi.AsyncOutputStream;
+import org.reactivestreams.Publisher;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * An {@link AsyncRangeWriter} that splits large ranges into chunks, reads up to
+ * a window of chunks concurrently from the backend and writes them to the
+ * client in order, every buffer as soon as the ones before it were written.
+ * Chunks are read without blocking, so no thread waits for a chunk and the
+ * reads can never starve the pool they complete on. Buffers of the chunks
+ * ahead are prefetched in small batches, so memory use is bounded by the
+ * window regardless of the object size. Ranges smaller than the threshold
+ * are read in one piece.
+ */
+public class ParallelRangeWriter implements AsyncRangeWriter {
+
+    /**
+     * Reads a range of an object without blocking, emitting its bytes in order
+     */
+    @FunctionalInterface
+    public interface RangeReader {
+        Publisher<ByteBuffer> read(long offset, long count);
+    }
+
+    private final RangeReader reader;
+    private final int chunkSize;
+    private final int window;
+    private final long threshold;
+
+    public ParallelRangeWriter(RangeReader reader, int chunkSize, int window, long threshold) {
+        this.reader = reader;
+        this.chunkSize = chunkSize;
+        this.window = window;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+        return Flux.fromIterable(chunks(offset, count))
+                .flatMapSequential(chunk -> this.reader.read(chunk.getOffset(), chunk.getLength()), this.window)
+                .concatMap(buffer -> {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    return Mono.fromCompletionStage(() -> output.asyncWrite(bytes));
+                })
+                .then().toFuture();
+    }
+
+    /**
+     * Splits a range into chunks if it is large enough to be read in parallel
+     */
+    List<HttpRange> chunks(long offset, long count) {
+        List<HttpRange> chunks = new ArrayList<>();
+        if (count < this.threshold || this.window <= 1 || count <= this.chunkSize) {
+            chunks.add(new HttpRange(offset, count));
+            return chunks;
+        }
+        for (long position = offset; position < offset + count; position += this.chunkSize) {
+            chunks.add(new HttpRange(position, Math.min(this.chunkSize, offset + count - position)));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,235 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+/**
+ * A download that is written once and read by any number of responses while
+ * it is still in progress. The object is downloaded into a buffer of its full
+ * size through this {@link OutputStream}, and readers stream the bytes of
+ * their range as soon as they have arrived, blocking through
+ * {@link #transferTo(long, long, OutputStream)} or without blocking through
+ * {@link #transferToAsync(long, long, AsyncOutputStream)}. Bytes below the
+ * written length never change, so they are copied out without holding the
+ * lock.
+ */
+public class SharedDownload extends OutputStream {
+
+    private final byte[] data;
+    private final List<PendingRead> pending = new ArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    private int length;
+    private boolean done;
+    private IOException failure;
+
+    public SharedDownload(int size) {
+        this.data = new byte[size];
+    }
+
+    public int getSize() {
+        return this.data.length;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+        write(new byte[] { (byte) value }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        write(ByteBuffer.wrap(bytes, offset, count));
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer, as they arrive from a
+     * non-blocking download
+     */
+    public void write(ByteBuffer buffer) throws IOException {
+        int count = buffer.remaining();
+        List<PendingRead> ready;
+        int written;
+        synchronized (this) {
+            if (this.done) {
+                throw new IOException("Download already completed");
+            }
+            if (count > this.data.length - this.length) {
+                throw new IOException("Download exceeds the expected " + this.data.length + " bytes");
+            }
+            buffer.get(this.data, this.length, count);
+            this.length += count;
+            written = this.length;
+            ready = takeReady();
+            notifyAll();
+        }
+        ready.forEach(read -> read.result.complete(written));
+    }
+
+    /**
+     * Marks the download as complete, failing it instead if fewer bytes than
+     * expected were written.
+     */
+    @Override
+    public void close() {
+        int written;
+        synchronized (this) {
+            written = this.length;
+        }
+        finish(written < this.data.length
+                ? new IOException("Expected " + this.data.length + " bytes but got " + written)
+                : null);
+    }
+
+    public void fail(Throwable cause) {
+        finish(cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause));
+    }
+
+    /**
+     * @return CompletionStage Completes once all bytes have been written, or
+     *         fails with the failure of the download
+     */
+    public CompletionStage<Void> completion() {
+        return this.completion.copy();
+    }
+
+    /**
+     * Writes a range of the object as it arrives, blocking until it is
+     * complete.
+     */
+    public void transferTo(long offset, long count, OutputStream output) throws IOException {
+        long position = offset;
+        long end = offset + count;
+        while (position < end) {
+            int available;
+            synchronized (this) {
+                while (this.length <= position && !this.done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException exc) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Waiting for shared download interrupted");
+                    }
+                }
+                if (this.length <= position) {
+                    throw failure();
+                }
+                available = this.length;
+            }
+            int chunk = (int) (Math.min(end, available) - position);
+            output.write(this.data, (int) position, chunk);
+            position += chunk;
+        }
+    }
+
+    /**
+     * Writes a range of the object as it arrives without blocking, completing
+     * the returned stage once the range has been written.
+     */
+    public CompletionStage<Void> transferToAsync(long offset, long count, AsyncOutputStream output) {
+        if (count <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return available(offset).thenCompose(available -> {
+            int chunk = (int) (Math.min(offset + count, available) - offset);
+            byte[] bytes = new byte[chunk];
+            System.arraycopy(this.data, (int) offset, bytes, 0, chunk);
+            return output.asyncWrite(bytes).thenCompose(ignored -> transferToAsync(offset + chunk, count - chunk,
+                    output));
+        });
+    }
+
+    /**
+     * Completes with the written length once it exceeds the given position.
+     */
+    private CompletionStage<Integer> available(long position) {
+        PendingRead read;
+        synchronized (this) {
+            if (this.length > position) {
+                return CompletableFuture.completedFuture(this.length);
+            } else if (this.done) {
+                return CompletableFuture.failedFuture(failure());
+            }
+            read = new PendingRead(position);
+            this.pending.add(read);
+        }
+        return read.result;
+    }
+
+    private IOException failure() {
+        return this.failure != null ? this.failure : new IOException("Range exceeds the downloaded object");
+    }
+
+    private void finish(IOException cause) {
+        List<PendingRead> ready;
+        List<PendingRead> failed;
+        int written;
+        synchronized (this) {
+            if (this.done) {
+                return;
+            }
+            this.done = true;
+            this.failure = cause;
+            written = this.length;
+            ready = takeReady();
+            failed = new ArrayList<>(this.pending);
+            this.pending.clear();
+            notifyAll();
+        }
+        ready.forEach(read -> read.result.complete(written));
+        IOException exc = failure();
+        failed.forEach(read -> read.result.completeExceptionally(exc));
+        if (cause == null) {
+            this.completion.complete(null);
+        } else {
+            this.completion.completeExceptionally(cause);
+        }
+    }
+
+    private List<PendingRead> takeReady() {
+        List<PendingRead> ready = new ArrayList<>();
+        Iterator<PendingRead> iterator = this.pending.iterator();
+        while (iterator.hasNext()) {
+            PendingRead read = iterator.next();
+            if (read.position < this.length) {
+                iterator.remove();
+                ready.add(read);
+            }
+        }
+        return ready;
+    }
+
+    private static class PendingRead {
+        final long position;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        PendingRead(long position) {
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import static dev.startupstack.storageservice.Constants.BACKEND_AZURE;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Dependent;
+import javax.enterprise.event.Observes;
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Instance;
+import javax.enterprise.inject.Produces;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import dev.startupstack.storageservice.objects.ObjectsService;
+import dev.startupstack.storageservice.repostitories.RepositoriesService;
+import dev.startupstack.storageservice.utils.azure.UploadSessionCollector;
+import io.quarkus.runtime.StartupEvent;
+
+/**
+ * Produces the {@link ObjectsService} and {@link RepositoriesService} for the
+ * storage backend selected with startupstack.storageservice.backend. The
+ * implementations are qualified with {@link StorageBackend}.
+ */
+@ApplicationScoped
+public class StorageBackendProducer {
+
+    private static final Logger LOG = Logger.getLogger(StorageBackendProducer.class);
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.backend", defaultValue = BACKEND_AZURE)
+    String backend;
+
+    @Inject
+    Instance<UploadSessionCollector> uploadSessionCollector;
+
+    /**
+     * Logs the selected backend and, for Azure, starts removing expired upload
+     * sessions.
+     */
+    void onStart(@Observes StartupEvent event) {
+        LOG.infof("Using storage backend '%s'", backend);
+        if (BACKEND_AZURE.equals(backend)) {
+            uploadSessionCollector.get().start();
+        }
+    }
+
+    @Produces
+    @Dependent
+    ObjectsService objectsService(@Any Instance<ObjectsService> services) {
+        return services.select(new StorageBackend.Literal(backend)).get();
+    }
+
+    @Produces
+    @Dependent
+    RepositoriesService repositoriesService(@Any Instance<RepositoriesService> services) {
+        return services.select(new StorageBackend.Literal(backend)).get();
+    }
+}
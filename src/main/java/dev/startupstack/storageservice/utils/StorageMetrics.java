@@ -0,0 +1,195 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.metrics.ConcurrentGauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.RangeWriter;
+
+/**
+ * Transfer metrics shared by the storage backends: bytes uploaded, downloaded
+ * and saved by deduplication per tenant, and the number of transfers in
+ * flight.
+ */
+@ApplicationScoped
+public class StorageMetrics {
+
+    static final String TAG_TENANT = "tenant";
+
+    @Inject
+    MetricRegistry registry;
+
+    ConcurrentGauge uploadsInFlight;
+
+    ConcurrentGauge downloadsInFlight;
+
+    Metadata uploadedBytes;
+
+    Metadata downloadedBytes;
+
+    Metadata deduplicatedBytes;
+
+    StorageMetrics() {
+    }
+
+    /**
+     * Creates metrics recorded in the given registry, outside of CDI
+     */
+    public StorageMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        this.uploadsInFlight = registry.concurrentGauge("storage_uploads_in_flight");
+        this.downloadsInFlight = registry.concurrentGauge("storage_downloads_in_flight");
+        this.uploadedBytes = Metadata.builder().withName("storage_uploaded_bytes").withType(MetricType.COUNTER)
+                .withUnit(MetricUnits.BYTES).withDescription("Bytes uploaded per tenant").build();
+        this.downloadedBytes = Metadata.builder().withName("storage_downloaded_bytes").withType(MetricType.COUNTER)
+                .withUnit(MetricUnits.BYTES).withDescription("Bytes downloaded per tenant").build();
+        this.deduplicatedBytes = Metadata.builder().withName("storage_deduplicated_bytes")
+                .withType(MetricType.COUNTER).withUnit(MetricUnits.BYTES)
+                .withDescription("Bytes uploaded per tenant that were already stored").build();
+    }
+
+    public void uploadStarted() {
+        this.uploadsInFlight.inc();
+    }
+
+    /**
+     * Marks an upload as finished, counting its bytes for the tenant if it
+     * succeeded.
+     *
+     * @param tenantID The tenant that uploaded the object
+     * @param bytes    The number of bytes stored, or a negative value if the
+     *                 upload failed
+     */
+    public void uploadFinished(String tenantID, long bytes) {
+        this.uploadsInFlight.dec();
+        if (bytes >= 0) {
+            this.registry.counter(this.uploadedBytes, new Tag(TAG_TENANT, tenantID)).inc(bytes);
+        }
+    }
+
+    /**
+     * Counts the bytes of an upload that did not need to be stored again, as
+     * identical content already was.
+     */
+    public void uploadDeduplicated(String tenantID, long bytes) {
+        this.registry.counter(this.deduplicatedBytes, new Tag(TAG_TENANT, tenantID)).inc(bytes);
+    }
+
+    /**
+     * Wraps a {@link RangeWriter} so its response counts as a download in flight
+     * from the first range written until the writer is closed. The bytes of all
+     * ranges written are then counted for the tenant.
+     */
+    public RangeWriter meterDownload(String tenantID, RangeWriter writer) {
+        MeteredDownload download = new MeteredDownload(tenantID);
+        return new RangeWriter() {
+            @Override
+            public void write(long offset, long count, OutputStream output) throws IOException {
+                download.started();
+                writer.write(offset, count, output);
+                download.written(count);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    writer.close();
+                } finally {
+                    download.finished();
+                }
+            }
+        };
+    }
+
+    /**
+     * The non-blocking counterpart of
+     * {@link #meterDownload(String, RangeWriter)}.
+     */
+    public AsyncRangeWriter meterAsyncDownload(String tenantID, AsyncRangeWriter writer) {
+        MeteredDownload download = new MeteredDownload(tenantID);
+        return new AsyncRangeWriter() {
+            @Override
+            public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+                download.started();
+                return writer.write(offset, count, output).thenRun(() -> download.written(count));
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    writer.close();
+                } finally {
+                    download.finished();
+                }
+            }
+        };
+    }
+
+    /**
+     * The metered state of a single download response
+     */
+    private class MeteredDownload {
+        final String tenantID;
+        final AtomicBoolean started = new AtomicBoolean();
+        final AtomicBoolean finished = new AtomicBoolean();
+        final AtomicLong bytes = new AtomicLong();
+
+        MeteredDownload(String tenantID) {
+            this.tenantID = tenantID;
+        }
+
+        void started() {
+            if (this.started.compareAndSet(false, true)) {
+                downloadsInFlight.inc();
+            }
+        }
+
+        void written(long count) {
+            this.bytes.addAndGet(count);
+        }
+
+        void finished() {
+            if (this.started.get() && this.finished.compareAndSet(false, true)) {
+                downloadsInFlight.dec();
+                registry.counter(downloadedBytes, new Tag(TAG_TENANT, this.tenantID)).inc(this.bytes.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+/**
+ * Holds the thread pool that is shared by all parallel transfers (block
+ * staging, cache fills), so the number of concurrent storage calls made on
+ * behalf of transfers is bounded for the whole process. Writes to clients
+ * never run on it, a slow client must not hold one of its threads.
+ * A task on the pool must never wait for another task on it, or the pool can
+ * run out of threads.
+ */
+@ApplicationScoped
+public class TransferExecutor {
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.transfer.threads", defaultValue = "16")
+    int threads;
+
+    ExecutorService executorService;
+
+    TransferExecutor() {
+    }
+
+    /**
+     * Creates a pool of the given number of threads, outside of CDI
+     */
+    public TransferExecutor(int threads) {
+        this.threads = threads;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        AtomicInteger counter = new AtomicInteger();
+        this.executorService = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "storage-transfer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.executorService.shutdownNow();
+    }
+
+    public ExecutorService getExecutorService() {
+        return this.executorService;
+    }
+}
@@ -0,0 +1,118 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+
+import org.jboss.logging.Logger;
+import org.jboss.resteasy.plugins.providers.multipart.InputPart;
+
+import dev.startupstack.storageservice.objects.models.ObjectUploadResultModel;
+
+/**
+ * A helper class for multipart object uploads, independent of the storage
+ * backend. It reports the outcome of every part of a multi-object upload and
+ * builds the response from them.
+ */
+public class UploadResponseBuilder {
+
+    private static final Logger LOG = Logger.getLogger(UploadResponseBuilder.class);
+
+    /**
+     * Status of a multi-object upload of which only some parts succeeded
+     */
+    public static final int MULTI_STATUS = 207;
+
+    /**
+     * Stores a single part of an upload in a storage backend
+     */
+    @FunctionalInterface
+    public interface PartUploader {
+        /**
+         * @return long The number of bytes stored
+         */
+        long upload(InputPart inputPart) throws IOException;
+    }
+
+    /**
+     * Takes the object name from the filename parameter of the Content-Disposition
+     * header of a part, e.g. form-data; name="object"; filename="name".
+     *
+     * @param headers The headers of the part
+     * @return String The object name
+     */
+    public static String getFilename(MultivaluedMap<String, String> headers) {
+        return headers.getFirst("Content-Disposition").split(";")[2].split("=")[1].replace("\"", "");
+    }
+
+    /**
+     * Uploads a single part of a multi-object upload and reports its outcome
+     * instead of throwing, so one failing part does not abort the others. A
+     * {@link WebApplicationException} keeps its status, any other failure is
+     * reported as 500 Internal Server Error.
+     *
+     * @param repository The name of the repository, used for logging
+     * @param inputPart  The part to upload
+     * @param uploader   The backend specific upload of the part
+     * @return ObjectUploadResultModel The outcome of the part
+     */
+    public static ObjectUploadResultModel uploadPart(String repository, InputPart inputPart, PartUploader uploader) {
+        String fileName;
+        try {
+            fileName = getFilename(inputPart.getHeaders());
+        } catch (RuntimeException exc) {
+            return new ObjectUploadResultModel(null, Status.BAD_REQUEST.getStatusCode(),
+                    "FAILED - no filename in Content-Disposition", -1);
+        }
+
+        try {
+            long size = uploader.upload(inputPart);
+            return new ObjectUploadResultModel(fileName, Status.CREATED.getStatusCode(), "OK", size);
+        } catch (WebApplicationException exc) {
+            LOG.errorf("Object upload to '%s': Streaming '%s': FAILED - %s", repository, fileName, exc.getMessage());
+            return new ObjectUploadResultModel(fileName, exc.getResponse().getStatus(),
+                    "FAILED - " + exc.getMessage(), -1);
+        } catch (IOException | RuntimeException exc) {
+            LOG.errorf("Object upload to '%s': Streaming '%s': FAILED - %s", repository, fileName, exc.getMessage());
+            return new ObjectUploadResultModel(fileName, Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                    "FAILED - " + exc.getMessage(), -1);
+        }
+    }
+
+    /**
+     * Builds the response of a multi-object upload: 201 Created when every part
+     * was stored, 207 Multi-Status otherwise. Both list the outcome per part.
+     *
+     * @param results The outcome of every part, in the order of the upload
+     * @return Response A JAX-RS Response with a 201 or 207 status
+     */
+    public static Response build(List<ObjectUploadResultModel> results) {
+        for (ObjectUploadResultModel result : results) {
+            if (result.getStatusCode() != Status.CREATED.getStatusCode()) {
+                return Response.status(MULTI_STATUS).entity(results).build();
+            }
+        }
+        return Response.status(Status.CREATED).entity(results).build();
+    }
+}
@@ -0,0 +1,162 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import com.azure.storage.blob.models.BlobStorageException;
+
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Times round trips to Azure Storage. Every call is recorded in the
+ * azure_storage_calls timer, tagged with the operation and its outcome:
+ * success, not_modified, client_error, server_error or error for failures
+ * that did not produce a response. Calls saved by joining an identical call
+ * in flight are counted in azure_storage_calls_coalesced.
+ */
+@ApplicationScoped
+public class AzureCallMetrics {
+
+    public static final String GET_PROPERTIES = "getProperties";
+    public static final String GET_CONTAINER_PROPERTIES = "getContainerProperties";
+    public static final String DOWNLOAD = "download";
+    public static final String UPLOAD = "upload";
+    public static final String STAGE_BLOCK = "stageBlock";
+    public static final String GET_BLOCK_LIST = "getBlockList";
+    public static final String COMMIT_BLOCK_LIST = "commitBlockList";
+    public static final String SET_METADATA = "setMetadata";
+    public static final String CREATE_CONTAINER = "createContainer";
+    public static final String DELETE = "delete";
+    public static final String BATCH_DELETE = "batchDelete";
+    public static final String DELETE_CONTAINER = "deleteContainer";
+    public static final String LIST = "listBlobs";
+
+    static final String TAG_OPERATION = "operation";
+    static final String TAG_OUTCOME = "outcome";
+
+    /**
+     * A call to Azure Storage, which may throw a checked exception such as the
+     * IOException of a streaming transfer
+     */
+    @FunctionalInterface
+    public interface AzureCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    @Inject
+    MetricRegistry registry;
+
+    Metadata calls;
+
+    Metadata coalesced;
+
+    AzureCallMetrics() {
+    }
+
+    /**
+     * Creates metrics recorded in the given registry, outside of CDI
+     */
+    public AzureCallMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        this.calls = Metadata.builder().withName("azure_storage_calls").withType(MetricType.TIMER)
+                .withUnit(MetricUnits.NANOSECONDS).withDescription("Round trips to Azure Storage").build();
+        this.coalesced = Metadata.builder().withName("azure_storage_calls_coalesced").withType(MetricType.COUNTER)
+                .withDescription("Calls to Azure Storage saved by joining an identical call in flight").build();
+    }
+
+    /**
+     * Runs and times a call to Azure Storage.
+     *
+     * @param operation The name of the operation, e.g. {@link #GET_PROPERTIES}
+     * @param call      The call to run
+     * @return T The result of the call
+     */
+    public <T, E extends Exception> T time(String operation, AzureCall<T, E> call) throws E {
+        long start = System.nanoTime();
+        String outcome = "error";
+        try {
+            T result = call.call();
+            outcome = "success";
+            return result;
+        } catch (BlobStorageException exc) {
+            outcome = outcome(exc.getStatusCode());
+            throw exc;
+        } finally {
+            record(operation, outcome, start);
+        }
+    }
+
+    /**
+     * Times a non-blocking call to Azure Storage from subscription until it
+     * completes or fails.
+     *
+     * @param operation The name of the operation, e.g. {@link #GET_PROPERTIES}
+     * @param call      The call to time
+     * @return Mono The timed call
+     */
+    public <T> Mono<T> timeAsync(String operation, Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnSuccess(result -> record(operation, "success", start)).doOnError(exc -> record(operation,
+                    exc instanceof BlobStorageException ? outcome(((BlobStorageException) exc).getStatusCode())
+                            : "error",
+                    start));
+        });
+    }
+
+    /**
+     * Counts a call that was not made because an identical call was in flight.
+     *
+     * @param operation The name of the operation, e.g. {@link #GET_PROPERTIES}
+     */
+    public void recordCoalesced(String operation) {
+        this.registry.counter(this.coalesced, new Tag(TAG_OPERATION, operation)).inc();
+    }
+
+    private void record(String operation, String outcome, long start) {
+        this.registry.timer(this.calls, new Tag(TAG_OPERATION, operation), new Tag(TAG_OUTCOME, outcome))
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    static String outcome(int statusCode) {
+        if (statusCode == 304) {
+            return "not_modified";
+        } else if (statusCode >= 500) {
+            return "server_error";
+        } else if (statusCode >= 400) {
+            return "client_error";
+        }
+        return "success";
+    }
+}
@@ -17,44 +17,103 @@
 */
 package dev.startupstack.storageservice.utils.azure;
 
-import javax.enterprise.context.Dependent;
+import java.time.Duration;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
-import com.azure.identity.ClientSecretCredential;
-import com.azure.identity.ClientSecretCredentialBuilder;
+import com.azure.core.http.HttpClient;
+import com.azure.core.http.netty.NettyAsyncHttpClientBuilder;
+import com.azure.storage.blob.BlobServiceAsyncClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.batch.BlobBatchClient;
+import com.azure.storage.blob.batch.BlobBatchClientBuilder;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+import reactor.netty.resources.ConnectionProvider;
 
 /**
- * AzureService
+ * Holds the single {@link BlobServiceClient} of the application, and its
+ * non-blocking counterpart {@link BlobServiceAsyncClient}. The clients, their
+ * credential and the underlying HTTP connection pool are created once and
+ * shared by all requests, so storage calls reuse pooled connections and TLS
+ * sessions instead of paying for connection setup on every request. Access
+ * tokens are provided by the {@link AzureTokenManager}.
  */
-@Dependent
+@ApplicationScoped
 public class AzureIdentityService {
 
+    private static final Logger LOG = Logger.getLogger(AzureIdentityService.class);
+
     @Inject
-    @ConfigProperty(name = "startupstack.storageservice.azure.identity.client_id")
-    String client_id;
+    @ConfigProperty(name = "startupstack.storageservice.azure.storageaccount.endpoint")
+    String endpoint;
 
     @Inject
-    @ConfigProperty(name = "startupstack.storageservice.azure.identity.client_secret")
-    String client_secret;
+    @ConfigProperty(name = "startupstack.storageservice.azure.http.max-connections", defaultValue = "100")
+    int maxConnections;
 
     @Inject
-    @ConfigProperty(name = "startupstack.storageservice.azure.identity.tenant_id")
-    String tenant_id;
+    @ConfigProperty(name = "startupstack.storageservice.azure.http.acquire-timeout-millis", defaultValue = "45000")
+    long acquireTimeoutMillis;
 
     @Inject
-    @ConfigProperty(name = "startupstack.storageservice.azure.storageaccount.endpoint")
-    String endpoint;
+    @ConfigProperty(name = "startupstack.storageservice.azure.http.idle-timeout-seconds", defaultValue = "60")
+    long idleTimeoutSeconds;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.azure.http.keep-alive", defaultValue = "true")
+    boolean keepAlive;
+
+    @Inject
+    AzureTokenManager tokenManager;
+
+    ConnectionProvider connectionProvider;
 
-    ClientSecretCredential getlientSecretCredential() {
-        return new ClientSecretCredentialBuilder().clientId(client_id).clientSecret(client_secret).tenantId(tenant_id)
-                .build();
+    BlobServiceClient blobServiceClient;
+
+    BlobServiceAsyncClient blobServiceAsyncClient;
+
+    BlobBatchClient blobBatchClient;
+
+    @PostConstruct
+    void initialize() {
+        LOG.infof("Creating blob service client for '%s' with a pool of %d connections ...", endpoint,
+                maxConnections);
+
+        this.connectionProvider = ConnectionProvider.fixed("azure-storage", maxConnections, acquireTimeoutMillis,
+                Duration.ofSeconds(idleTimeoutSeconds));
+        HttpClient httpClient = new NettyAsyncHttpClientBuilder(
+                reactor.netty.http.client.HttpClient.create(connectionProvider).keepAlive(keepAlive)).build();
+
+        BlobServiceClientBuilder builder = new BlobServiceClientBuilder().endpoint(endpoint).credential(tokenManager)
+                .httpClient(httpClient);
+        this.blobServiceClient = builder.buildClient();
+        this.blobServiceAsyncClient = builder.buildAsyncClient();
+        this.blobBatchClient = new BlobBatchClientBuilder(this.blobServiceClient).buildClient();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (this.connectionProvider != null) {
+            this.connectionProvider.dispose();
+        }
     }
 
     public BlobServiceClient getBlobServiceClient() {
-        return new BlobServiceClientBuilder().endpoint(endpoint).credential(getlientSecretCredential()).buildClient();
+        return this.blobServiceClient;
+    }
+
+    public BlobServiceAsyncClient getBlobServiceAsyncClient() {
+        return this.blobServiceAsyncClient;
+    }
+
+    public BlobBatchClient getBlobBatchClient() {
+        return this.blobBatchClient;
     }
 }
\ No newline at end of file
@@ -0,0 +1,191 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import static dev.startupstack.storageservice.Constants.BACKEND_AZURE;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+
+import com.azure.core.credential.AccessToken;
+import com.azure.core.credential.TokenCredential;
+import com.azure.core.credential.TokenRequestContext;
+import com.azure.identity.ClientSecretCredentialBuilder;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.annotation.Gauge;
+import org.jboss.logging.Logger;
+
+import io.quarkus.runtime.StartupEvent;
+import reactor.core.publisher.Mono;
+
+/**
+ * Caches the Azure AD access token for the storage account process-wide and
+ * refreshes it in the background well before it expires, so storage calls
+ * never have to wait for a token round trip. Only when no valid token is
+ * cached (e.g. right after startup, or after refreshes kept failing until the
+ * token expired) does a caller fall back to acquiring one itself. Refreshing
+ * starts with the application when the Azure backend is in use.
+ */
+@ApplicationScoped
+public class AzureTokenManager implements TokenCredential {
+
+    private static final Logger LOG = Logger.getLogger(AzureTokenManager.class);
+
+    public static final String STORAGE_SCOPE = "https://storage.azure.com/.default";
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.backend", defaultValue = BACKEND_AZURE)
+    String backend;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.azure.identity.client_id")
+    String client_id;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.azure.identity.client_secret")
+    String client_secret;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.azure.identity.tenant_id")
+    String tenant_id;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.azure.token.refresh-margin-seconds", defaultValue = "600")
+    long refreshMarginSeconds;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.azure.token.retry-seconds", defaultValue = "30")
+    long retrySeconds;
+
+    @Inject
+    MetricRegistry registry;
+
+    TokenCredential credential;
+
+    ScheduledExecutorService scheduler;
+
+    Counter refreshFailures;
+
+    volatile AccessToken token;
+
+    volatile OffsetDateTime acquiredAt;
+
+    @PostConstruct
+    void initialize() {
+        this.credential = new ClientSecretCredentialBuilder().clientId(client_id).clientSecret(client_secret)
+                .tenantId(tenant_id).build();
+        this.refreshFailures = registry.counter("azure_token_refresh_failures");
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "azure-token-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts refreshing at startup, so the first token is already being acquired
+     * before the first request arrives.
+     */
+    void onStart(@Observes StartupEvent event) {
+        if (BACKEND_AZURE.equals(this.backend)) {
+            this.scheduler.execute(this::refresh);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the cached storage token if it is still valid. Requests for other
+     * scopes are passed on to the underlying credential.
+     */
+    @Override
+    public Mono<AccessToken> getToken(TokenRequestContext request) {
+        if (!request.getScopes().equals(Collections.singletonList(STORAGE_SCOPE))) {
+            return this.credential.getToken(request);
+        }
+
+        AccessToken cached = this.token;
+        if (cached != null && !cached.isExpired()) {
+            return Mono.just(cached);
+        }
+
+        LOG.warn("No valid cached Azure storage token, acquiring one on the request path");
+        return this.credential.getToken(request).doOnNext(this::store);
+    }
+
+    /**
+     * Acquires a new token and schedules the next refresh refresh-margin-seconds
+     * before it expires. Failures are retried every retry-seconds.
+     */
+    void refresh() {
+        long delay;
+        try {
+            AccessToken refreshed = this.credential
+                    .getToken(new TokenRequestContext().addScopes(STORAGE_SCOPE)).block();
+            store(refreshed);
+
+            delay = Duration.between(OffsetDateTime.now(), refreshed.getExpiresAt()).getSeconds()
+                    - refreshMarginSeconds;
+            delay = Math.max(delay, retrySeconds);
+            LOG.infof("Refreshed Azure storage token, next refresh in %d seconds", delay);
+        } catch (RuntimeException exc) {
+            this.refreshFailures.inc();
+            delay = retrySeconds;
+            LOG.errorf("Refreshing Azure storage token: FAILED - %s", exc.getMessage());
+        }
+        if (!this.scheduler.isShutdown()) {
+            this.scheduler.schedule(this::refresh, delay, TimeUnit.SECONDS);
+        }
+    }
+
+    private void store(AccessToken accessToken) {
+        this.token = accessToken;
+        this.acquiredAt = OffsetDateTime.now();
+    }
+
+    @Gauge(name = "azure_token_age_seconds", unit = MetricUnits.SECONDS, absolute = true,
+            description = "Age of the cached Azure storage access token")
+    public long getTokenAgeSeconds() {
+        OffsetDateTime acquired = this.acquiredAt;
+        return acquired == null ? -1 : Duration.between(acquired, OffsetDateTime.now()).getSeconds();
+    }
+
+    @Gauge(name = "azure_token_expires_in_seconds", unit = MetricUnits.SECONDS, absolute = true,
+            description = "Remaining lifetime of the cached Azure storage access token")
+    public long getTokenExpiresInSeconds() {
+        AccessToken cached = this.token;
+        return cached == null ? -1 : Duration.between(OffsetDateTime.now(), cached.getExpiresAt()).getSeconds();
+    }
+}
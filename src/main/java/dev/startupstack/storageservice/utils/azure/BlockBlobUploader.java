@@ -0,0 +1,270 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import com.azure.core.util.Context;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+
+/**
+ * Uploads a stream to a block blob without staging it on local disk. The
+ * stream is read in fixed-size chunks and every chunk is staged as a block as
+ * soon as it has been read, with up to maxConcurrency blocks being staged in
+ * parallel. The block list is committed once the stream is exhausted. Streams
+ * that fit in a single chunk below the single-shot threshold are uploaded with
+ * a single put instead.
+ * 
+ * Memory use is bounded by (maxConcurrency + 1) * blockSize, as buffers are
+ * recycled once their block has been staged.
+ * 
+ * Every call to Azure Storage is timed on its own, so reading the stream
+ * from the client is not mistaken for storage latency.
+ */
+public class BlockBlobUploader {
+
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Block IDs are a tag of the upload followed by the index or offset of the
+     * block, as all block IDs of a blob need to be of equal length.
+     */
+    public static final int TAG_LENGTH = 6;
+    public static final int BLOCK_ID_LENGTH = TAG_LENGTH + Long.BYTES;
+
+    private final BlockBlobClient client;
+    private final AzureCallMetrics azureCalls;
+    private final int blockSize;
+    private final int maxConcurrency;
+    private final long singleShotThreshold;
+    private final ExecutorService executor;
+
+    public BlockBlobUploader(BlockBlobClient client, AzureCallMetrics azureCalls, int blockSize) {
+        this(client, azureCalls, blockSize, 1, blockSize, null);
+    }
+
+    public BlockBlobUploader(BlockBlobClient client, AzureCallMetrics azureCalls, int blockSize, int maxConcurrency,
+            long singleShotThreshold, ExecutorService executor) {
+        this.client = client;
+        this.azureCalls = azureCalls;
+        this.blockSize = blockSize;
+        this.maxConcurrency = executor == null ? 1 : Math.max(1, maxConcurrency);
+        this.singleShotThreshold = singleShotThreshold;
+        this.executor = executor;
+    }
+
+    /**
+     * Uploads the stream and commits it with the given headers and metadata. The
+     * stream is not closed.
+     *
+     * @param input    The data to upload
+     * @param headers  The HTTP headers to set on the blob
+     * @param metadata The metadata to set on the blob
+     * @return long The number of bytes uploaded
+     * @throws IOException If reading from the input fails or the upload is
+     *                     interrupted
+     */
+    public long upload(InputStream input, BlobHttpHeaders headers, Map<String, String> metadata) throws IOException {
+        return upload(input, headers, () -> metadata);
+    }
+
+    /**
+     * Uploads the stream like {@link #upload(InputStream, BlobHttpHeaders, Map)},
+     * but only asks for the metadata once the stream has been read completely,
+     * so it may contain values derived from the stream.
+     */
+    public long upload(InputStream input, BlobHttpHeaders headers, Supplier<Map<String, String>> metadata)
+            throws IOException {
+        return upload(input, headers, metadata, () -> true);
+    }
+
+    /**
+     * Uploads the stream, but only commits the blob if the given check still
+     * agrees once the stream has been read completely. Streams below the
+     * single-shot threshold are then not transferred at all, otherwise the
+     * staged blocks are left uncommitted, which Azure Storage discards.
+     *
+     * @return long The number of bytes read from the stream
+     */
+    public long upload(InputStream input, BlobHttpHeaders headers, Supplier<Map<String, String>> metadata,
+            BooleanSupplier commit) throws IOException {
+        BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(this.maxConcurrency + 1);
+        int allocated = 1;
+
+        byte[] buffer = new byte[this.blockSize];
+        int read = readBlock(input, buffer);
+
+        if (read < this.blockSize && read <= this.singleShotThreshold) {
+            if (!commit.getAsBoolean()) {
+                return read;
+            }
+            byte[] data = buffer;
+            int length = read;
+            Map<String, String> blobMetadata = metadata.get();
+            this.azureCalls.time(AzureCallMetrics.UPLOAD, () -> this.client.uploadWithResponse(
+                    new ByteArrayInputStream(data, 0, length), length, headers, blobMetadata, null, null, null, null,
+                    Context.NONE));
+            return read;
+        }
+
+        byte[] tag = newTag();
+        List<String> blockIDs = new ArrayList<>();
+        List<Future<?>> pending = new LinkedList<>();
+        long size = 0;
+
+        try {
+            while (read > 0) {
+                String blockID = blockID(tag, blockIDs.size());
+                blockIDs.add(blockID);
+                size += read;
+
+                if (this.maxConcurrency == 1) {
+                    stageBlock(blockID, buffer, read);
+                } else {
+                    byte[] data = buffer;
+                    int length = read;
+                    pending.add(this.executor.submit(() -> {
+                        try {
+                            stageBlock(blockID, data, length);
+                        } finally {
+                            buffers.offer(data);
+                        }
+                    }));
+                    checkCompleted(pending);
+
+                    buffer = buffers.poll();
+                    if (buffer == null && allocated <= this.maxConcurrency) {
+                        buffer = new byte[this.blockSize];
+                        allocated++;
+                    } else if (buffer == null) {
+                        buffer = buffers.take();
+                    }
+                }
+                read = readBlock(input, buffer);
+            }
+
+            for (Future<?> future : pending) {
+                await(future);
+            }
+        } catch (InterruptedException exc) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Block upload interrupted");
+        } finally {
+            for (Future<?> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        if (commit.getAsBoolean()) {
+            Map<String, String> blobMetadata = metadata.get();
+            this.azureCalls.time(AzureCallMetrics.COMMIT_BLOCK_LIST, () -> this.client
+                    .commitBlockListWithResponse(blockIDs, headers, blobMetadata, null, null, null, Context.NONE));
+        }
+        return size;
+    }
+
+    private void stageBlock(String blockID, byte[] data, int length) {
+        this.azureCalls.time(AzureCallMetrics.STAGE_BLOCK, () -> {
+            this.client.stageBlock(blockID, new ByteArrayInputStream(data, 0, length), length);
+            return null;
+        });
+    }
+
+    /**
+     * Surfaces failures of blocks that finished staging early, so a broken
+     * upload is aborted without reading the rest of the stream.
+     */
+    private static void checkCompleted(List<Future<?>> pending) throws IOException, InterruptedException {
+        Iterator<Future<?>> iterator = pending.iterator();
+        while (iterator.hasNext()) {
+            Future<?> future = iterator.next();
+            if (future.isDone()) {
+                await(future);
+                iterator.remove();
+            }
+        }
+    }
+
+    private static void await(Future<?> future) throws IOException, InterruptedException {
+        try {
+            future.get();
+        } catch (ExecutionException exc) {
+            if (exc.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exc.getCause();
+            }
+            throw new IOException(exc.getCause());
+        }
+    }
+
+    /**
+     * Uncommitted blocks are shared by everyone staging to the same blob name,
+     * so every upload tags its blocks at random. Otherwise concurrent uploads to
+     * the same name would overwrite each other's blocks and commit a mix of
+     * both.
+     */
+    static byte[] newTag() {
+        byte[] tag = new byte[TAG_LENGTH];
+        ThreadLocalRandom.current().nextBytes(tag);
+        return tag;
+    }
+
+    /**
+     * Block IDs need to be Base64 encoded and of equal length within a blob, so
+     * the index is encoded as a fixed size long after the tag.
+     */
+    public static String blockID(byte[] tag, long index) {
+        return Base64.getEncoder()
+                .encodeToString(ByteBuffer.allocate(BLOCK_ID_LENGTH).put(tag, 0, TAG_LENGTH).putLong(index).array());
+    }
+
+    /**
+     * Fills the buffer as far as the stream allows. A plain read() may return
+     * far less than requested on multipart bodies, which would otherwise result
+     * in many tiny blocks.
+     */
+    static int readBlock(InputStream input, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = input.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
\ No newline at end of file
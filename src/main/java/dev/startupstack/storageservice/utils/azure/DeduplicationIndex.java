@@ -0,0 +1,336 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+
+/**
+ * Keeps the content of a deduplicating repository addressed by its SHA-256
+ * hash. Every distinct content is stored once as a blob below
+ * {@value #CONTENT_PREFIX}, an index blob below {@value #INDEX_PREFIX} maps its
+ * hash to that blob and counts the objects referring to it. Objects themselves
+ * are empty blobs whose metadata points at their content. They keep their own
+ * Content-Type, Last-Modified and ETag, only the size and data of an object
+ * are those of its content.
+ * 
+ * The counts are kept in the metadata of the index blobs and only updated
+ * conditionally on their ETag, so concurrent uploads and deletes retry instead
+ * of losing updates. Content is deleted once its last reference is gone.
+ */
+public class DeduplicationIndex {
+
+    public static final String PREFIX = ".dedup/";
+    public static final String CONTENT_PREFIX = PREFIX + "content/";
+    public static final String INDEX_PREFIX = PREFIX + "index/";
+
+    public static final String METADATA_CONTENT_ID = "content_id";
+    public static final String METADATA_CONTENT_HASH = "content_sha256";
+    public static final String METADATA_CONTENT_SIZE = "content_size";
+    static final String METADATA_REFERENCES = "references";
+
+    /**
+     * Conditional updates losing this many races in a row give up with 409
+     * Conflict
+     */
+    static final int MAX_ATTEMPTS = 10;
+
+    private final BlobContainerClient container;
+    private final AzureCallMetrics azureCalls;
+
+    public DeduplicationIndex(BlobContainerClient container, AzureCallMetrics azureCalls) {
+        this.container = container;
+        this.azureCalls = azureCalls;
+    }
+
+    /**
+     * Takes a reference on already stored content.
+     *
+     * @param hash The hex encoded SHA-256 hash of the content
+     * @return String The id of the content, or null if no such content is stored
+     */
+    public String addReference(String hash) {
+        BlobClient index = this.container.getBlobClient(INDEX_PREFIX + hash);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            BlobProperties properties = getPropertiesIfExists(index);
+            if (properties == null) {
+                return null;
+            }
+            Map<String, String> metadata = new HashMap<>(properties.getMetadata());
+            metadata.put(METADATA_REFERENCES, String.valueOf(references(metadata) + 1));
+            if (setMetadata(index, metadata, properties.getETag())) {
+                return metadata.get(METADATA_CONTENT_ID);
+            }
+        }
+        throw conflict("Adding reference to content " + hash);
+    }
+
+    /**
+     * Registers newly stored content with a single reference. If identical
+     * content was registered concurrently, a reference is taken on that one
+     * instead and the new content is deleted.
+     *
+     * @param hash      The hex encoded SHA-256 hash of the content
+     * @param contentID The id of the newly stored content
+     * @return String The id of the content the reference was taken on
+     */
+    public String register(String hash, String contentID) {
+        BlobClient index = this.container.getBlobClient(INDEX_PREFIX + hash);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(METADATA_CONTENT_ID, contentID);
+        metadata.put(METADATA_REFERENCES, "1");
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            if (putEmpty(index, null, metadata, new BlobRequestConditions().setIfNoneMatch("*"))) {
+                return contentID;
+            }
+            String existing = addReference(hash);
+            if (existing != null) {
+                deleteContent(contentID);
+                return existing;
+            }
+        }
+        throw conflict("Registering content " + hash);
+    }
+
+    /**
+     * Drops a reference on content, deleting the content together with its
+     * index entry when it was the last one.
+     *
+     * @param hash The hex encoded SHA-256 hash of the content
+     */
+    public void removeReference(String hash) {
+        BlobClient index = this.container.getBlobClient(INDEX_PREFIX + hash);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            BlobProperties properties = getPropertiesIfExists(index);
+            if (properties == null) {
+                return;
+            }
+            Map<String, String> metadata = new HashMap<>(properties.getMetadata());
+            long references = references(metadata) - 1;
+            if (references > 0) {
+                metadata.put(METADATA_REFERENCES, String.valueOf(references));
+                if (setMetadata(index, metadata, properties.getETag())) {
+                    return;
+                }
+            } else if (delete(index, properties.getETag())) {
+                deleteContent(metadata.get(METADATA_CONTENT_ID));
+                return;
+            }
+        }
+        throw conflict("Removing reference to content " + hash);
+    }
+
+    /**
+     * Writes an object as a reference to content, replacing whatever the object
+     * referred to before. The caller must hold a reference on the content, which
+     * is handed over to the object.
+     *
+     * @param objectName The name of the object
+     * @param hash       The hex encoded SHA-256 hash of the content
+     * @param contentID  The id of the content
+     * @param size       The size of the content in bytes
+     * @param headers    The HTTP headers to set on the object
+     * @param metadata   Further metadata to set on the object
+     */
+    public void writeReference(String objectName, String hash, String contentID, long size,
+            BlobHttpHeaders headers, Map<String, String> metadata) {
+        BlobClient object = this.container.getBlobClient(objectName);
+        Map<String, String> reference = new HashMap<>(metadata);
+        reference.put(METADATA_CONTENT_ID, contentID);
+        reference.put(METADATA_CONTENT_HASH, hash);
+        reference.put(METADATA_CONTENT_SIZE, String.valueOf(size));
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            BlobProperties previous = getPropertiesIfExists(object);
+            BlobRequestConditions conditions = previous == null ? new BlobRequestConditions().setIfNoneMatch("*")
+                    : new BlobRequestConditions().setIfMatch(previous.getETag());
+            if (putEmpty(object, headers, reference, conditions)) {
+                String previousHash = previous == null ? null : previous.getMetadata().get(METADATA_CONTENT_HASH);
+                if (previousHash != null) {
+                    removeReference(previousHash);
+                }
+                return;
+            }
+        }
+        throw conflict("Writing reference '" + objectName + "'");
+    }
+
+    /**
+     * Deletes an object and drops its reference on its content.
+     *
+     * @param objectName The name of the object
+     * @throws BlobStorageException With 404 Not Found if the object does not exist
+     */
+    public void deleteReference(String objectName) {
+        BlobClient object = this.container.getBlobClient(objectName);
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            BlobProperties properties = this.azureCalls.time(AzureCallMetrics.GET_PROPERTIES, object::getProperties);
+            if (delete(object, properties.getETag())) {
+                String hash = properties.getMetadata().get(METADATA_CONTENT_HASH);
+                if (hash != null) {
+                    removeReference(hash);
+                }
+                return;
+            }
+        }
+        throw conflict("Deleting reference '" + objectName + "'");
+    }
+
+    public static String contentBlobName(String contentID) {
+        return CONTENT_PREFIX + contentID;
+    }
+
+    /**
+     * Returns the name of the blob holding the data of an object, which is its
+     * content blob if the object is a reference.
+     */
+    public static String blobName(String objectName, BlobProperties properties) {
+        String contentID = properties.getMetadata() == null ? null
+                : properties.getMetadata().get(METADATA_CONTENT_ID);
+        return contentID == null ? objectName : contentBlobName(contentID);
+    }
+
+    /**
+     * Returns the size of the data of an object, which is the size of its
+     * content if the object is a reference.
+     */
+    public static long blobSize(BlobProperties properties) {
+        String size = properties.getMetadata() == null ? null : properties.getMetadata().get(METADATA_CONTENT_SIZE);
+        return size == null ? properties.getBlobSize() : Long.parseLong(size);
+    }
+
+    /**
+     * Returns the conditions for reading the data of an object with the given
+     * properties. Content is never changed once stored, so only objects that
+     * hold their own data are read on the condition that their ETag is
+     * unchanged.
+     */
+    public static BlobRequestConditions readConditions(BlobProperties properties) {
+        boolean reference = properties.getMetadata() != null
+                && properties.getMetadata().containsKey(METADATA_CONTENT_ID);
+        return new BlobRequestConditions().setIfMatch(reference ? null : properties.getETag());
+    }
+
+    /**
+     * Names below {@value #PREFIX} hold the index and content of a deduplicating
+     * repository and cannot be used for objects.
+     */
+    public static boolean isReserved(String objectName) {
+        return objectName.startsWith(PREFIX);
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException exc) {
+            throw new IllegalStateException("SHA-256 not available", exc);
+        }
+    }
+
+    void deleteContent(String contentID) {
+        BlobClient content = this.container.getBlobClient(contentBlobName(contentID));
+        try {
+            this.azureCalls.time(AzureCallMetrics.DELETE,
+                    () -> content.deleteWithResponse(null, null, null, Context.NONE));
+        } catch (BlobStorageException exc) {
+            if (exc.getStatusCode() != Status.NOT_FOUND.getStatusCode()) {
+                throw exc;
+            }
+        }
+    }
+
+    BlobProperties getPropertiesIfExists(BlobClient blob) {
+        try {
+            return this.azureCalls.time(AzureCallMetrics.GET_PROPERTIES, blob::getProperties);
+        } catch (BlobStorageException exc) {
+            if (exc.getStatusCode() == Status.NOT_FOUND.getStatusCode()) {
+                return null;
+            }
+            throw exc;
+        }
+    }
+
+    boolean setMetadata(BlobClient blob, Map<String, String> metadata, String etag) {
+        try {
+            this.azureCalls.time(AzureCallMetrics.SET_METADATA, () -> blob.setMetadataWithResponse(metadata,
+                    new BlobRequestConditions().setIfMatch(etag), null, Context.NONE));
+            return true;
+        } catch (BlobStorageException exc) {
+            return lostRace(exc);
+        }
+    }
+
+    boolean putEmpty(BlobClient blob, BlobHttpHeaders headers, Map<String, String> metadata,
+            BlobRequestConditions conditions) {
+        try {
+            this.azureCalls.time(AzureCallMetrics.UPLOAD,
+                    () -> blob.getBlockBlobClient().uploadWithResponse(new ByteArrayInputStream(new byte[0]), 0,
+                            headers, metadata, null, null, conditions, null, Context.NONE));
+            return true;
+        } catch (BlobStorageException exc) {
+            return lostRace(exc);
+        }
+    }
+
+    boolean delete(BlobClient blob, String etag) {
+        try {
+            this.azureCalls.time(AzureCallMetrics.DELETE, () -> blob.deleteWithResponse(null,
+                    new BlobRequestConditions().setIfMatch(etag), null, Context.NONE));
+            return true;
+        } catch (BlobStorageException exc) {
+            return lostRace(exc);
+        }
+    }
+
+    /**
+     * A conditional request failing because the blob changed, appeared or
+     * disappeared in the meantime is retried, anything else is an error.
+     */
+    static boolean lostRace(BlobStorageException exc) {
+        int status = exc.getStatusCode();
+        if (status == Status.PRECONDITION_FAILED.getStatusCode() || status == Status.CONFLICT.getStatusCode()
+                || status == Status.NOT_FOUND.getStatusCode()) {
+            return false;
+        }
+        throw exc;
+    }
+
+    static long references(Map<String, String> metadata) {
+        return Long.parseLong(metadata.getOrDefault(METADATA_REFERENCES, "0"));
+    }
+
+    static WebApplicationException conflict(String operation) {
+        return new WebApplicationException(operation + ": FAILED - too many concurrent updates",
+                Status.CONFLICT.getStatusCode());
+    }
+}
@@ -0,0 +1,143 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import dev.startupstack.storageservice.utils.cache.ExpiringCache;
+import dev.startupstack.storageservice.utils.cache.SingleFlight;
+
+/**
+ * Caches the metadata of repositories (most importantly the owning tenant id)
+ * so validating the tenant of a request does not need a container properties
+ * round trip every time. Entries are invalidated when a repository is created
+ * or deleted through this instance and expire after the configured TTL
+ * otherwise. Concurrent misses for the same repository share a single load.
+ */
+@ApplicationScoped
+public class RepositoryMetadataCache {
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.repositories.max-size", defaultValue = "10000")
+    int maxSize;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.cache.repositories.ttl-seconds", defaultValue = "300")
+    long ttlSeconds;
+
+    @Inject
+    MetricRegistry registry;
+
+    @Inject
+    AzureCallMetrics azureCalls;
+
+    ExpiringCache<String, Map<String, String>> cache;
+
+    SingleFlight<String, Map<String, String>> loads;
+
+    Counter hits;
+
+    Counter misses;
+
+    RepositoryMetadataCache() {
+    }
+
+    /**
+     * Creates a cache, outside of CDI
+     */
+    public RepositoryMetadataCache(int maxSize, long ttlSeconds, AzureCallMetrics azureCalls,
+            MetricRegistry registry) {
+        this.maxSize = maxSize;
+        this.ttlSeconds = ttlSeconds;
+        this.azureCalls = azureCalls;
+        this.registry = registry;
+        initialize();
+    }
+
+    @PostConstruct
+    void initialize() {
+        this.cache = new ExpiringCache<>(maxSize, ttlSeconds * 1000);
+        this.loads = new SingleFlight<>(() -> azureCalls.recordCoalesced(AzureCallMetrics.GET_CONTAINER_PROPERTIES));
+        this.hits = registry.counter("repository_cache_hits");
+        this.misses = registry.counter("repository_cache_misses");
+    }
+
+    /**
+     * Returns the metadata of a repository, loading it on a cache miss.
+     *
+     * @param repository The name of the repository
+     * @param loader     Fetches the metadata from storage
+     * @return Map The (unmodifiable) metadata of the repository
+     */
+    public Map<String, String> getMetadata(String repository, Supplier<Map<String, String>> loader) {
+        Map<String, String> metadata = this.cache.get(repository);
+        if (metadata != null) {
+            this.hits.inc();
+            return metadata;
+        }
+        this.misses.inc();
+
+        return this.loads.execute(repository, () -> {
+            Map<String, String> loaded = Collections.unmodifiableMap(new HashMap<>(loader.get()));
+            this.cache.put(repository, loaded);
+            return loaded;
+        });
+    }
+
+    /**
+     * Returns the metadata of a repository, loading it without blocking on a
+     * cache miss.
+     *
+     * @param repository The name of the repository
+     * @param loader     Starts fetching the metadata from storage
+     * @return CompletionStage The (unmodifiable) metadata of the repository
+     */
+    public CompletionStage<Map<String, String>> getMetadataAsync(String repository,
+            Supplier<CompletionStage<Map<String, String>>> loader) {
+        Map<String, String> metadata = this.cache.get(repository);
+        if (metadata != null) {
+            this.hits.inc();
+            return CompletableFuture.completedFuture(metadata);
+        }
+        this.misses.inc();
+
+        return this.loads.executeAsync(repository, () -> loader.get().thenApply(loaded -> {
+            Map<String, String> copy = Collections.unmodifiableMap(new HashMap<>(loaded));
+            this.cache.put(repository, copy);
+            return copy;
+        }));
+    }
+
+    public void invalidate(String repository) {
+        this.loads.forget(repository);
+        this.cache.invalidate(repository);
+    }
+}
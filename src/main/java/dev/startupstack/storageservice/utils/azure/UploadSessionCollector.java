@@ -0,0 +1,103 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobContainerItem;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.logging.Logger;
+
+/**
+ * Removes expired upload sessions of all repositories in the background, see
+ * {@link UploadSessions}. Every instance runs it, removing a session twice is
+ * harmless. The bean is started by the
+ * {@link dev.startupstack.storageservice.utils.StorageBackendProducer} when
+ * the Azure backend is in use.
+ */
+@ApplicationScoped
+public class UploadSessionCollector {
+
+    private static final Logger LOG = Logger.getLogger(UploadSessionCollector.class);
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.upload.sessions.gc-interval-seconds", defaultValue = "3600")
+    long intervalSeconds;
+
+    @Inject
+    AzureIdentityService azureIdentityService;
+
+    @Inject
+    AzureCallMetrics azureCalls;
+
+    ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void initialize() {
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-session-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    void shutdown() {
+        this.scheduler.shutdownNow();
+    }
+
+    /**
+     * Schedules the collection every gc-interval-seconds
+     */
+    public void start() {
+        this.scheduler.scheduleWithFixedDelay(this::collect, this.intervalSeconds, this.intervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * Removes the expired sessions of every repository. Failures are logged and
+     * retried with the next run.
+     */
+    void collect() {
+        OffsetDateTime now = OffsetDateTime.now(ZoneOffset.UTC);
+        BlobServiceClient client = this.azureIdentityService.getBlobServiceClient();
+        try {
+            for (BlobContainerItem container : this.azureCalls.time(AzureCallMetrics.LIST,
+                    client::listBlobContainers)) {
+                int deleted = new UploadSessions(client.getBlobContainerClient(container.getName()), this.azureCalls)
+                        .deleteExpired(now);
+                if (deleted > 0) {
+                    LOG.infof("Removed %d expired upload sessions of '%s': OK", deleted, container.getName());
+                }
+            }
+        } catch (RuntimeException exc) {
+            LOG.errorf("Removing expired upload sessions: FAILED - %s", exc.getMessage());
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.azure;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.util.Context;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobListDetails;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.Block;
+import com.azure.storage.blob.models.BlockList;
+import com.azure.storage.blob.models.BlockListType;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+
+import dev.startupstack.storageservice.objects.models.UploadSessionModel;
+
+/**
+ * Resumable uploads of a repository on top of the uncommitted blocks of Azure
+ * Storage. Chunks are staged as blocks straight on the target object, whose
+ * block IDs hold the session and the offset of the block, so the bytes
+ * received so far can be told from the block list alone. The session itself
+ * is an empty blob below {@value #PREFIX} that holds its settings in metadata,
+ * so it survives restarts and any instance can continue it.
+ * 
+ * Blocks are staged one after the other as the chunk is read, so a dropped
+ * connection only loses the block that was being read. Completing a session
+ * commits the contiguous blocks from offset 0. Committing anything else to
+ * the target object discards the blocks of open sessions, which then resume
+ * from 0. Azure Storage discards uncommitted blocks after a week, abandoned
+ * sessions themselves are removed by the {@link UploadSessionCollector}.
+ */
+public class UploadSessions {
+
+    public static final String PREFIX = ".uploads/";
+
+    static final String METADATA_OBJECT_NAME = "object_name";
+    static final String METADATA_CONTENT_TYPE = "content_type";
+    static final String METADATA_SIZE = "size";
+    static final String METADATA_EXPIRES = "expires";
+
+    private final BlobContainerClient container;
+    private final AzureCallMetrics azureCalls;
+
+    public UploadSessions(BlobContainerClient container, AzureCallMetrics azureCalls) {
+        this.container = container;
+        this.azureCalls = azureCalls;
+    }
+
+    /**
+     * Opens a session for uploading an object.
+     *
+     * @param size The total size of the object if known, may be null
+     * @return UploadSessionModel The new session at offset 0
+     */
+    public UploadSessionModel create(String objectName, String contentType, Long size, OffsetDateTime expiresAt) {
+        String sessionID = UUID.randomUUID().toString();
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(METADATA_OBJECT_NAME, URLEncoder.encode(objectName, StandardCharsets.UTF_8));
+        if (contentType != null) {
+            metadata.put(METADATA_CONTENT_TYPE, contentType);
+        }
+        if (size != null) {
+            metadata.put(METADATA_SIZE, String.valueOf(size));
+        }
+        metadata.put(METADATA_EXPIRES, expiresAt.toString());
+
+        BlobClient session = this.container.getBlobClient(PREFIX + sessionID);
+        this.azureCalls.time(AzureCallMetrics.UPLOAD,
+                () -> session.getBlockBlobClient().uploadWithResponse(new ByteArrayInputStream(new byte[0]), 0, null,
+                        metadata, null, null, null, null, Context.NONE));
+        return new UploadSessionModel(sessionID, objectName, contentType, size, 0, expiresAt);
+    }
+
+    /**
+     * @return UploadSessionModel The session with the number of bytes received
+     * @throws WebApplicationException With 404 Not Found if the session does not
+     *                                 exist or expired
+     */
+    public UploadSessionModel get(String sessionID) {
+        UploadSessionModel session = load(sessionID);
+        session.setOffset(offset(blocks(session)));
+        return session;
+    }
+
+    /**
+     * Stages a chunk of the object, which has to start where the previous one
+     * ended. The chunk is staged in blocks of blockSize bytes as it is read.
+     *
+     * @return UploadSessionModel The session with the number of bytes received
+     * @throws WebApplicationException With 409 Conflict if the offset is not
+     *                                 where the session continues
+     */
+    public UploadSessionModel append(String sessionID, long offset, InputStream input, int blockSize)
+            throws IOException {
+        UploadSessionModel session = load(sessionID);
+        long position = offset(blocks(session));
+        if (offset != position) {
+            throw new WebApplicationException("Upload session continues at offset " + position + ", not " + offset,
+                    Status.CONFLICT.getStatusCode());
+        }
+
+        BlockBlobClient target = target(session);
+        byte[] tag = tag(sessionID);
+        byte[] buffer = new byte[blockSize];
+        int read;
+        while ((read = BlockBlobUploader.readBlock(input, buffer)) > 0) {
+            String blockID = BlockBlobUploader.blockID(tag, position);
+            int length = read;
+            this.azureCalls.time(AzureCallMetrics.STAGE_BLOCK, () -> {
+                target.stageBlock(blockID, new ByteArrayInputStream(buffer, 0, length), length);
+                return null;
+            });
+            position += read;
+        }
+        session.setOffset(position);
+        return session;
+    }
+
+    /**
+     * Commits the received bytes as the object and closes the session.
+     *
+     * @param metadata The metadata to set on the object
+     * @return UploadSessionModel The closed session with the size of the object
+     * @throws WebApplicationException With 409 Conflict if fewer bytes than the
+     *                                 announced size were received
+     */
+    public UploadSessionModel complete(String sessionID, Map<String, String> metadata) {
+        UploadSessionModel session = load(sessionID);
+        Map<String, Long> blocks = blocks(session);
+        long size = offset(blocks);
+        if (session.getSize() != null && session.getSize() != size) {
+            throw new WebApplicationException("Upload session incomplete, received " + size + " of "
+                    + session.getSize() + " bytes", Status.CONFLICT.getStatusCode());
+        }
+
+        BlockBlobClient target = target(session);
+        BlobHttpHeaders headers = new BlobHttpHeaders().setContentType(session.getContentType());
+        this.azureCalls.time(AzureCallMetrics.COMMIT_BLOCK_LIST,
+                () -> target.commitBlockListWithResponse(new ArrayList<>(blocks.keySet()), headers, metadata, null,
+                        null, null, Context.NONE));
+        delete(sessionID);
+        session.setOffset(size);
+        return session;
+    }
+
+    /**
+     * Closes a session without committing, its blocks are left for Azure
+     * Storage to discard.
+     */
+    public void abort(String sessionID) {
+        load(sessionID);
+        delete(sessionID);
+    }
+
+    /**
+     * Removes the sessions that expired before the given time.
+     *
+     * @return int The number of sessions removed
+     */
+    public int deleteExpired(OffsetDateTime now) {
+        ListBlobsOptions options = new ListBlobsOptions().setPrefix(PREFIX)
+                .setDetails(new BlobListDetails().setRetrieveMetadata(true));
+        PagedIterable<BlobItem> sessions = this.azureCalls.time(AzureCallMetrics.LIST,
+                () -> this.container.listBlobs(options, null));
+        int deleted = 0;
+        for (BlobItem item : sessions) {
+            if (isExpired(item.getMetadata(), now)) {
+                delete(item.getName().substring(PREFIX.length()));
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Names below {@value #PREFIX} hold upload sessions and cannot be used for
+     * objects.
+     */
+    public static boolean isReserved(String objectName) {
+        return objectName.startsWith(PREFIX);
+    }
+
+    UploadSessionModel load(String sessionID) {
+        if (!isValidSessionID(sessionID)) {
+            throw notFound(sessionID);
+        }
+        BlobClient blob = this.container.getBlobClient(PREFIX + sessionID);
+        BlobProperties properties;
+        try {
+            properties = this.azureCalls.time(AzureCallMetrics.GET_PROPERTIES, blob::getProperties);
+        } catch (BlobStorageException exc) {
+            if (exc.getStatusCode() == Status.NOT_FOUND.getStatusCode()) {
+                throw notFound(sessionID);
+            }
+            throw exc;
+        }
+
+        Map<String, String> metadata = properties.getMetadata();
+        if (isExpired(metadata, OffsetDateTime.now())) {
+            throw notFound(sessionID);
+        }
+        String size = metadata.get(METADATA_SIZE);
+        return new UploadSessionModel(sessionID,
+                URLDecoder.decode(metadata.get(METADATA_OBJECT_NAME), StandardCharsets.UTF_8),
+                metadata.get(METADATA_CONTENT_TYPE), size == null ? null : Long.valueOf(size), 0,
+                OffsetDateTime.parse(metadata.get(METADATA_EXPIRES)));
+    }
+
+    /**
+     * Returns the IDs and sizes of the contiguous blocks this session staged
+     * from offset 0, in order. Blocks of other sessions, and blocks of this one
+     * after a gap left by a failed chunk, are ignored.
+     */
+    Map<String, Long> blocks(UploadSessionModel session) {
+        BlockBlobClient target = target(session);
+        BlockList blockList;
+        try {
+            blockList = this.azureCalls.time(AzureCallMetrics.GET_BLOCK_LIST,
+                    () -> target.listBlocks(BlockListType.UNCOMMITTED));
+        } catch (BlobStorageException exc) {
+            if (exc.getStatusCode() == Status.NOT_FOUND.getStatusCode()) {
+                return new LinkedHashMap<>();
+            }
+            throw exc;
+        }
+
+        byte[] tag = tag(session.getSessionID());
+        Map<Long, Block> staged = new HashMap<>();
+        for (Block block : blockList.getUncommittedBlocks()) {
+            byte[] id = Base64.getDecoder().decode(block.getName());
+            if (id.length == BlockBlobUploader.BLOCK_ID_LENGTH
+                    && Arrays.equals(id, 0, BlockBlobUploader.TAG_LENGTH, tag, 0, BlockBlobUploader.TAG_LENGTH)) {
+                staged.put(ByteBuffer.wrap(id).getLong(BlockBlobUploader.TAG_LENGTH), block);
+            }
+        }
+
+        Map<String, Long> blocks = new LinkedHashMap<>();
+        long offset = 0;
+        Block block;
+        while ((block = staged.get(offset)) != null && block.getSize() > 0) {
+            blocks.put(block.getName(), (long) block.getSize());
+            offset += block.getSize();
+        }
+        return blocks;
+    }
+
+    static long offset(Map<String, Long> blocks) {
+        return blocks.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    BlockBlobClient target(UploadSessionModel session) {
+        return this.container.getBlobClient(session.getObjectName()).getBlockBlobClient();
+    }
+
+    void delete(String sessionID) {
+        BlobClient blob = this.container.getBlobClient(PREFIX + sessionID);
+        try {
+            this.azureCalls.time(AzureCallMetrics.DELETE, () -> blob.deleteWithResponse(null, null, null,
+                    Context.NONE));
+        } catch (BlobStorageException exc) {
+            if (exc.getStatusCode() != Status.NOT_FOUND.getStatusCode()) {
+                throw exc;
+            }
+        }
+    }
+
+    /**
+     * Block IDs of a session are tagged with the last bytes of the session ID, as
+     * those of a random UUID are random, unlike its version and variant bits.
+     * Blocks are indexed by their offset, so the chunks of a session can be told
+     * apart from those of other sessions and of the {@link BlockBlobUploader}.
+     */
+    static byte[] tag(String sessionID) {
+        byte[] bits = ByteBuffer.allocate(Long.BYTES).putLong(UUID.fromString(sessionID).getLeastSignificantBits())
+                .array();
+        return Arrays.copyOfRange(bits, Long.BYTES - BlockBlobUploader.TAG_LENGTH, Long.BYTES);
+    }
+
+    static boolean isValidSessionID(String sessionID) {
+        try {
+            return sessionID != null && UUID.fromString(sessionID).toString().equals(sessionID);
+        } catch (IllegalArgumentException exc) {
+            return false;
+        }
+    }
+
+    static boolean isExpired(Map<String, String> metadata, OffsetDateTime now) {
+        String expires = metadata == null ? null : metadata.get(METADATA_EXPIRES);
+        return expires == null || OffsetDateTime.parse(expires).isBefore(now);
+    }
+
+    static WebApplicationException notFound(String sessionID) {
+        return new WebApplicationException("Upload session '" + sessionID + "' not found",
+                Status.NOT_FOUND.getStatusCode());
+    }
+}
@@ -0,0 +1,146 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * A small thread-safe cache that holds at most maxSize entries, evicting the
+ * least recently used one when full, and drops entries older than the TTL.
+ * 
+ * Every invalidation starts a new generation. A value loaded while its key
+ * was invalidated is stale, so loaders take the {@link #generation()} before
+ * loading and put the value with it, which only caches the value if its key
+ * was not invalidated since. The generation a key was last invalidated in is
+ * remembered for the maxSize most recently invalidated keys, older
+ * invalidations count as the most recent one that was forgotten.
+ */
+public class ExpiringCache<K, V> {
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Map<K, Entry<V>> entries;
+    private final Map<K, Long> invalidations;
+    private long generation;
+    private long forgotten;
+
+    public ExpiringCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > ExpiringCache.this.maxSize;
+            }
+        };
+        this.invalidations = new LinkedHashMap<K, Long>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Long> eldest) {
+                if (size() > ExpiringCache.this.maxSize) {
+                    ExpiringCache.this.forgotten = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @param key The key to look up
+     * @return V The cached value, or null if it is absent or expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - entry.createdAt > this.ttlMillis) {
+            this.entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (this.maxSize > 0) {
+            this.entries.put(key, new Entry<>(value));
+        }
+    }
+
+    /**
+     * Caches a value unless its key was invalidated after the given generation
+     *
+     * @param generation The {@link #generation()} taken before loading the value
+     * @return boolean Whether the value was cached
+     */
+    public synchronized boolean put(K key, V value, long generation) {
+        Long invalidated = this.invalidations.get(key);
+        if ((invalidated == null ? this.forgotten : invalidated) > generation) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    public synchronized long generation() {
+        return this.generation;
+    }
+
+    public synchronized void invalidate(K key) {
+        this.entries.remove(key);
+        this.invalidations.remove(key);
+        this.invalidations.put(key, ++this.generation);
+    }
+
+    /**
+     * Invalidates the matching keys. Keys that are not cached may be loading, so
+     * this invalidates the loads of all keys.
+     */
+    public synchronized void invalidateIf(Predicate<K> predicate) {
+        this.entries.keySet().removeIf(predicate);
+        this.invalidations.clear();
+        this.forgotten = ++this.generation;
+    }
+
+    public synchronized void invalidateAll() {
+        this.entries.clear();
+        this.invalidations.clear();
+        this.forgotten = ++this.generation;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long createdAt = System.currentTimeMillis();
+
+        Entry(V value) {
+            this.value = value;
+        }
+    }
+}
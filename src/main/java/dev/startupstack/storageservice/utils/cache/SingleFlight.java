@@ -0,0 +1,136 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight,
+ * callers asking for the same key wait for its result instead of making the
+ * call again. Nothing is kept once the call completes, so this is meant to sit
+ * in front of a call, next to a cache such as {@link ExpiringCache} rather
+ * than instead of one.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final Runnable onJoin;
+
+    public SingleFlight() {
+        this(() -> {
+        });
+    }
+
+    /**
+     * @param onJoin Runs whenever a caller joins a call in flight, e.g. to count
+     *               the calls saved
+     */
+    public SingleFlight(Runnable onJoin) {
+        this.onJoin = onJoin;
+    }
+
+    /**
+     * Runs the call on the calling thread, or waits for the result of the same
+     * call in flight.
+     *
+     * @param key  Identifies the call
+     * @param call Makes the call
+     * @return V The result of the call
+     */
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = this.calls.putIfAbsent(key, result);
+        if (inFlight != null) {
+            this.onJoin.run();
+            try {
+                return inFlight.join();
+            } catch (CompletionException exc) {
+                if (exc.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) exc.getCause();
+                }
+                throw exc;
+            }
+        }
+
+        try {
+            V value = call.get();
+            this.calls.remove(key, result);
+            result.complete(value);
+            return value;
+        } catch (RuntimeException | Error exc) {
+            this.calls.remove(key, result);
+            result.completeExceptionally(exc);
+            throw exc;
+        }
+    }
+
+    /**
+     * Starts the call, or joins the same call in flight, without blocking.
+     *
+     * @param key  Identifies the call
+     * @param call Starts the call
+     * @return CompletionStage The result of the call
+     */
+    public CompletionStage<V> executeAsync(K key, Supplier<? extends CompletionStage<V>> call) {
+        CompletableFuture<V> result = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = this.calls.putIfAbsent(key, result);
+        if (inFlight != null) {
+            this.onJoin.run();
+            return inFlight.copy();
+        }
+
+        CompletionStage<V> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException exc) {
+            started = CompletableFuture.failedFuture(exc);
+        }
+        started.whenComplete((value, exc) -> {
+            this.calls.remove(key, result);
+            if (exc == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(exc);
+            }
+        });
+        return result.copy();
+    }
+
+    /**
+     * Stops callers from joining the call in flight for a key, because its
+     * result may already be outdated, e.g. after the object has been changed.
+     * The call itself still completes for the callers that joined it.
+     */
+    public void forget(K key) {
+        this.calls.remove(key);
+    }
+
+    public void forgetIf(Predicate<K> predicate) {
+        this.calls.keySet().removeIf(predicate);
+    }
+
+    public int size() {
+        return this.calls.size();
+    }
+}
@@ -0,0 +1,439 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.filesystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+
+import dev.startupstack.storageservice.utils.ChecksumInputStream;
+
+/**
+ * Maps repositories and objects onto a local directory tree:
+ * 
+ * <pre>
+ * {root}/{repository}/repository.properties   repository metadata (tenant_id, ...)
+ * {root}/{repository}/objects/{name}          object data, followed by its metadata
+ * </pre>
+ * 
+ * The metadata of an object is stored in a trailer after its data, see
+ * {@link #writeObject}, so both are replaced together. Writes go to a
+ * temporary file first and are moved into place atomically, so readers never
+ * see partially written objects, or the data of one version with the metadata
+ * of another. An object that is read while it is replaced is read from the
+ * file that was opened first, see {@link #openObject}.
+ */
+@ApplicationScoped
+public class FilesystemStorage {
+
+    public static final String METADATA_CONTENT_TYPE = "content_type";
+    public static final String METADATA_CONTENT_MD5 = "content_md5";
+    public static final String METADATA_CONTENT_CRC32C = "content_crc32c";
+    public static final String METADATA_CREATED = "created";
+    public static final String METADATA_SIZE = "size";
+
+    static final String REPOSITORY_METADATA = "repository.properties";
+    static final String OBJECTS_DIR = "objects";
+
+    /**
+     * Ends every object file, after the length of the metadata, so files that
+     * are not objects are not mistaken for one
+     */
+    static final int TRAILER_MAGIC = 0x53534f31;
+    static final int TRAILER_SIZE = 2 * Integer.BYTES;
+
+    static final int ASYNC_CHUNK_SIZE = 64 * 1024;
+
+    @Inject
+    @ConfigProperty(name = "startupstack.storageservice.filesystem.root", defaultValue = "storage")
+    String root;
+
+    FilesystemStorage() {
+    }
+
+    /**
+     * Creates the storage below the given directory, outside of CDI
+     */
+    public FilesystemStorage(String root) {
+        this.root = root;
+    }
+
+    public Path getRepositoryPath(String repository) {
+        return Paths.get(root).resolve(validateName(repository));
+    }
+
+    public Path getObjectPath(String repository, String objectName) {
+        return getRepositoryPath(repository).resolve(OBJECTS_DIR).resolve(validateName(objectName));
+    }
+
+    public boolean repositoryExists(String repository) {
+        return Files.isRegularFile(getRepositoryPath(repository).resolve(REPOSITORY_METADATA));
+    }
+
+    /**
+     * Creates the directory layout of a new repository.
+     *
+     * @return boolean false if the repository already exists
+     */
+    public boolean createRepository(String repository, Map<String, String> metadata) throws IOException {
+        Path path = getRepositoryPath(repository);
+        if (repositoryExists(repository)) {
+            return false;
+        }
+        Files.createDirectories(path.resolve(OBJECTS_DIR));
+        writeProperties(path.resolve(REPOSITORY_METADATA), metadata);
+        return true;
+    }
+
+    public void deleteRepository(String repository) throws IOException {
+        Path path = getRepositoryPath(repository);
+        if (!Files.exists(path)) {
+            throw new NoSuchFileException(repository);
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path file : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    public Map<String, String> getRepositoryMetadata(String repository) throws IOException {
+        return readProperties(getRepositoryPath(repository).resolve(REPOSITORY_METADATA));
+    }
+
+    /**
+     * Reads the metadata from the trailer of an object, which includes the size
+     * of its data under {@value #METADATA_SIZE}.
+     */
+    public Map<String, String> getObjectMetadata(String repository, String objectName) throws IOException {
+        try (StoredObject object = openObject(repository, objectName)) {
+            return object.getMetadata();
+        }
+    }
+
+    /**
+     * Opens an object and reads the metadata from its trailer. The data is read
+     * from the same open file, so it belongs to that metadata even if the
+     * object is replaced or deleted in the meantime.
+     *
+     * @return StoredObject The open object, which has to be closed
+     */
+    public StoredObject openObject(String repository, String objectName) throws IOException {
+        Path path = getObjectPath(repository, objectName);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new StoredObject(channel, readTrailer(channel, path));
+        } catch (IOException | RuntimeException exc) {
+            channel.close();
+            throw exc;
+        }
+    }
+
+    /**
+     * Streams the input into a temporary file next to the target, appends the
+     * object metadata and moves it into place once complete. The MD5 and CRC32C
+     * of the object are computed while streaming and added to the metadata,
+     * where the MD5 also serves as the ETag.
+     * 
+     * The metadata is stored as properties after the data, followed by their
+     * length and {@link #TRAILER_MAGIC}, so the data still starts at offset 0
+     * and can be transferred as is.
+     *
+     * @return long The number of bytes written
+     */
+    public long writeObject(String repository, String objectName, InputStream input, Map<String, String> metadata)
+            throws IOException {
+        Path target = getObjectPath(repository, objectName);
+        Path temp = Files.createTempFile(target.getParent(), ".upload-", ".tmp");
+        try {
+            long size;
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                ChecksumInputStream checksums = new ChecksumInputStream(input);
+                size = checksums.transferTo(output);
+
+                Map<String, String> objectMetadata = new HashMap<>(metadata);
+                objectMetadata.put(METADATA_CONTENT_MD5, checksums.getMd5());
+                objectMetadata.put(METADATA_CONTENT_CRC32C, checksums.getCrc32c());
+                objectMetadata.put(METADATA_CREATED, OffsetDateTime.now(ZoneOffset.UTC).toString());
+                objectMetadata.put(METADATA_SIZE, String.valueOf(size));
+
+                ByteArrayOutputStream properties = new ByteArrayOutputStream();
+                storeProperties(properties, objectMetadata);
+                properties.writeTo(output);
+                output.write(ByteBuffer.allocate(TRAILER_SIZE).putInt(properties.size()).putInt(TRAILER_MAGIC)
+                        .array());
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return size;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Transfers a range of any file to the output. FileChannel.transferTo only
+     * lets the kernel move the data without copying it through the heap if the
+     * target is a file or socket channel. A response body is a plain
+     * OutputStream, whose channel adapter copies through a heap buffer, so this
+     * saves the read buffer of a stream but is not zero-copy.
+     */
+    public static void transfer(Path path, long offset, long count, OutputStream output) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            transfer(channel, offset, count, output);
+        }
+    }
+
+    /**
+     * Transfers a range of an open file to the output like
+     * {@link #transfer(Path, long, long, OutputStream)}. The position of the
+     * channel is not changed, so it can be read by several threads at once.
+     */
+    public static void transfer(FileChannel channel, long offset, long count, OutputStream output)
+            throws IOException {
+        WritableByteChannel target = Channels.newChannel(output);
+        long position = offset;
+        long end = offset + count;
+        while (position < end) {
+            long transferred = channel.transferTo(position, end - position, target);
+            if (transferred <= 0) {
+                throw new IOException("Unexpected end of file at " + position);
+            }
+            position += transferred;
+        }
+    }
+
+    /**
+     * Transfers a range of a file to the output without blocking. Chunks are
+     * read with an AsynchronousFileChannel and every chunk is written before the
+     * next one is read, so neither the disk nor a slow client holds a thread.
+     */
+    public static CompletionStage<Void> transferAsync(AsynchronousFileChannel channel, long offset, long count,
+            AsyncOutputStream output) {
+        if (count <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(ASYNC_CHUNK_SIZE, count));
+        CompletableFuture<Integer> read = new CompletableFuture<>();
+        channel.read(chunk, offset, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer bytes, Void attachment) {
+                read.complete(bytes);
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                read.completeExceptionally(exc);
+            }
+        });
+        return read.thenCompose(bytes -> {
+            if (bytes <= 0) {
+                throw new CompletionException(new IOException("Unexpected end of file at " + offset));
+            }
+            return output.asyncWrite(chunk.array(), 0, bytes)
+                    .thenCompose(ignored -> transferAsync(channel, offset + bytes, count - bytes, output));
+        });
+    }
+
+    public void deleteObject(String repository, String objectName) throws IOException {
+        Files.delete(getObjectPath(repository, objectName));
+    }
+
+    /**
+     * Lists object names in lexicographic order, starting after the given name.
+     * Directories are not sorted, so every entry is looked at, but only the
+     * first limit names are kept however large the repository is.
+     *
+     * @param prefix only objects whose name starts with this, may be null
+     * @param after  the name to resume after, may be null
+     * @param limit  the maximum number of names to return
+     * @return List Up to limit object names
+     */
+    public List<String> listObjectNames(String repository, String prefix, String after, int limit)
+            throws IOException {
+        TreeSet<String> names = new TreeSet<>();
+        Path objects = getRepositoryPath(repository).resolve(OBJECTS_DIR);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(objects)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.startsWith(".") || (prefix != null && !name.startsWith(prefix))
+                        || (after != null && name.compareTo(after) <= 0)) {
+                    continue;
+                }
+                if (names.size() < limit) {
+                    names.add(name);
+                } else if (name.compareTo(names.last()) < 0) {
+                    names.pollLast();
+                    names.add(name);
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Repository and object names end up as single path elements, so anything
+     * that could escape the storage root is rejected.
+     */
+    static String validateName(String name) {
+        if (name == null || name.isEmpty() || name.startsWith(".") || name.contains("/") || name.contains("\\")
+                || name.indexOf('\0') >= 0) {
+            throw new BadRequestException("Invalid name: " + name);
+        }
+        return name;
+    }
+
+    static Map<String, String> readTrailer(FileChannel channel, Path path) throws IOException {
+        long fileSize = channel.size();
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        if (fileSize < TRAILER_SIZE || readFully(channel, trailer, fileSize - TRAILER_SIZE) < TRAILER_SIZE
+                || trailer.getInt(Integer.BYTES) != TRAILER_MAGIC) {
+            throw new IOException("Not a stored object '" + path.getFileName() + "'");
+        }
+        int length = trailer.getInt(0);
+        if (length < 0 || length > fileSize - TRAILER_SIZE) {
+            throw new IOException("Corrupt metadata of '" + path.getFileName() + "'");
+        }
+        ByteBuffer properties = ByteBuffer.allocate(length);
+        readFully(channel, properties, fileSize - TRAILER_SIZE - length);
+        return loadProperties(new ByteArrayInputStream(properties.array(), 0, properties.position()));
+    }
+
+    static Map<String, String> readProperties(Path path) throws IOException {
+        try (InputStream input = Files.newInputStream(path)) {
+            return loadProperties(input);
+        }
+    }
+
+    static Map<String, String> loadProperties(InputStream input) throws IOException {
+        Properties properties = new Properties();
+        properties.load(input);
+        Map<String, String> metadata = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            metadata.put(key, properties.getProperty(key));
+        }
+        return metadata;
+    }
+
+    static void writeProperties(Path path, Map<String, String> metadata) throws IOException {
+        Path temp = Files.createTempFile(path.getParent(), ".metadata-", ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                storeProperties(output, metadata);
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static void storeProperties(OutputStream output, Map<String, String> metadata) throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(metadata);
+        properties.store(output, null);
+    }
+
+    static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+
+    /**
+     * An object opened for reading, whose data is transferred from the file it
+     * was opened with
+     */
+    public static class StoredObject implements Closeable {
+        private final FileChannel channel;
+        private final Map<String, String> metadata;
+        private final long size;
+
+        StoredObject(FileChannel channel, Map<String, String> metadata) throws IOException {
+            this.channel = channel;
+            this.metadata = metadata;
+            try {
+                this.size = Long.parseLong(metadata.get(METADATA_SIZE));
+            } catch (NumberFormatException exc) {
+                throw new IOException("Corrupt metadata, invalid size: " + metadata.get(METADATA_SIZE));
+            }
+        }
+
+        public Map<String, String> getMetadata() {
+            return this.metadata;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Transfers a range of the data to the output, see
+         * {@link FilesystemStorage#transfer}. The range has to be within the size
+         * of the object, so the trailer is never sent.
+         */
+        public void transfer(long offset, long count, OutputStream output) throws IOException {
+            if (offset < 0 || count < 0 || offset + count > this.size) {
+                throw new IOException("Range " + offset + "+" + count + " exceeds the object size " + this.size);
+            }
+            FilesystemStorage.transfer(this.channel, offset, count, output);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/** 
+* This file is part of startup-stack.
+* Copyright (c) 2020-2022, Transpose-IT B.V.
+*
+* Startup-stack is free software: you can redistribute it and/or modify
+* it under the terms of the GNU General Public License as published by
+* the Free Software Foundation, either version 3 of the License, or
+* (at your option) any later version.
+*
+* Startup-stack is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+* GNU General Public License for more details.
+*
+* You can find a copy of the GNU General Public License in the
+* LICENSE file.  Alternatively, see <http://www.gnu.org/licenses/>.
+*/
+package dev.startupstack.storageservice.utils.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.ws.rs.NotFoundException;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Keeps repositories and objects in memory, for load tests and benchmarks that
+ * should not include storage latency. All state lives in concurrent maps and
+ * objects are immutable once stored, so readers never block writers. Object
+ * data is kept in direct buffers to keep large payloads out of the heap. The
+ * buffers are allocated as the upload is read, starting small and growing up
+ * to {@value #MAX_BUFFER_SIZE} bytes, so an object is never held twice and its
+ * size is not limited to what fits in a single buffer. Objects are kept sorted
+ * by name, so listings can resume after any name.
+ */
+@ApplicationScoped
+public class MemoryStorage {
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_BUFFER_SIZE = 1024 * 1024;
+
+    private final ConcurrentMap<String, Repository> repositories = new ConcurrentHashMap<>();
+
+    /**
+     * @return boolean false if the repository already exists
+     */
+    public boolean createRepository(String name, Map<String, String> metadata) {
+        return this.repositories.putIfAbsent(name, new Repository(metadata)) == null;
+    }
+
+    /**
+     * @return boolean false if the repository does not exist
+     */
+    public boolean deleteRepository(String name) {
+        return this.repositories.remove(name) != null;
+    }
+
+    /**
+     * @return Map The metadata of the repository, or null if it does not exist
+     */
+    public Map<String, String> getRepositoryMetadata(String name) {
+        Repository repository = this.repositories.get(name);
+        return repository == null ? null : repository.metadata;
+    }
+
+    /**
+     * @return StoredObject The object, or null if it does not exist
+     */
+    public StoredObject getObject(String repository, String objectName) {
+        return getRepository(repository).objects.get(objectName);
+    }
+
+    /**
+     * Reads the input completely and stores it, replacing any existing object of
+     * the same name.
+     */
+    public StoredObject putObject(String repository, String objectName, InputStream input, String contentType,
+            Map<String, String> metadata) throws IOException {
+        MessageDigest digest = DigestUtils.getMd5Digest();
+        CRC32C crc32c = new CRC32C();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        byte[] chunk = new byte[CHUNK_SIZE];
+
+        int read;
+        do {
+            read = readChunk(input, chunk);
+            digest.update(chunk, 0, read);
+            crc32c.update(chunk, 0, read);
+            int offset = 0;
+            while (offset < read) {
+                if (!buffer.hasRemaining()) {
+                    buffers.add(buffer.flip());
+                    buffer = ByteBuffer.allocateDirect(Math.min(2 * buffer.capacity(), MAX_BUFFER_SIZE));
+                }
+                int length = Math.min(read - offset, buffer.remaining());
+                buffer.put(chunk, offset, length);
+                offset += length;
+            }
+        } while (read == CHUNK_SIZE);
+
+        // Only the last buffer may be partly filled, trimming it copies at most one buffer
+        buffer.flip();
+        if (buffer.hasRemaining() || buffers.isEmpty()) {
+            buffers.add(buffer.remaining() == buffer.capacity() ? buffer
+                    : ByteBuffer.allocateDirect(buffer.remaining()).put(buffer).flip());
+        }
+
+        StoredObject object = new StoredObject(buffers, contentType,
+                Hex.encodeHexString(digest.digest()), String.format("%08x", crc32c.getValue()),
+                OffsetDateTime.now(ZoneOffset.UTC), metadata);
+        getRepository(repository).objects.put(objectName, object);
+        return object;
+    }
+
+    /**
+     * @return boolean false if the object does not exist
+     */
+    public boolean deleteObject(String repository, String objectName) {
+        return getRepository(repository).objects.remove(objectName) != null;
+    }
+
+    /**
+     * Lists objects in name order, starting after the given name.
+     *
+     * @param prefix only objects whose name starts with this, may be null
+     * @param after  the name to resume after, may be null
+     * @param limit  the maximum number of objects to return
+     * @return List Up to limit objects with their names
+     */
+    public List<Map.Entry<String, StoredObject>> listObjects(String repository, String prefix, String after,
+            int limit) {
+        String from = prefix == null ? "" : prefix;
+        boolean inclusive = true;
+        if (after != null && after.compareTo(from) >= 0) {
+            from = after;
+            inclusive = false;
+        }
+        return getRepository(repository).objects.tailMap(from, inclusive).entrySet().stream()
+                .takeWhile(entry -> prefix == null || entry.getKey().startsWith(prefix)).limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    private Repository getRepository(String name) {
+        Repository repository = this.repositories.get(name);
+        if (repository == null) {
+            throw new NotFoundException("Repository '" + name + "' not found");
+        }
+        return repository;
+    }
+
+    private static int readChunk(InputStream input, byte[] chunk) throws IOException {
+        int total = 0;
+        while (total < chunk.length) {
+            int read = input.read(chunk, total, chunk.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static class Repository {
+        final Map<String, String> metadata;
+        final ConcurrentNavigableMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+
+        Repository(Map<String, String> metadata) {
+            this.metadata = Collections.unmodifiableMap(metadata);
+        }
+    }
+
+    /**
+     * An immutable object with its data and metadata
+     */
+    public static class StoredObject {
+        private final ByteBuffer[] data;
+        private final long[] offsets;
+        private final long size;
+        private final String contentType;
+        private final String md5;
+        private final String crc32c;
+        private final OffsetDateTime created;
+        private final Map<String, String> metadata;
+
+        StoredObject(List<ByteBuffer> data, String contentType, String md5, String crc32c, OffsetDateTime created,
+                Map<String, String> metadata) {
+            this.data = new ByteBuffer[data.size()];
+            this.offsets = new long[data.size()];
+            long offset = 0;
+            for (int i = 0; i < this.data.length; i++) {
+                this.data[i] = data.get(i).asReadOnlyBuffer();
+                this.offsets[i] = offset;
+                offset += this.data[i].remaining();
+            }
+            this.size = offset;
+            this.contentType = contentType;
+            this.md5 = md5;
+            this.crc32c = crc32c;
+            this.created = created;
+            this.metadata = Collections.unmodifiableMap(metadata);
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public String getContentType() {
+            return this.contentType;
+        }
+
+        public String getMd5() {
+            return this.md5;
+        }
+
+        public String getCrc32c() {
+            return this.crc32c;
+        }
+
+        public OffsetDateTime getCreated() {
+            return this.created;
+        }
+
+        public Map<String, String> getMetadata() {
+            return this.metadata;
+        }
+
+        /**
+         * Writes a range of the object to the output. Every call works on its own
+         * views of the buffers, so concurrent reads don't interfere.
+         */
+        public void write(long offset, long count, OutputStream output) throws IOException {
+            WritableByteChannel channel = Channels.newChannel(output);
+            int index = Arrays.binarySearch(this.offsets, offset);
+            index = index < 0 ? -index - 2 : index;
+            long position = offset;
+            long end = offset + count;
+            while (position < end) {
+                ByteBuffer view = this.data[index].duplicate();
+                view.position(Math.toIntExact(position - this.offsets[index]));
+                view.limit(Math.toIntExact(Math.min(end - this.offsets[index], view.limit())));
+                position += view.remaining();
+                while (view.hasRemaining()) {
+                    channel.write(view);
+                }
+                index++;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package dev.startupstack;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import javax.ws.rs.core.Response.Status;
+
+import com.azure.core.http.HttpResponse;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRequestConditions;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.Block;
+import com.azure.storage.blob.models.BlockList;
+import com.azure.storage.blob.models.BlockListType;
+import com.azure.storage.blob.specialized.BlockBlobClient;
+
+/**
+ * A {@link BlobContainerClient} that keeps its blobs in memory. It supports the
+ * calls the upload sessions and the deduplication index make: properties,
+ * metadata, single shot uploads, staged blocks and deletes. Writes check their
+ * {@link BlobRequestConditions} and failures carry their status like Azure
+ * Storage does.
+ */
+public class FakeBlobContainer {
+
+    /**
+     * A blob, with an ETag that changes on every write
+     */
+    static class Blob {
+        final String etag;
+        final Map<String, String> metadata;
+
+        Blob(String etag, Map<String, String> metadata) {
+            this.etag = etag;
+            this.metadata = metadata == null ? new HashMap<>() : new HashMap<>(metadata);
+        }
+    }
+
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+
+    private final Map<String, List<Block>> staged = new ConcurrentHashMap<>();
+
+    private final Map<String, List<String>> committed = new ConcurrentHashMap<>();
+
+    private final AtomicInteger versions = new AtomicInteger();
+
+    private final BlobContainerClient client = mock(BlobContainerClient.class);
+
+    private Consumer<String> concurrently = name -> {
+    };
+
+    public FakeBlobContainer() {
+        when(this.client.getBlobClient(anyString())).thenAnswer(invocation -> blob(invocation.getArgument(0)));
+    }
+
+    public static BlobStorageException failure(Status status) {
+        HttpResponse response = mock(HttpResponse.class);
+        when(response.getStatusCode()).thenReturn(status.getStatusCode());
+        return new BlobStorageException(status.getReasonPhrase(), response, null);
+    }
+
+    public BlobContainerClient getClient() {
+        return this.client;
+    }
+
+    public boolean exists(String name) {
+        return this.blobs.containsKey(name);
+    }
+
+    /**
+     * Returns the metadata of a blob, or null if it does not exist
+     */
+    public Map<String, String> getMetadata(String name) {
+        Blob blob = this.blobs.get(name);
+        return blob == null ? null : blob.metadata;
+    }
+
+    /**
+     * Writes a blob with the given metadata, changing its ETag
+     */
+    public void put(String name, Map<String, String> metadata) {
+        this.blobs.put(name, new Blob("\"" + this.versions.incrementAndGet() + "\"", metadata));
+    }
+
+    /**
+     * Returns the uncommitted blocks of a blob in the order they were staged.
+     * Staging a block ID again replaces the block, like Azure Storage does. The
+     * list of a blob with staged blocks can be changed to simulate lost blocks.
+     */
+    public List<Block> getStagedBlocks(String name) {
+        return this.staged.getOrDefault(name, List.of());
+    }
+
+    /**
+     * Returns the block IDs last committed to a blob, or null
+     */
+    public List<String> getCommittedBlocks(String name) {
+        return this.committed.get(name);
+    }
+
+    /**
+     * Sets a hook that runs before every conditional write to a blob, to change
+     * it concurrently
+     */
+    public void setConcurrently(Consumer<String> concurrently) {
+        this.concurrently = concurrently;
+    }
+
+    /**
+     * Checks the conditions of a write like Azure Storage does
+     */
+    void check(String name, BlobRequestConditions conditions) {
+        this.concurrently.accept(name);
+        Blob blob = this.blobs.get(name);
+        if (conditions == null) {
+            return;
+        }
+        if (conditions.getIfMatch() != null && (blob == null || !blob.etag.equals(conditions.getIfMatch()))) {
+            throw failure(blob == null ? Status.NOT_FOUND : Status.PRECONDITION_FAILED);
+        }
+        if ("*".equals(conditions.getIfNoneMatch()) && blob != null) {
+            throw failure(Status.CONFLICT);
+        }
+    }
+
+    BlobClient blob(String name) {
+        BlobClient client = mock(BlobClient.class);
+        when(client.getProperties()).thenAnswer(invocation -> {
+            Blob blob = this.blobs.get(name);
+            if (blob == null) {
+                throw failure(Status.NOT_FOUND);
+            }
+            BlobProperties properties = mock(BlobProperties.class);
+            when(properties.getETag()).thenReturn(blob.etag);
+            when(properties.getMetadata()).thenReturn(blob.metadata);
+            return properties;
+        });
+        when(client.setMetadataWithResponse(any(), any(), any(), any())).thenAnswer(invocation -> {
+            check(name, invocation.getArgument(1));
+            put(name, invocation.getArgument(0));
+            return null;
+        });
+        when(client.deleteWithResponse(any(), any(), any(), any())).thenAnswer(invocation -> {
+            check(name, invocation.getArgument(1));
+            if (this.blobs.remove(name) == null) {
+                throw failure(Status.NOT_FOUND);
+            }
+            return null;
+        });
+
+        BlockBlobClient blockBlob = mock(BlockBlobClient.class);
+        when(client.getBlockBlobClient()).thenReturn(blockBlob);
+        when(blockBlob.uploadWithResponse(any(), anyLong(), any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    check(name, invocation.getArgument(6));
+                    put(name, invocation.getArgument(3));
+                    return null;
+                });
+        doAnswer(invocation -> {
+            long length = invocation.getArgument(2);
+            assertEquals(length, ((InputStream) invocation.getArgument(1)).readAllBytes().length);
+            List<Block> blocks = this.staged.computeIfAbsent(name, key -> new ArrayList<>());
+            blocks.removeIf(block -> block.getName().equals(invocation.getArgument(0)));
+            blocks.add(new Block().setName(invocation.getArgument(0)).setSize((int) length));
+            return null;
+        }).when(blockBlob).stageBlock(anyString(), any(), anyLong());
+        when(blockBlob.listBlocks(BlockListType.UNCOMMITTED)).thenAnswer(invocation -> {
+            if (!this.staged.containsKey(name) && !this.blobs.containsKey(name)) {
+                throw failure(Status.NOT_FOUND);
+            }
+            return new BlockList().setUncommittedBlocks(new ArrayList<>(this.staged.getOrDefault(name, List.of())));
+        });
+        when(blockBlob.commitBlockListWithResponse(any(), any(), any(), any(), any(), any(), any()))
+                .thenAnswer(invocation -> {
+                    check(name, invocation.getArgument(4));
+                    this.committed.put(name, new ArrayList<>(invocation.getArgument(0)));
+                    put(name, invocation.getArgument(2));
+                    this.staged.remove(name);
+                    return null;
+                });
+        return client;
+    }
+}
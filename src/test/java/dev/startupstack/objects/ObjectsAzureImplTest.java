@@ -9,10 +9,13 @@ import static dev.startupstack.TestUtils.testUserTenantID;
 import static io.restassured.RestAssured.given;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Random;
 
 import javax.inject.Inject;
@@ -30,6 +33,7 @@ import org.junit.jupiter.api.TestInstance.Lifecycle;
 import org.junit.jupiter.api.TestMethodOrder;
 
 import dev.startupstack.TestUtils;
+import dev.startupstack.storageservice.objects.models.BatchDeleteModel;
 import dev.startupstack.storageservice.repostitories.models.RepositoriesModel;
 import io.quarkus.test.junit.QuarkusTest;
 import io.restassured.builder.MultiPartSpecBuilder;
@@ -143,6 +147,39 @@ public class ObjectsAzureImplTest {
         assertArrayEquals(localFile, downloadedObject);
     }
 
+    @Test
+    @Order(3)
+    void testThatPartialObjectCanBeDownloaded() throws IOException {
+        byte[] localFile = Files.readAllBytes(Paths.get(localFilePath + this.binaryObjectName));
+
+        byte[] downloadedObject = given()
+            .auth().preemptive().oauth2(testUserAccessToken)
+            .header("Range", "bytes=1-10")
+            .pathParam("repository", this.containerName)
+            .pathParam("name", this.binaryObjectName)
+            .basePath(OBJECTS_URL)
+        .when()
+            .get("/download/{repository}/{name}")
+        .then()
+            .statusCode(Status.PARTIAL_CONTENT.getStatusCode())
+            .header("Accept-Ranges", "bytes")
+            .header("Content-Range", "bytes 1-10/" + localFile.length)
+            .extract().asByteArray();
+
+        assertArrayEquals(Arrays.copyOfRange(localFile, 1, 11), downloadedObject);
+
+        given()
+            .auth().preemptive().oauth2(testUserAccessToken)
+            .header("Range", "bytes=" + localFile.length + "-")
+            .pathParam("repository", this.containerName)
+            .pathParam("name", this.binaryObjectName)
+            .basePath(OBJECTS_URL)
+        .when()
+            .get("/download/{repository}/{name}")
+        .then()
+            .statusCode(Status.REQUESTED_RANGE_NOT_SATISFIABLE.getStatusCode());
+    }
+
     @Test
     @Order(4)
     void testThatObjectInfoCanBeRetrieved() {
@@ -157,6 +194,45 @@ public class ObjectsAzureImplTest {
             .statusCode(Status.OK.getStatusCode());
     }
 
+    @Test
+    @Order(4)
+    void testThatUnmodifiedObjectIsNotDownloadedAgain() {
+        String etag = given()
+            .auth().preemptive().oauth2(testUserAccessToken)
+            .pathParam("repository", this.containerName)
+            .pathParam("name", this.textObjectName)
+            .basePath(OBJECTS_URL)
+        .when()
+            .get("/download/{repository}/{name}")
+        .then()
+            .statusCode(Status.OK.getStatusCode())
+            .header("Cache-Control", notNullValue())
+            .header("Last-Modified", notNullValue())
+            .extract().header("ETag");
+
+        given()
+            .auth().preemptive().oauth2(testUserAccessToken)
+            .header("If-None-Match", etag)
+            .pathParam("repository", this.containerName)
+            .pathParam("name", this.textObjectName)
+            .basePath(OBJECTS_URL)
+        .when()
+            .get("/download/{repository}/{name}")
+        .then()
+            .statusCode(Status.NOT_MODIFIED.getStatusCode());
+
+        given()
+            .auth().preemptive().oauth2(testUserAccessToken)
+            .header("If-None-Match", etag)
+            .pathParam("repository", this.containerName)
+            .pathParam("name", this.textObjectName)
+            .basePath(OBJECTS_URL)
+        .when()
+            .get("/{repository}/{name}")
+        .then()
+            .statusCode(Status.NOT_MODIFIED.getStatusCode());
+    }
+
     @Test
     @Order(5)
     void testThatObjectCanBeDeleted() {
@@ -169,6 +245,23 @@ public class ObjectsAzureImplTest {
         .then()
             .statusCode(Status.NO_CONTENT.getStatusCode());
     }
+
+    @Test
+    @Order(7)
+    void testThatObjectsCanBeDeletedInBatch() {
+        given()
+            .auth().preemptive().oauth2(testUserAccessToken)
+            .basePath(OBJECTS_URL)
+            .pathParam("repository", this.containerName)
+            .body(new BatchDeleteModel(Arrays.asList(this.binaryObjectName, "does-not-exist.txt")))
+            .contentType(ContentType.JSON)
+        .when().post("/delete/{repository}")
+        .then()
+            .statusCode(Status.OK.getStatusCode())
+            .body("[0].statusCode", equalTo(Status.NO_CONTENT.getStatusCode()))
+            .body("[1].statusCode", equalTo(Status.NOT_FOUND.getStatusCode()));
+    }
+
     @Test
     void testThatUnauthorizedUsersCannotAccessResources() throws IOException {
 
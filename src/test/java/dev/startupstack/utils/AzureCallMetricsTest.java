@@ -0,0 +1,73 @@
+package dev.startupstack.utils;
+
+import static dev.startupstack.FakeBlobContainer.failure;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import javax.ws.rs.core.Response.Status;
+
+import com.azure.storage.blob.models.BlobStorageException;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import io.smallrye.metrics.MetricsRegistryImpl;
+import reactor.core.publisher.Mono;
+
+/**
+ * AzureCallMetricsTest
+ */
+public class AzureCallMetricsTest {
+
+    MetricRegistry registry = new MetricsRegistryImpl();
+
+    AzureCallMetrics azureCalls = new AzureCallMetrics(registry);
+
+    long calls(String operation, String outcome) {
+        Timer timer = registry.getTimers().get(new MetricID("azure_storage_calls", new Tag("operation", operation),
+                new Tag("outcome", outcome)));
+        return timer == null ? 0 : timer.getCount();
+    }
+
+    @Test
+    void testThatCallsAreTaggedWithTheirOutcome() {
+        assertEquals("result", azureCalls.time(AzureCallMetrics.GET_PROPERTIES, () -> "result"));
+        assertThrows(BlobStorageException.class, () -> azureCalls.time(AzureCallMetrics.GET_PROPERTIES, () -> {
+            throw failure(Status.NOT_FOUND);
+        }));
+        assertThrows(BlobStorageException.class, () -> azureCalls.time(AzureCallMetrics.GET_PROPERTIES, () -> {
+            throw failure(Status.NOT_MODIFIED);
+        }));
+        assertThrows(BlobStorageException.class, () -> azureCalls.time(AzureCallMetrics.GET_PROPERTIES, () -> {
+            throw failure(Status.SERVICE_UNAVAILABLE);
+        }));
+        assertThrows(IOException.class, () -> azureCalls.time(AzureCallMetrics.GET_PROPERTIES, () -> {
+            throw new IOException("connection reset");
+        }));
+
+        assertEquals(1, calls(AzureCallMetrics.GET_PROPERTIES, "success"));
+        assertEquals(1, calls(AzureCallMetrics.GET_PROPERTIES, "client_error"));
+        assertEquals(1, calls(AzureCallMetrics.GET_PROPERTIES, "not_modified"));
+        assertEquals(1, calls(AzureCallMetrics.GET_PROPERTIES, "server_error"));
+        assertEquals(1, calls(AzureCallMetrics.GET_PROPERTIES, "error"));
+    }
+
+    @Test
+    void testThatAsyncCallsAreTimedWhenSubscribed() {
+        Mono<String> call = azureCalls.timeAsync(AzureCallMetrics.DOWNLOAD, Mono.just("result"));
+        assertEquals(0, calls(AzureCallMetrics.DOWNLOAD, "success"));
+
+        call.block();
+        assertThrows(BlobStorageException.class, () -> azureCalls
+                .timeAsync(AzureCallMetrics.DOWNLOAD, Mono.error(failure(Status.PRECONDITION_FAILED))).block());
+
+        assertEquals(1, calls(AzureCallMetrics.DOWNLOAD, "success"));
+        assertEquals(1, calls(AzureCallMetrics.DOWNLOAD, "client_error"));
+    }
+}
@@ -0,0 +1,210 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.eclipse.microprofile.metrics.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.mockito.ArgumentCaptor;
+
+import com.azure.storage.blob.specialized.BlockBlobClient;
+
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import dev.startupstack.storageservice.utils.azure.BlockBlobUploader;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * BlockBlobUploaderTest
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class BlockBlobUploaderTest {
+
+    static final int BLOCK_SIZE = 1024;
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    MetricRegistry registry = new MetricsRegistryImpl();
+
+    AzureCallMetrics azureCalls = new AzureCallMetrics(registry);
+
+    Map<String, byte[]> staged = new ConcurrentHashMap<>();
+
+    AtomicInteger staging = new AtomicInteger();
+
+    AtomicInteger maxStaging = new AtomicInteger();
+
+    @AfterAll
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Mocks a client that keeps the staged blocks and counts how many are
+     * staged at the same time.
+     */
+    BlockBlobClient client() {
+        staged.clear();
+        BlockBlobClient client = mock(BlockBlobClient.class);
+        doAnswer(invocation -> {
+            int current = staging.incrementAndGet();
+            maxStaging.accumulateAndGet(current, Math::max);
+            try {
+                InputStream data = invocation.getArgument(1);
+                staged.put(invocation.getArgument(0), data.readAllBytes());
+                TimeUnit.MILLISECONDS.sleep(20);
+            } finally {
+                staging.decrementAndGet();
+            }
+            return null;
+        }).when(client).stageBlock(anyString(), any(InputStream.class), anyLong());
+        return client;
+    }
+
+    byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    @SuppressWarnings("unchecked")
+    byte[] committed(BlockBlobClient client) throws IOException {
+        ArgumentCaptor<List<String>> blockIDs = ArgumentCaptor.forClass(List.class);
+        verify(client).commitBlockListWithResponse(blockIDs.capture(), any(), any(), any(), any(), any(), any());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (String blockID : blockIDs.getValue()) {
+            output.write(staged.get(blockID));
+        }
+        return output.toByteArray();
+    }
+
+    long calls(String operation) {
+        Timer timer = registry.getTimers().get(new MetricID("azure_storage_calls", new Tag("operation", operation),
+                new Tag("outcome", "success")));
+        return timer == null ? 0 : timer.getCount();
+    }
+
+    @Test
+    void testThatSmallStreamsAreUploadedInOneShot() throws Exception {
+        BlockBlobClient client = client();
+        byte[] data = data(BLOCK_SIZE - 1);
+
+        long size = new BlockBlobUploader(client, azureCalls, BLOCK_SIZE, 4, BLOCK_SIZE, executor)
+                .upload(new ByteArrayInputStream(data), null, Collections.emptyMap());
+
+        assertEquals(data.length, size);
+        verify(client).uploadWithResponse(any(InputStream.class), eq((long) data.length), any(), any(), any(), any(),
+                any(), any(), any());
+        verify(client, never()).stageBlock(anyString(), any(InputStream.class), anyLong());
+    }
+
+    @Test
+    void testThatStreamsAboveTheSingleShotThresholdAreStaged() throws Exception {
+        BlockBlobClient client = client();
+        byte[] data = data(BLOCK_SIZE - 1);
+
+        new BlockBlobUploader(client, azureCalls, BLOCK_SIZE, 4, BLOCK_SIZE / 2, executor)
+                .upload(new ByteArrayInputStream(data), null, Collections.emptyMap());
+
+        verify(client, never()).uploadWithResponse(any(InputStream.class), anyLong(), any(), any(), any(), any(),
+                any(), any(), any());
+        assertArrayEquals(data, committed(client));
+    }
+
+    @Test
+    void testThatBlocksAreStagedInParallelAndCommittedInOrder() throws Exception {
+        BlockBlobClient client = client();
+        byte[] data = data(20 * BLOCK_SIZE + 17);
+        maxStaging.set(0);
+
+        long size = new BlockBlobUploader(client, azureCalls, BLOCK_SIZE, 4, BLOCK_SIZE, executor)
+                .upload(new ByteArrayInputStream(data), null, Collections.emptyMap());
+
+        assertEquals(data.length, size);
+        assertTrue(maxStaging.get() > 1, "Blocks were staged one after the other");
+        assertTrue(maxStaging.get() <= 4, "More blocks than maxConcurrency were staged at once");
+        assertArrayEquals(data, committed(client));
+    }
+
+    @Test
+    void testThatBuffersAreRecycled() throws Exception {
+        BlockBlobClient client = client();
+        byte[] data = data(50 * BLOCK_SIZE);
+        Set<byte[]> buffers = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        // Records every buffer the uploader reads into
+        InputStream input = new ByteArrayInputStream(data) {
+            @Override
+            public synchronized int read(byte[] buffer, int offset, int length) {
+                buffers.add(buffer);
+                return super.read(buffer, offset, length);
+            }
+        };
+        new BlockBlobUploader(client, azureCalls, BLOCK_SIZE, 2, BLOCK_SIZE, executor).upload(input, null,
+                Collections.emptyMap());
+
+        assertTrue(buffers.size() <= 3, "Allocated " + buffers.size() + " buffers for 2 concurrent blocks");
+        assertArrayEquals(data, committed(client));
+    }
+
+    @Test
+    void testThatBlockIDsAreTaggedPerUpload() throws Exception {
+        BlockBlobClient client = client();
+        BlockBlobUploader uploader = new BlockBlobUploader(client, azureCalls, BLOCK_SIZE, 1, 0, null);
+
+        uploader.upload(new ByteArrayInputStream(data(BLOCK_SIZE)), null, Collections.emptyMap());
+        uploader.upload(new ByteArrayInputStream(data(BLOCK_SIZE)), null, Collections.emptyMap());
+
+        assertEquals(2, staged.size(), "Both uploads staged their first block under the same ID");
+        for (String blockID : staged.keySet()) {
+            assertEquals(BlockBlobUploader.BLOCK_ID_LENGTH, Base64.getDecoder().decode(blockID).length);
+        }
+    }
+
+    @Test
+    void testThatEveryAzureCallIsTimed() throws Exception {
+        BlockBlobClient client = client();
+        long staged = calls(AzureCallMetrics.STAGE_BLOCK);
+        long committed = calls(AzureCallMetrics.COMMIT_BLOCK_LIST);
+        long uploaded = calls(AzureCallMetrics.UPLOAD);
+
+        BlockBlobUploader uploader = new BlockBlobUploader(client, azureCalls, BLOCK_SIZE, 2, BLOCK_SIZE, executor);
+        uploader.upload(new ByteArrayInputStream(data(5 * BLOCK_SIZE + 1)), null, Collections.emptyMap());
+        uploader.upload(new ByteArrayInputStream(data(BLOCK_SIZE - 1)), null, Collections.emptyMap());
+
+        assertEquals(staged + 6, calls(AzureCallMetrics.STAGE_BLOCK));
+        assertEquals(committed + 1, calls(AzureCallMetrics.COMMIT_BLOCK_LIST));
+        assertEquals(uploaded + 1, calls(AzureCallMetrics.UPLOAD));
+    }
+}
@@ -0,0 +1,45 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.ChecksumInputStream;
+
+/**
+ * ChecksumInputStreamTest
+ */
+public class ChecksumInputStreamTest {
+
+    @Test
+    void testThatChecksumsMatchTheStreamedData() throws Exception {
+        byte[] data = new byte[300_000];
+        new Random().nextBytes(data);
+
+        ChecksumInputStream input = new ChecksumInputStream(new ByteArrayInputStream(data));
+        input.read();
+        input.skip(1000);
+        byte[] buffer = new byte[7919];
+        while (input.read(buffer, 0, buffer.length) >= 0) {
+        }
+
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(data);
+        assertEquals(DigestUtils.md5Hex(data), input.getMd5());
+        assertEquals(String.format("%08x", crc32c.getValue()), input.getCrc32c());
+    }
+
+    @Test
+    void testThatChecksumsOfAnEmptyStreamAreKnownValues() throws Exception {
+        ChecksumInputStream input = new ChecksumInputStream(new ByteArrayInputStream(new byte[0]));
+        assertEquals(-1, input.read());
+
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", input.getMd5());
+        assertEquals("00000000", input.getCrc32c());
+    }
+}
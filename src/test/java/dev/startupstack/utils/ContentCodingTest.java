@@ -0,0 +1,156 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.ContentCoding;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.GzipCompressingInputStream;
+import dev.startupstack.utils.DownloadResponseBuilderTest.BufferedAsyncOutputStream;
+
+/**
+ * ContentCodingTest
+ */
+public class ContentCodingTest {
+
+    byte[] data = new byte[500_000];
+
+    byte[] stored;
+
+    {
+        Random random = new Random();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(4));
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GzipCompressingInputStream input = new GzipCompressingInputStream(new ByteArrayInputStream(data),
+                Deflater.DEFAULT_COMPRESSION)) {
+            input.transferTo(compressed);
+        } catch (IOException exc) {
+            throw new UncheckedIOException(exc);
+        }
+        stored = compressed.toByteArray();
+    }
+
+    /**
+     * Writes the stored bytes in small buffers, like a download does, each one
+     * once the previous write completed
+     */
+    AsyncRangeWriter source(AtomicLong written) {
+        return (offset, count, output) -> write(offset, offset + count, output, written);
+    }
+
+    CompletionStage<Void> write(long position, long end, AsyncOutputStream output, AtomicLong written) {
+        if (position >= end) {
+            return CompletableFuture.completedFuture(null);
+        }
+        int length = (int) Math.min(1000, end - position);
+        written.addAndGet(length);
+        return output.asyncWrite(stored, (int) position, length)
+                .thenCompose(ignored -> write(position + length, end, output, written));
+    }
+
+    byte[] decode(AsyncRangeWriter source, long offset, long count) {
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+        ContentCoding.decodeGzip(source, stored.length).write(offset, count, output).toCompletableFuture().join();
+        return output.bytes.toByteArray();
+    }
+
+    HttpHeaders acceptEncoding(String value) {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        if (value != null) {
+            headers.add(ContentCoding.HEADER_ACCEPT_ENCODING, value);
+        }
+        return new ResteasyHttpHeaders(headers);
+    }
+
+    @Test
+    void testThatCompressedRangesAreDecoded() throws Exception {
+        assertArrayEquals(data, new GZIPInputStream(new ByteArrayInputStream(stored)).readAllBytes());
+
+        assertArrayEquals(Arrays.copyOfRange(data, 100_000, 101_000),
+                decode(source(new AtomicLong()), 100_000, 1000));
+        assertArrayEquals(data, decode(source(new AtomicLong()), 0, data.length));
+    }
+
+    @Test
+    void testThatReadingStopsOnceTheRangeIsWritten() {
+        AtomicLong written = new AtomicLong();
+
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 10), decode(source(written), 0, 10));
+        assertTrue(written.get() < stored.length, "The whole object was read for a range at its start");
+
+        AsyncRangeWriter wrapping = (offset, count, target) -> source(written).write(offset, count, target)
+                .whenComplete((ignored, exc) -> {
+                    if (exc != null) {
+                        throw new CompletionException(new IOException("Download failed", exc));
+                    }
+                });
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 20), decode(wrapping, 10, 10));
+    }
+
+    @Test
+    void testThatTruncatedObjectsFail() {
+        AsyncRangeWriter truncated = (offset, count, output) -> output.asyncWrite(stored, 0, stored.length / 2);
+
+        CompletionException exc = assertThrows(CompletionException.class, () -> decode(truncated, 0, data.length));
+        assertTrue(exc.getCause() instanceof IOException);
+    }
+
+    @Test
+    void testThatCorruptObjectsFail() {
+        byte[] corrupt = stored.clone();
+        Arrays.fill(corrupt, 10, 200, (byte) 0xff);
+        AsyncRangeWriter source = (offset, count, output) -> output.asyncWrite(corrupt, 0, corrupt.length);
+
+        CompletionException exc = assertThrows(CompletionException.class, () -> decode(source, 0, data.length));
+        assertTrue(exc.getCause() instanceof IOException);
+    }
+
+    @Test
+    void testThatAcceptEncodingIsEvaluated() {
+        assertFalse(ContentCoding.acceptsGzip(acceptEncoding(null)));
+        assertTrue(ContentCoding.acceptsGzip(acceptEncoding("gzip, deflate, br")));
+        assertTrue(ContentCoding.acceptsGzip(acceptEncoding("x-gzip")));
+        assertTrue(ContentCoding.acceptsGzip(acceptEncoding("br;q=1.0, gzip;q=0.5")));
+        assertFalse(ContentCoding.acceptsGzip(acceptEncoding("gzip;q=0")));
+        assertFalse(ContentCoding.acceptsGzip(acceptEncoding("identity")));
+        assertTrue(ContentCoding.acceptsGzip(acceptEncoding("*")));
+        assertFalse(ContentCoding.acceptsGzip(acceptEncoding("*;q=0")));
+        assertFalse(ContentCoding.acceptsGzip(acceptEncoding("gzip;q=0, *")), "The wildcard overrode gzip");
+        assertTrue(ContentCoding.acceptsGzip(acceptEncoding("gzip, *;q=0")));
+        assertFalse(ContentCoding.acceptsGzip(acceptEncoding("gzip;q=invalid")));
+    }
+
+    @Test
+    void testThatTheIdentityETagDiffersFromTheStoredOne() {
+        assertEquals("\"0x8D7-identity\"", ContentCoding.identityETag("\"0x8D7\""));
+        assertEquals("0x8D7-identity", ContentCoding.identityETag("0x8D7"));
+        assertNull(ContentCoding.identityETag(null));
+    }
+}
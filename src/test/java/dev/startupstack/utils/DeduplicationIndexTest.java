@@ -0,0 +1,158 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobStorageException;
+
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.FakeBlobContainer;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import dev.startupstack.storageservice.utils.azure.DeduplicationIndex;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * DeduplicationIndexTest
+ */
+public class DeduplicationIndexTest {
+
+    static final String HASH = "a1";
+    static final String OTHER_HASH = "b2";
+
+    FakeBlobContainer container = new FakeBlobContainer();
+
+    DeduplicationIndex index = new DeduplicationIndex(container.getClient(),
+            new AzureCallMetrics(new MetricsRegistryImpl()));
+
+    long references(String hash) {
+        return Long.parseLong(container.getMetadata(DeduplicationIndex.INDEX_PREFIX + hash).get("references"));
+    }
+
+    String storeContent(String hash, String contentID) {
+        container.put(DeduplicationIndex.contentBlobName(contentID), Map.of());
+        return index.register(hash, contentID);
+    }
+
+    @Test
+    void testThatReferencesAreCounted() {
+        assertNull(index.addReference(HASH), "Unknown content was referenced");
+        assertEquals("content", storeContent(HASH, "content"));
+        assertEquals(1, references(HASH));
+
+        assertEquals("content", index.addReference(HASH));
+        assertEquals(2, references(HASH));
+
+        index.removeReference(HASH);
+        assertEquals(1, references(HASH));
+        assertTrue(container.exists(DeduplicationIndex.contentBlobName("content")));
+
+        index.removeReference(HASH);
+        assertFalse(container.exists(DeduplicationIndex.INDEX_PREFIX + HASH));
+        assertFalse(container.exists(DeduplicationIndex.contentBlobName("content")), "Unreferenced content was kept");
+    }
+
+    @Test
+    void testThatConcurrentlyRegisteredContentIsReferencedInstead() {
+        storeContent(HASH, "first");
+
+        assertEquals("first", storeContent(HASH, "second"));
+        assertEquals(2, references(HASH));
+        assertFalse(container.exists(DeduplicationIndex.contentBlobName("second")), "Duplicate content was kept");
+    }
+
+    @Test
+    void testThatLostUpdatesAreRetried() {
+        storeContent(HASH, "content");
+        String indexName = DeduplicationIndex.INDEX_PREFIX + HASH;
+        AtomicInteger interfered = new AtomicInteger();
+        container.setConcurrently(name -> {
+            if (name.equals(indexName) && interfered.getAndIncrement() == 0) {
+                Map<String, String> metadata = new HashMap<>(container.getMetadata(name));
+                metadata.put("references", String.valueOf(Long.parseLong(metadata.get("references")) + 1));
+                container.put(name, metadata);
+            }
+        });
+
+        index.addReference(HASH);
+
+        assertEquals(3, references(HASH));
+    }
+
+    @Test
+    void testThatTooManyLostRacesAreAConflict() {
+        storeContent(HASH, "content");
+        container.setConcurrently(name -> container.put(name, container.getMetadata(name)));
+
+        WebApplicationException exc = assertThrows(WebApplicationException.class, () -> index.addReference(HASH));
+        assertEquals(Status.CONFLICT.getStatusCode(), exc.getResponse().getStatus());
+    }
+
+    @Test
+    void testThatOverwritingAnObjectHandsOverItsReference() {
+        BlobHttpHeaders headers = new BlobHttpHeaders().setContentType("text/plain");
+        index.writeReference("object", HASH, storeContent(HASH, "first"), 10, headers, Map.of("tenant", "t"));
+        assertEquals(1, references(HASH));
+
+        index.writeReference("object", OTHER_HASH, storeContent(OTHER_HASH, "second"), 20, headers, Map.of());
+
+        Map<String, String> reference = container.getMetadata("object");
+        assertEquals("second", reference.get(DeduplicationIndex.METADATA_CONTENT_ID));
+        assertEquals(OTHER_HASH, reference.get(DeduplicationIndex.METADATA_CONTENT_HASH));
+        assertEquals("20", reference.get(DeduplicationIndex.METADATA_CONTENT_SIZE));
+        assertEquals(1, references(OTHER_HASH));
+        assertFalse(container.exists(DeduplicationIndex.INDEX_PREFIX + HASH));
+        assertFalse(container.exists(DeduplicationIndex.contentBlobName("first")), "Replaced content was kept");
+    }
+
+    @Test
+    void testThatDeletingAnObjectDropsItsReference() {
+        index.writeReference("object", HASH, storeContent(HASH, "content"), 10, null, Map.of());
+        index.writeReference("copy", HASH, index.addReference(HASH), 10, null, Map.of());
+
+        index.deleteReference("object");
+        assertFalse(container.exists("object"));
+        assertEquals(1, references(HASH));
+
+        index.deleteReference("copy");
+        assertFalse(container.exists(DeduplicationIndex.contentBlobName("content")));
+
+        BlobStorageException exc = assertThrows(BlobStorageException.class, () -> index.deleteReference("copy"));
+        assertEquals(Status.NOT_FOUND.getStatusCode(), exc.getStatusCode());
+    }
+
+    @Test
+    void testThatReferencesAreReadFromTheirContent() {
+        BlobProperties reference = mock(BlobProperties.class);
+        when(reference.getETag()).thenReturn("\"1\"");
+        when(reference.getBlobSize()).thenReturn(0L);
+        when(reference.getMetadata()).thenReturn(Map.of(DeduplicationIndex.METADATA_CONTENT_ID, "content",
+                DeduplicationIndex.METADATA_CONTENT_SIZE, "42"));
+        BlobProperties object = mock(BlobProperties.class);
+        when(object.getETag()).thenReturn("\"2\"");
+        when(object.getBlobSize()).thenReturn(7L);
+        when(object.getMetadata()).thenReturn(Map.of());
+
+        assertEquals(DeduplicationIndex.contentBlobName("content"), DeduplicationIndex.blobName("object", reference));
+        assertEquals(42, DeduplicationIndex.blobSize(reference));
+        assertNull(DeduplicationIndex.readConditions(reference).getIfMatch());
+
+        assertEquals("object", DeduplicationIndex.blobName("object", object));
+        assertEquals(7, DeduplicationIndex.blobSize(object));
+        assertEquals("\"2\"", DeduplicationIndex.readConditions(object).getIfMatch());
+    }
+}
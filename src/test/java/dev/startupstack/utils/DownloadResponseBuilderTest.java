@@ -0,0 +1,189 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.specimpl.ResteasyHttpHeaders;
+import org.jboss.resteasy.spi.AsyncOutputStream;
+import org.jboss.resteasy.spi.AsyncStreamingOutput;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+
+/**
+ * DownloadResponseBuilderTest
+ */
+public class DownloadResponseBuilderTest {
+
+    static final String ETAG = "\"0x8D7\"";
+
+    byte[] data = new byte[10_000];
+
+    DownloadResponseBuilderTest() {
+        new Random(42).nextBytes(data);
+    }
+
+    /**
+     * Collects everything written to it, completing every write right away
+     */
+    static class BufferedAsyncOutputStream extends AsyncOutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        @Override
+        public void write(int b) {
+            bytes.write(b);
+        }
+
+        @Override
+        public CompletionStage<Void> asyncFlush() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletionStage<Void> asyncWrite(byte[] buffer, int offset, int length) {
+            bytes.write(buffer, offset, length);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Writes ranges of the test data and counts how often it was closed
+     */
+    class CountingWriter implements AsyncRangeWriter {
+        final AtomicInteger closed = new AtomicInteger();
+
+        @Override
+        public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+            return output.asyncWrite(data, (int) offset, (int) count);
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    HttpHeaders headers(String... namesAndValues) {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.add(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return new ResteasyHttpHeaders(headers);
+    }
+
+    Response build(HttpHeaders headers, AsyncRangeWriter writer) {
+        return DownloadResponseBuilder.buildAsync(headers, "object", data.length, "application/octet-stream", ETAG,
+                null, null, writer);
+    }
+
+    byte[] body(Response response) {
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+        ((AsyncStreamingOutput) response.getEntity()).asyncWrite(output).toCompletableFuture().join();
+        return output.bytes.toByteArray();
+    }
+
+    @Test
+    void testThatTheFullObjectIsStreamed() {
+        CountingWriter writer = new CountingWriter();
+        Response response = build(headers(), writer);
+
+        assertEquals(200, response.getStatus());
+        assertEquals(0, writer.closed.get(), "The writer was closed before the body was written");
+        assertArrayEquals(data, body(response));
+        assertEquals(1, writer.closed.get());
+    }
+
+    @Test
+    void testThatASingleRangeIsStreamed() {
+        CountingWriter writer = new CountingWriter();
+        Response response = build(headers("Range", "bytes=100-199"), writer);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 100-199/10000", response.getHeaderString("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 200), body(response));
+        assertEquals(1, writer.closed.get());
+    }
+
+    @Test
+    void testThatSeveralRangesAreStreamedAsMultipart() {
+        CountingWriter writer = new CountingWriter();
+        Response response = build(headers("Range", "bytes=0-9,9990-"), writer);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getHeaderString("Content-Type").startsWith("multipart/byteranges"));
+        byte[] body = body(response);
+        assertEquals(Long.parseLong(response.getHeaderString("Content-Length")), body.length);
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        assertTrue(text.contains("Content-Range: bytes 0-9/10000\r\n\r\n"
+                + new String(data, 0, 10, StandardCharsets.ISO_8859_1) + "\r\n"));
+        assertTrue(text.contains("Content-Range: bytes 9990-9999/10000\r\n\r\n"
+                + new String(data, 9990, 10, StandardCharsets.ISO_8859_1) + "\r\n"));
+        assertEquals(1, writer.closed.get(), "The writer was closed once per range");
+    }
+
+    @Test
+    void testThatResponsesWithoutABodyCloseTheWriter() {
+        CountingWriter notModified = new CountingWriter();
+        assertEquals(304, build(headers("If-None-Match", ETAG), notModified).getStatus());
+        assertEquals(1, notModified.closed.get());
+
+        CountingWriter unsatisfiable = new CountingWriter();
+        Response response = build(headers("Range", "bytes=20000-"), unsatisfiable);
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */10000", response.getHeaderString("Content-Range"));
+        assertNull(response.getEntity());
+        assertEquals(1, unsatisfiable.closed.get());
+    }
+
+    @Test
+    void testThatAFailedWriteClosesTheWriter() {
+        CountingWriter writer = new CountingWriter() {
+            @Override
+            public CompletionStage<Void> write(long offset, long count, AsyncOutputStream output) {
+                return CompletableFuture.failedFuture(new IOException("connection reset"));
+            }
+        };
+        Response response = build(headers(), writer);
+
+        CompletionException exc = assertThrows(CompletionException.class, () -> body(response));
+        assertTrue(exc.getCause() instanceof IOException);
+        assertEquals(1, writer.closed.get());
+    }
+
+    @Test
+    void testThatLazyWritersAreOnlyCreatedForABody() {
+        AtomicInteger created = new AtomicInteger();
+        CountingWriter writer = new CountingWriter();
+        AsyncRangeWriter lazy = DownloadResponseBuilder.lazyAsync(() -> {
+            created.incrementAndGet();
+            return writer;
+        });
+
+        // A response to a HEAD request is built, but its body never written
+        Response response = build(headers("Range", "bytes=0-9,100-109"), lazy);
+        assertEquals(0, created.get(), "The writer was created before the body was written");
+
+        body(response);
+        assertEquals(1, created.get(), "The writer was created once per range");
+        assertEquals(1, writer.closed.get());
+    }
+}
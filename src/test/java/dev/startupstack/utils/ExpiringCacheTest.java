@@ -0,0 +1,76 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.cache.ExpiringCache;
+
+/**
+ * ExpiringCacheTest
+ */
+public class ExpiringCacheTest {
+
+    @Test
+    void testThatTheLeastRecentlyUsedEntryIsEvicted() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(2, 60000);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("3", cache.get("c"));
+    }
+
+    @Test
+    void testThatExpiredEntriesAreDropped() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(2, 1);
+        cache.put("a", "1");
+        Thread.sleep(5);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testThatLoadsRacingAnInvalidationAreNotCached() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, 60000);
+        long generation = cache.generation();
+        cache.invalidate("a");
+
+        assertFalse(cache.put("a", "stale", generation), "A value loaded before the invalidation was cached");
+        assertNull(cache.get("a"));
+        assertTrue(cache.put("b", "2", generation), "Other keys are not affected");
+        assertTrue(cache.put("a", "1", cache.generation()));
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    void testThatInvalidatingMatchingKeysInvalidatesLoadsInFlight() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10, 60000);
+        cache.put("repository/a", "1");
+        long generation = cache.generation();
+        cache.invalidateIf(key -> key.startsWith("repository/"));
+
+        assertNull(cache.get("repository/a"));
+        assertFalse(cache.put("repository/b", "stale", generation), "A load of an uncached key was not invalidated");
+        assertTrue(cache.put("repository/b", "2", cache.generation()));
+    }
+
+    @Test
+    void testThatForgottenInvalidationsStillInvalidateLoads() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(2, 60000);
+        long generation = cache.generation();
+        cache.invalidate("a");
+        cache.invalidate("b");
+        cache.invalidate("c");
+
+        assertFalse(cache.put("a", "stale", generation), "A forgotten invalidation was ignored");
+        assertFalse(cache.put("c", "stale", generation));
+    }
+}
@@ -0,0 +1,180 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+
+import javax.ws.rs.BadRequestException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.startupstack.storageservice.utils.filesystem.FilesystemStorage;
+import dev.startupstack.storageservice.utils.filesystem.FilesystemStorage.StoredObject;
+import dev.startupstack.utils.DownloadResponseBuilderTest.BufferedAsyncOutputStream;
+
+/**
+ * FilesystemStorageTest
+ */
+public class FilesystemStorageTest {
+
+    static byte[] data(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    static FilesystemStorage storage(Path root) throws IOException {
+        FilesystemStorage storage = new FilesystemStorage(root.toString());
+        storage.createRepository("repo", Collections.singletonMap("tenant_id", "tenant"));
+        return storage;
+    }
+
+    static void write(FilesystemStorage storage, String name, byte[] data) throws IOException {
+        storage.writeObject("repo", name, new ByteArrayInputStream(data), Map.of("content_type", "text/plain"));
+    }
+
+    static byte[] read(StoredObject object, long offset, long count) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        object.transfer(offset, count, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void testThatMetadataRoundTripsThroughTheTrailer(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+        byte[] data = data(100_000, 42);
+
+        assertEquals(data.length, storage.writeObject("repo", "object", new ByteArrayInputStream(data),
+                Map.of("content_type", "text/plain", "tenant_id", "tenant")));
+
+        Map<String, String> metadata = storage.getObjectMetadata("repo", "object");
+        assertEquals("text/plain", metadata.get(FilesystemStorage.METADATA_CONTENT_TYPE));
+        assertEquals("tenant", metadata.get("tenant_id"));
+        assertEquals(DigestUtils.md5Hex(data), metadata.get(FilesystemStorage.METADATA_CONTENT_MD5));
+        assertEquals(String.valueOf(data.length), metadata.get(FilesystemStorage.METADATA_SIZE));
+
+        byte[] file = Files.readAllBytes(storage.getObjectPath("repo", "object"));
+        assertArrayEquals(data, Arrays.copyOf(file, data.length), "The data does not start at offset 0");
+        try (StoredObject object = storage.openObject("repo", "object")) {
+            assertEquals(data.length, object.getSize());
+            assertArrayEquals(data, read(object, 0, data.length));
+            assertArrayEquals(Arrays.copyOfRange(data, 70_000, 71_000), read(object, 70_000, 1_000));
+            assertThrows(IOException.class, () -> read(object, data.length - 10, 11), "The trailer was sent");
+        }
+    }
+
+    @Test
+    void testThatEmptyObjectsCanBeStored(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+        write(storage, "empty", new byte[0]);
+
+        try (StoredObject object = storage.openObject("repo", "empty")) {
+            assertEquals(0, object.getSize());
+            assertEquals(DigestUtils.md5Hex(new byte[0]), object.getMetadata().get("content_md5"));
+        }
+    }
+
+    @Test
+    void testThatFilesWithoutTrailerAreRejected(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+        Files.write(storage.getObjectPath("repo", "short"), new byte[] { 1, 2, 3 });
+        Files.write(storage.getObjectPath("repo", "plain"), data(1_000, 42));
+
+        assertThrows(IOException.class, () -> storage.getObjectMetadata("repo", "short"));
+        assertThrows(IOException.class, () -> storage.getObjectMetadata("repo", "plain"));
+    }
+
+    @Test
+    void testThatAnOpenObjectKeepsItsVersion(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+        byte[] first = data(10_000, 1);
+        byte[] second = data(20_000, 2);
+        write(storage, "object", first);
+
+        try (StoredObject object = storage.openObject("repo", "object")) {
+            write(storage, "object", second);
+
+            assertEquals(first.length, object.getSize());
+            assertEquals(DigestUtils.md5Hex(first), object.getMetadata().get("content_md5"));
+            assertArrayEquals(first, read(object, 0, first.length));
+        }
+        try (StoredObject object = storage.openObject("repo", "object")) {
+            assertArrayEquals(second, read(object, 0, second.length));
+        }
+    }
+
+    @Test
+    void testThatFilesAreTransferredInChunksWithoutBlocking(@TempDir Path root) throws Exception {
+        byte[] data = data(200_000, 42);
+        Path file = Files.write(root.resolve("file"), data);
+
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(file, StandardOpenOption.READ)) {
+            FilesystemStorage.transferAsync(channel, 1_000, 150_000, output).toCompletableFuture().join();
+            assertArrayEquals(Arrays.copyOfRange(data, 1_000, 151_000), output.bytes.toByteArray());
+
+            CompletionException exc = assertThrows(CompletionException.class, () -> FilesystemStorage
+                    .transferAsync(channel, 150_000, 60_000, output).toCompletableFuture().join());
+            assertTrue(exc.getCause() instanceof IOException, "Reading past the end did not fail");
+        }
+    }
+
+    @Test
+    void testThatNamesCannotEscapeTheRoot(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+
+        for (String name : new String[] { "", ".", "..", ".hidden", "a/b", "../repo", "a\\b", "a\0b" }) {
+            assertThrows(BadRequestException.class, () -> storage.getObjectPath("repo", name), name);
+            assertThrows(BadRequestException.class, () -> storage.getRepositoryPath(name), name);
+        }
+        assertThrows(BadRequestException.class, () -> storage.getObjectPath("repo", null));
+        assertEquals(root.resolve("repo").resolve("objects").resolve("a b%.txt"),
+                storage.getObjectPath("repo", "a b%.txt"));
+    }
+
+    @Test
+    void testThatObjectNamesAreListedInOrder(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+        for (String name : new String[] { "d", "b", "a2", "c", "a1", "e" }) {
+            write(storage, name, new byte[] { 1 });
+        }
+        Files.write(storage.getRepositoryPath("repo").resolve("objects").resolve(".upload-1.tmp"), new byte[1]);
+
+        assertEquals(List.of("a1", "a2", "b", "c", "d", "e"), storage.listObjectNames("repo", null, null, 10));
+        assertEquals(List.of("a1", "a2", "b"), storage.listObjectNames("repo", null, null, 3));
+        assertEquals(List.of("c", "d"), storage.listObjectNames("repo", null, "b", 2));
+        assertEquals(List.of("a1", "a2"), storage.listObjectNames("repo", "a", null, 10));
+        assertEquals(List.of("a2"), storage.listObjectNames("repo", "a", "a1", 10));
+        assertTrue(storage.listObjectNames("repo", null, "e", 10).isEmpty());
+    }
+
+    @Test
+    void testThatRepositoriesAreCreatedOnce(@TempDir Path root) throws IOException {
+        FilesystemStorage storage = storage(root);
+
+        assertTrue(storage.repositoryExists("repo"));
+        assertFalse(storage.createRepository("repo", Collections.emptyMap()));
+        assertEquals(Map.of("tenant_id", "tenant"), storage.getRepositoryMetadata("repo"));
+
+        storage.deleteRepository("repo");
+        assertFalse(storage.repositoryExists("repo"));
+    }
+}
@@ -0,0 +1,62 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.HttpRange;
+import dev.startupstack.storageservice.utils.HttpRange.RangeNotSatisfiableException;
+
+/**
+ * HttpRangeTest
+ */
+public class HttpRangeTest {
+
+    @Test
+    void testThatSingleRangeIsParsed() throws Exception {
+        List<HttpRange> ranges = HttpRange.parse("bytes=0-499", 1000);
+
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.get(0).getOffset());
+        assertEquals(500, ranges.get(0).getLength());
+        assertEquals("bytes 0-499/1000", ranges.get(0).toContentRange(1000));
+    }
+
+    @Test
+    void testThatOpenEndedAndSuffixRangesAreParsed() throws Exception {
+        List<HttpRange> openEnded = HttpRange.parse("bytes=900-", 1000);
+        assertEquals(900, openEnded.get(0).getOffset());
+        assertEquals(100, openEnded.get(0).getLength());
+
+        List<HttpRange> suffix = HttpRange.parse("bytes=-2000", 1000);
+        assertEquals(0, suffix.get(0).getOffset());
+        assertEquals(1000, suffix.get(0).getLength());
+    }
+
+    @Test
+    void testThatOverlappingRangesAreMerged() throws Exception {
+        List<HttpRange> ranges = HttpRange.parse("bytes=500-599, 0-99, 50-150, 151-200", 1000);
+
+        assertEquals(2, ranges.size());
+        assertEquals("bytes 0-200/1000", ranges.get(0).toContentRange(1000));
+        assertEquals("bytes 500-599/1000", ranges.get(1).toContentRange(1000));
+    }
+
+    @Test
+    void testThatInvalidRangesAreIgnored() throws Exception {
+        assertTrue(HttpRange.parse(null, 1000).isEmpty());
+        assertTrue(HttpRange.parse("items=0-1", 1000).isEmpty());
+        assertTrue(HttpRange.parse("bytes=abc", 1000).isEmpty());
+        assertTrue(HttpRange.parse("bytes=10-5", 1000).isEmpty());
+    }
+
+    @Test
+    void testThatUnsatisfiableRangesThrow() {
+        assertThrows(RangeNotSatisfiableException.class, () -> HttpRange.parse("bytes=1000-", 1000));
+        assertThrows(RangeNotSatisfiableException.class, () -> HttpRange.parse("bytes=0-10", 0));
+    }
+}
@@ -0,0 +1,91 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import dev.startupstack.storageservice.objects.models.ObjectListModel;
+import dev.startupstack.storageservice.utils.ListingResponseBuilder;
+
+/**
+ * ListingResponseBuilderTest
+ */
+public class ListingResponseBuilderTest {
+
+    ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+    ObjectInfoModel object(String name, long size) {
+        ObjectInfoModel object = new ObjectInfoModel();
+        object.setObjectName(name);
+        object.setObjectSize(size);
+        return object;
+    }
+
+    ObjectListModel list(Response response) throws Exception {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(output);
+        return mapper.readValue(output.toByteArray(), ObjectListModel.class);
+    }
+
+    @Test
+    void testThatAPageIsStreamedAsAnObjectList() throws Exception {
+        Iterator<ObjectInfoModel> objects = Arrays.asList(object("docs/a.txt", 1), object("docs/b.txt", 2))
+                .iterator();
+
+        // The marker is only known once the backend has iterated the page
+        Response response = ListingResponseBuilder.build(mapper, "repo", "docs/", objects,
+                () -> objects.hasNext() ? "not iterated" : "docs/b.txt");
+
+        assertEquals(200, response.getStatus());
+        ObjectListModel list = list(response);
+        assertEquals("repo", list.getRepository());
+        assertEquals("docs/", list.getPrefix());
+        assertEquals(2, list.getObjects().size());
+        assertEquals("docs/a.txt", list.getObjects().get(0).getObjectName());
+        assertEquals(2L, list.getObjects().get(1).getObjectSize());
+        assertEquals("docs/b.txt", ListingResponseBuilder.decodeToken(list.getContinuationToken()));
+    }
+
+    @Test
+    void testThatTheLastPageHasNoContinuationToken() throws Exception {
+        ObjectListModel list = list(ListingResponseBuilder.build(mapper, "repo", null,
+                Collections.<ObjectInfoModel>emptyIterator(), () -> null));
+
+        assertNull(list.getPrefix());
+        assertEquals(0, list.getObjects().size());
+        assertNull(list.getContinuationToken());
+    }
+
+    @Test
+    void testThatTokensRoundTrip() {
+        String marker = "2!84!MDAwMDE4IWRvY3MvbGF1dGVuIMOkw7bDvC50eHQhMDAwMDI4ITk5OTktMTItMzFUMjM6NTk6NTkuOTk5OTk5OVoh";
+        String token = ListingResponseBuilder.encodeToken(marker);
+
+        assertFalse(token.contains("/") || token.contains("+") || token.contains("="), "Token is not URL safe");
+        assertEquals(marker, ListingResponseBuilder.decodeToken(token));
+        String unicode = "docs/\u00e4\u00f6\u00fc.txt";
+        assertEquals(unicode, ListingResponseBuilder.decodeToken(ListingResponseBuilder.encodeToken(unicode)));
+        assertNull(ListingResponseBuilder.encodeToken(""));
+        assertNull(ListingResponseBuilder.decodeToken(null));
+    }
+
+    @Test
+    void testThatInvalidTokensAreRejected() {
+        assertThrows(BadRequestException.class, () -> ListingResponseBuilder.decodeToken("not a token!"));
+    }
+}
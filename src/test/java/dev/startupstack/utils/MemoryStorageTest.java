@@ -0,0 +1,97 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.NotFoundException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.memory.MemoryStorage;
+import dev.startupstack.storageservice.utils.memory.MemoryStorage.StoredObject;
+
+/**
+ * MemoryStorageTest
+ */
+public class MemoryStorageTest {
+
+    @Test
+    public void testThatObjectsCanBeStoredAndRead() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+        assertTrue(storage.createRepository("repo", Collections.singletonMap("tenant_id", "tenant")));
+        assertFalse(storage.createRepository("repo", Collections.emptyMap()));
+
+        byte[] data = new byte[200_000];
+        new Random(42).nextBytes(data);
+        StoredObject object = storage.putObject("repo", "object", new ByteArrayInputStream(data), "text/plain",
+                Collections.emptyMap());
+
+        assertEquals(data.length, object.getSize());
+        assertEquals(DigestUtils.md5Hex(data), object.getMd5());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        storage.getObject("repo", "object").write(70_000, 1_000, output);
+        assertArrayEquals(Arrays.copyOfRange(data, 70_000, 71_000), output.toByteArray());
+    }
+
+    @Test
+    public void testThatRangesSpanningBuffersCanBeRead() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+        storage.createRepository("repo", Collections.emptyMap());
+
+        byte[] data = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(data);
+        StoredObject object = storage.putObject("repo", "object", new ByteArrayInputStream(data), "text/plain",
+                Collections.emptyMap());
+        assertEquals(data.length, object.getSize());
+
+        for (int[] range : new int[][] { { 0, data.length }, { 65_000, 1_000 }, { 1_000_000, 2_000_000 },
+                { data.length - 1, 1 } }) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            object.write(range[0], range[1], output);
+            assertArrayEquals(Arrays.copyOfRange(data, range[0], range[0] + range[1]), output.toByteArray());
+        }
+    }
+
+    @Test
+    public void testThatDeletedRepositoryIsGone() {
+        MemoryStorage storage = new MemoryStorage();
+        storage.createRepository("repo", Collections.emptyMap());
+
+        assertTrue(storage.deleteRepository("repo"));
+        assertNull(storage.getRepositoryMetadata("repo"));
+        assertThrows(NotFoundException.class, () -> storage.getObject("repo", "object"));
+    }
+
+    @Test
+    public void testThatListingResumesAfterLastName() throws Exception {
+        MemoryStorage storage = new MemoryStorage();
+        storage.createRepository("repo", Collections.emptyMap());
+        for (String name : Arrays.asList("b/2", "a/1", "b/1", "c/1", "b/3")) {
+            storage.putObject("repo", name, new ByteArrayInputStream(new byte[0]), "text/plain",
+                    Collections.emptyMap());
+        }
+
+        assertEquals(Arrays.asList("b/1", "b/2"), names(storage.listObjects("repo", "b/", null, 2)));
+        assertEquals(Arrays.asList("b/3"), names(storage.listObjects("repo", "b/", "b/2", 2)));
+        assertEquals(Arrays.asList("b/1", "b/2", "b/3", "c/1"), names(storage.listObjects("repo", null, "a/1", 10)));
+    }
+
+    private static List<String> names(List<Map.Entry<String, StoredObject>> entries) {
+        return entries.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,269 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.startupstack.storageservice.objects.ObjectCache.Fill;
+import dev.startupstack.storageservice.objects.ObjectCache.ObjectFiller;
+import dev.startupstack.storageservice.objects.ObjectDiskCache;
+import dev.startupstack.storageservice.objects.ObjectDiskCache.CachedFile;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.TransferExecutor;
+import dev.startupstack.utils.DownloadResponseBuilderTest.BufferedAsyncOutputStream;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * ObjectDiskCacheTest
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class ObjectDiskCacheTest {
+
+    static final int OBJECT_SIZE = 10_000;
+
+    TransferExecutor transferExecutor = new TransferExecutor(2);
+
+    MetricRegistry registry;
+
+    @AfterAll
+    void shutdown() {
+        transferExecutor.shutdown();
+    }
+
+    ObjectDiskCache cache(Path directory, long maxBytes) {
+        this.registry = new MetricsRegistryImpl();
+        return new ObjectDiskCache(directory.toString(), maxBytes, OBJECT_SIZE, transferExecutor, registry);
+    }
+
+    byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    byte[] read(CachedFile cached, long offset, long count) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        cached.write(offset, count, output);
+        return output.toByteArray();
+    }
+
+    long misses() {
+        return registry.getCounters().get(new MetricID("object_disk_cache_misses")).getCount();
+    }
+
+    /**
+     * Fills the cache the way a download reading the whole object does
+     */
+    byte[] download(ObjectDiskCache cache, String objectName, String etag, byte[] data) throws IOException {
+        ByteArrayOutputStream download = new ByteArrayOutputStream();
+        try (Fill fill = cache.startFill("repo", objectName, etag, data.length)) {
+            OutputStream output = fill.tee(download);
+            output.write(data, 0, 1000);
+            output.write(data, 1000, data.length - 1000);
+            fill.complete();
+        }
+        return download.toByteArray();
+    }
+
+    @Test
+    void testThatAFullDownloadFillsTheCache(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+        byte[] data = data(OBJECT_SIZE);
+
+        assertNull(cache.get("repo", "object", "etag", data.length));
+        assertArrayEquals(data, download(cache, "object", "etag", data));
+
+        try (CachedFile cached = cache.get("repo", "object", "etag", data.length)) {
+            assertNotNull(cached);
+            assertArrayEquals(Arrays.copyOfRange(data, 100, 300), read(cached, 100, 200));
+        }
+        assertEquals(data.length, cache.getSize());
+        assertEquals(0.5, cache.getHitRatio());
+    }
+
+    @Test
+    void testThatAnObjectIsOnlyFilledOnce(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+
+        try (Fill fill = cache.startFill("repo", "object", "etag", OBJECT_SIZE)) {
+            assertNull(cache.startFill("repo", "object", "etag", OBJECT_SIZE), "A second fill was started");
+        }
+        try (Fill fill = cache.startFill("repo", "object", "etag", OBJECT_SIZE)) {
+            assertNotNull(fill, "A dropped fill still blocks the object");
+        }
+    }
+
+    @Test
+    void testThatIncompleteFillsAreDropped(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+        byte[] data = data(OBJECT_SIZE);
+
+        try (Fill fill = cache.startFill("repo", "partial", "etag", data.length)) {
+            fill.append(data, 0, data.length - 1);
+            fill.complete();
+        }
+        try (Fill fill = cache.startFill("repo", "aborted", "etag", data.length)) {
+            fill.append(data, 0, data.length);
+        }
+
+        assertNull(cache.get("repo", "partial", "etag", data.length));
+        assertNull(cache.get("repo", "aborted", "etag", data.length));
+        assertEquals(0, cache.getSize());
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count(), "Temporary files were left behind");
+        }
+    }
+
+    @Test
+    void testThatObjectsAreFilledInTheBackground(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+        byte[] data = data(OBJECT_SIZE);
+
+        cache.fill("repo", "object", "etag", data.length, output -> output.write(data));
+        for (int i = 0; i < 100 && cache.getSize() == 0; i++) {
+            Thread.sleep(20);
+        }
+
+        try (CachedFile cached = cache.get("repo", "object", "etag", data.length)) {
+            assertArrayEquals(data, read(cached, 0, data.length));
+        }
+    }
+
+    @Test
+    void testThatAChangedObjectIsAMiss(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+        byte[] data = data(OBJECT_SIZE);
+        download(cache, "object", "etag", data);
+
+        assertNull(cache.get("repo", "object", "changed", data.length));
+        assertEquals(0, cache.getSize(), "The stale entry was kept");
+    }
+
+    @Test
+    void testThatEvictedObjectsStayReadableWhileOpen(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 2 * OBJECT_SIZE);
+        byte[] first = data(OBJECT_SIZE);
+        download(cache, "first", "etag", first);
+        download(cache, "second", "etag", data(OBJECT_SIZE));
+
+        Path file;
+        try (CachedFile cached = cache.get("repo", "first", "etag", OBJECT_SIZE)) {
+            download(cache, "third", "etag", data(OBJECT_SIZE));
+            download(cache, "fourth", "etag", data(OBJECT_SIZE));
+
+            file = cached.getFile();
+            assertTrue(Files.exists(file), "The file of an object being read was deleted");
+            assertArrayEquals(first, read(cached, 0, OBJECT_SIZE));
+        }
+        assertFalse(Files.exists(file), "The file of an evicted object was kept");
+        assertNull(cache.get("repo", "first", "etag", OBJECT_SIZE));
+        assertEquals(2 * OBJECT_SIZE, cache.getSize());
+    }
+
+    @Test
+    void testThatHitsAreReadWithoutBlocking(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+        byte[] data = data(OBJECT_SIZE);
+        download(cache, "object", "etag", data);
+
+        CachedFile cached = cache.get("repo", "object", "etag", data.length);
+        AsyncRangeWriter writer = cached.toAsyncWriter();
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+        writer.write(100, 5_000, output).toCompletableFuture().join();
+        writer.write(0, data.length, output).toCompletableFuture().join();
+        writer.close();
+
+        byte[] expected = Arrays.copyOf(Arrays.copyOfRange(data, 100, 5_100), 5_000 + data.length);
+        System.arraycopy(data, 0, expected, 5_000, data.length);
+        assertArrayEquals(expected, output.bytes.toByteArray());
+
+        cache.invalidate("repo", "object");
+        assertFalse(Files.exists(cached.getFile()), "Closing the writer did not close the hit");
+    }
+
+    @Test
+    void testThatFillersKeepTheObjectAfterTheHitWasClosed(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, OBJECT_SIZE);
+        byte[] data = data(OBJECT_SIZE);
+        download(cache, "object", "etag", data);
+
+        ObjectFiller filler;
+        Path file;
+        try (CachedFile cached = cache.get("repo", "object", "etag", OBJECT_SIZE)) {
+            filler = cached.toFiller();
+            file = cached.getFile();
+        }
+        download(cache, "other", "etag", data(OBJECT_SIZE));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        filler.write(output);
+        assertArrayEquals(data, output.toByteArray());
+        filler.close();
+        filler.close();
+        assertFalse(Files.exists(file), "The file of an evicted object was kept");
+    }
+
+    @Test
+    void testThatFillersAreClosedWhenNoFillStarts(@TempDir Path directory) throws Exception {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+        AtomicInteger closed = new AtomicInteger();
+
+        cache.fill("repo", "large", "etag", OBJECT_SIZE + 1, new ObjectFiller() {
+            @Override
+            public void write(OutputStream output) {
+            }
+
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    void testThatUncacheableObjectsAreNotCountedAsMisses(@TempDir Path directory) {
+        ObjectDiskCache cache = cache(directory, 1_000_000);
+
+        assertNull(cache.get("repo", "large", "etag", OBJECT_SIZE + 1));
+        assertNull(cache.startFill("repo", "large", "etag", OBJECT_SIZE + 1));
+        assertEquals(0, misses());
+
+        assertNull(cache.get("repo", "small", "etag", OBJECT_SIZE));
+        assertEquals(1, misses());
+    }
+
+    @Test
+    void testThatOnlyCacheFilesAreRemovedOnStart(@TempDir Path directory) throws Exception {
+        Path other = Files.write(directory.resolve("notes.txt"), new byte[] { 1 });
+        Files.write(directory.resolve("leftover.object"), new byte[] { 1 });
+        Files.write(directory.resolve("leftover.tmp"), new byte[] { 1 });
+
+        cache(directory, 1_000_000);
+
+        assertTrue(Files.exists(other));
+        assertFalse(Files.exists(directory.resolve("leftover.object")));
+        assertFalse(Files.exists(directory.resolve("leftover.tmp")));
+    }
+}
@@ -0,0 +1,70 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.objects.ObjectInfoCache;
+import dev.startupstack.storageservice.objects.models.ObjectInfoModel;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * ObjectInfoCacheTest
+ */
+public class ObjectInfoCacheTest {
+
+    MetricRegistry registry = new MetricsRegistryImpl();
+
+    ObjectInfoCache cache = new ObjectInfoCache(100, 60, false, registry);
+
+    static ObjectInfoModel info(String etag) {
+        ObjectInfoModel info = new ObjectInfoModel();
+        info.setEtag(etag);
+        return info;
+    }
+
+    long count(String name) {
+        return registry.getCounters().get(new MetricID(name)).getCount();
+    }
+
+    @Test
+    void testThatLookupsAreCountedAsHitsAndMisses() {
+        ObjectInfoModel info = info("\"1\"");
+
+        assertNull(cache.get("repository", "object"));
+        cache.put("repository", "object", info, cache.generation());
+
+        assertSame(info, cache.get("repository", "object"));
+        assertEquals(1, count("object_info_cache_hits"));
+        assertEquals(1, count("object_info_cache_misses"));
+    }
+
+    @Test
+    void testThatALookupRacingAnUploadIsNotPutBack() {
+        long generation = cache.generation();
+        ObjectInfoModel before = info("\"1\"");
+        cache.invalidate("repository", "object");
+        cache.put("repository", "object", before, generation);
+
+        assertNull(cache.get("repository", "object"), "The info from before the upload was cached");
+
+        ObjectInfoModel after = info("\"2\"");
+        cache.put("repository", "object", after, cache.generation());
+        assertSame(after, cache.get("repository", "object"));
+    }
+
+    @Test
+    void testThatALookupRacingARepositoryDeleteIsNotPutBack() {
+        cache.put("repository", "cached", info("\"1\""), cache.generation());
+        long generation = cache.generation();
+        cache.invalidateRepository("repository");
+        cache.put("repository", "object", info("\"1\""), generation);
+
+        assertNull(cache.get("repository", "cached"));
+        assertNull(cache.get("repository", "object"), "The info from before the delete was cached");
+    }
+}
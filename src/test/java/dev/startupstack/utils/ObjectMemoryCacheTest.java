@@ -0,0 +1,186 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import dev.startupstack.storageservice.objects.ObjectCache.Fill;
+import dev.startupstack.storageservice.objects.ObjectMemoryCache;
+import dev.startupstack.storageservice.objects.ObjectMemoryCache.CachedObject;
+import dev.startupstack.storageservice.utils.TransferExecutor;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * ObjectMemoryCacheTest
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class ObjectMemoryCacheTest {
+
+    static final int OBJECT_SIZE = 1000;
+
+    TransferExecutor transferExecutor = new TransferExecutor(2);
+
+    MetricRegistry registry;
+
+    @AfterAll
+    void shutdown() {
+        transferExecutor.shutdown();
+    }
+
+    ObjectMemoryCache cache(long maxBytes) {
+        this.registry = new MetricsRegistryImpl();
+        return new ObjectMemoryCache(maxBytes, OBJECT_SIZE, 1000, transferExecutor, registry);
+    }
+
+    byte[] data(int size) {
+        byte[] data = new byte[size];
+        new Random().nextBytes(data);
+        return data;
+    }
+
+    long rejections() {
+        return registry.getCounters().get(new MetricID("object_memory_cache_rejections")).getCount();
+    }
+
+    /**
+     * Fills the cache on the second miss, which the doorkeeper admits
+     */
+    void fill(ObjectMemoryCache cache, String objectName, byte[] data) {
+        assertNull(cache.get("repo", objectName, "etag", data.length));
+        try (Fill fill = cache.startFill("repo", objectName, "etag", data.length)) {
+            if (fill != null) {
+                fill.append(data, 0, data.length);
+                fill.complete();
+                return;
+            }
+        }
+        try (Fill fill = cache.startFill("repo", objectName, "etag", data.length)) {
+            assertNotNull(fill, "The second miss was not admitted");
+            fill.append(data, 0, data.length);
+            fill.complete();
+        }
+    }
+
+    byte[] read(CachedObject cached, long offset, long count) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        cached.write(offset, count, output);
+        return output.toByteArray();
+    }
+
+    @Test
+    void testThatObjectsAreAdmittedOnTheSecondMiss() throws Exception {
+        ObjectMemoryCache cache = cache(100_000);
+        byte[] data = data(OBJECT_SIZE);
+
+        assertNull(cache.startFill("repo", "object", "etag", data.length), "The first miss was admitted");
+        assertEquals(1, rejections());
+
+        try (Fill fill = cache.startFill("repo", "object", "etag", data.length)) {
+            fill.append(data, 0, data.length);
+            fill.complete();
+        }
+        try (CachedObject cached = cache.get("repo", "object", "etag", data.length)) {
+            assertArrayEquals(Arrays.copyOfRange(data, 10, 20), read(cached, 10, 10));
+            assertArrayEquals(Arrays.copyOfRange(data, 500, 600), cached.toByteArray(500, 100));
+        }
+        assertEquals(1, rejections());
+    }
+
+    @Test
+    void testThatTheLeastRecentlyUsedObjectIsEvictedAndFreed() throws Exception {
+        ObjectMemoryCache cache = cache(2 * OBJECT_SIZE);
+        fill(cache, "first", data(OBJECT_SIZE));
+        fill(cache, "second", data(OBJECT_SIZE));
+        cache.get("repo", "first", "etag", OBJECT_SIZE).close();
+
+        fill(cache, "third", data(OBJECT_SIZE));
+
+        assertNull(cache.get("repo", "second", "etag", OBJECT_SIZE));
+        try (CachedObject cached = cache.get("repo", "first", "etag", OBJECT_SIZE)) {
+            assertNotNull(cached);
+        }
+        assertEquals(2 * OBJECT_SIZE, cache.getSize());
+        assertEquals(2 * OBJECT_SIZE, cache.getAllocated());
+    }
+
+    @Test
+    void testThatObjectsBeingReadCountTowardsMaxBytes() throws Exception {
+        ObjectMemoryCache cache = cache(OBJECT_SIZE);
+        byte[] data = data(OBJECT_SIZE);
+        fill(cache, "first", data);
+
+        try (CachedObject cached = cache.get("repo", "first", "etag", OBJECT_SIZE)) {
+            cache.invalidate("repo", "first");
+            assertEquals(0, cache.getSize());
+            assertEquals(OBJECT_SIZE, cache.getAllocated());
+
+            assertNull(cache.startFill("repo", "second", "etag", OBJECT_SIZE));
+            assertNull(cache.startFill("repo", "second", "etag", OBJECT_SIZE), "No room was left but admitted");
+            assertArrayEquals(data, read(cached, 0, OBJECT_SIZE));
+        }
+        assertEquals(0, cache.getAllocated());
+
+        fill(cache, "second", data(OBJECT_SIZE));
+        assertEquals(OBJECT_SIZE, cache.getAllocated());
+    }
+
+    @Test
+    void testThatAChangedObjectIsAMiss() throws Exception {
+        ObjectMemoryCache cache = cache(100_000);
+        fill(cache, "object", data(OBJECT_SIZE));
+
+        assertNull(cache.get("repo", "object", "changed", OBJECT_SIZE));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getAllocated());
+    }
+
+    @Test
+    void testThatObjectsOfTheWrongSizeAreDropped() throws Exception {
+        ObjectMemoryCache cache = cache(100_000);
+        byte[] data = data(OBJECT_SIZE + 1);
+        assertNull(cache.startFill("repo", "object", "etag", OBJECT_SIZE));
+
+        try (Fill fill = cache.startFill("repo", "object", "etag", OBJECT_SIZE)) {
+            fill.append(data, 0, OBJECT_SIZE - 1);
+            fill.append(data, OBJECT_SIZE - 1, 2);
+            fill.complete();
+        }
+        assertNull(cache.get("repo", "object", "etag", OBJECT_SIZE));
+
+        try (Fill fill = cache.startFill("repo", "object", "etag", OBJECT_SIZE)) {
+            fill.append(data, 0, OBJECT_SIZE - 1);
+            fill.complete();
+        }
+        assertNull(cache.get("repo", "object", "etag", OBJECT_SIZE));
+        assertEquals(0, cache.getAllocated());
+    }
+
+    @Test
+    void testThatObjectsAreFilledInTheBackground() throws Exception {
+        ObjectMemoryCache cache = cache(100_000);
+        byte[] data = data(OBJECT_SIZE);
+
+        cache.fill("repo", "object", "etag", data.length, output -> output.write(data));
+        cache.fill("repo", "object", "etag", data.length, output -> output.write(data));
+        for (int i = 0; i < 100 && cache.getSize() == 0; i++) {
+            Thread.sleep(20);
+        }
+
+        try (CachedObject cached = cache.get("repo", "object", "etag", data.length)) {
+            assertArrayEquals(data, read(cached, 0, data.length));
+        }
+    }
+}
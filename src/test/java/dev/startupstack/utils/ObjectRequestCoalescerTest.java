@@ -0,0 +1,106 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.objects.ObjectRequestCoalescer;
+import dev.startupstack.storageservice.utils.SharedDownload;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * ObjectRequestCoalescerTest
+ */
+public class ObjectRequestCoalescerTest {
+
+    static final int OBJECT_SIZE = 100;
+
+    MetricRegistry registry = new MetricsRegistryImpl();
+
+    ObjectRequestCoalescer coalescer = new ObjectRequestCoalescer(OBJECT_SIZE, new AzureCallMetrics(registry));
+
+    /**
+     * The downloads started, which the test completes
+     */
+    List<CompletableFuture<Void>> started = new ArrayList<>();
+
+    List<SharedDownload> completed = new ArrayList<>();
+
+    Function<SharedDownload, CompletionStage<Void>> downloader = download -> {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        started.add(result);
+        return result;
+    };
+
+    SharedDownload download(boolean start) {
+        return coalescer.download("repo", "object", "etag", OBJECT_SIZE, start, downloader, completed::add);
+    }
+
+    long coalesced() {
+        Counter counter = registry.getCounters().get(new MetricID("azure_storage_calls_coalesced",
+                new Tag("operation", AzureCallMetrics.DOWNLOAD)));
+        return counter == null ? 0 : counter.getCount();
+    }
+
+    @Test
+    void testThatConcurrentRequestsJoinOneDownload() throws Exception {
+        assertNull(download(false), "A range request started a download");
+
+        SharedDownload first = download(true);
+        assertNotNull(first);
+        assertSame(first, download(true));
+        assertSame(first, download(false));
+        assertEquals(1, started.size());
+        assertEquals(2, coalesced());
+
+        first.write(new byte[OBJECT_SIZE]);
+        started.get(0).complete(null);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        first.transferTo(0, OBJECT_SIZE, output);
+        assertArrayEquals(new byte[OBJECT_SIZE], output.toByteArray());
+        assertEquals(List.of(first), completed);
+
+        assertNull(download(false), "A completed download was joined");
+    }
+
+    @Test
+    void testThatAFailedDownloadIsForgotten() {
+        SharedDownload first = download(true);
+        started.get(0).completeExceptionally(new IOException("connection reset"));
+
+        IOException exc = assertThrows(IOException.class,
+                () -> first.transferTo(0, OBJECT_SIZE, new ByteArrayOutputStream()));
+        assertEquals("connection reset", exc.getMessage());
+        assertEquals(List.of(), completed);
+
+        SharedDownload retry = download(true);
+        assertNotNull(retry);
+        assertEquals(2, started.size());
+    }
+
+    @Test
+    void testThatLargeObjectsAreNotShared() {
+        assertNull(coalescer.download("repo", "object", "etag", OBJECT_SIZE + 1, true, downloader, completed::add));
+        assertNull(coalescer.download("repo", "object", null, OBJECT_SIZE, true, downloader, completed::add));
+        assertEquals(0, started.size());
+    }
+}
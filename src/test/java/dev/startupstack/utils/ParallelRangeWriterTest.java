@@ -0,0 +1,98 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.ParallelRangeWriter;
+import dev.startupstack.storageservice.utils.ParallelRangeWriter.RangeReader;
+import dev.startupstack.utils.DownloadResponseBuilderTest.BufferedAsyncOutputStream;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * ParallelRangeWriterTest
+ */
+public class ParallelRangeWriterTest {
+
+    byte[] data = new byte[100_000];
+
+    AtomicInteger calls = new AtomicInteger();
+
+    AtomicInteger inFlight = new AtomicInteger();
+
+    AtomicInteger maxInFlight = new AtomicInteger();
+
+    /**
+     * Emits every range in two buffers, completing later chunks sooner so they
+     * arrive out of order
+     */
+    RangeReader source = (offset, count) -> {
+        calls.incrementAndGet();
+        int half = (int) count / 2;
+        return Mono.delay(Duration.ofMillis(Math.max(1, 20 - offset / 5_000)))
+                .doOnSubscribe(subscription -> maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max))
+                .thenMany(Flux.just(ByteBuffer.wrap(data, (int) offset, half),
+                        ByteBuffer.wrap(data, (int) offset + half, (int) count - half)))
+                .doOnTerminate(inFlight::decrementAndGet);
+    };
+
+    ParallelRangeWriterTest() {
+        new Random().nextBytes(data);
+    }
+
+    byte[] write(ParallelRangeWriter writer, long offset, long count) {
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+        writer.write(offset, count, output).toCompletableFuture().join();
+        return output.bytes.toByteArray();
+    }
+
+    @Test
+    void testThatChunksAreWrittenInOrder() {
+        byte[] written = write(new ParallelRangeWriter(source, 1000, 4, 0), 10, 99_990);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 10, 100_000), written);
+        assertEquals(100, calls.get());
+    }
+
+    @Test
+    void testThatSmallRangesAreNotSplit() {
+        byte[] written = write(new ParallelRangeWriter(source, 1000, 4, 50_000), 0, 20_000);
+
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 20_000), written);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testThatReadsAreBoundedByTheWindow() {
+        write(new ParallelRangeWriter(source, 1000, 3, 0), 0, 50_000);
+
+        assertEquals(50, calls.get());
+        assertTrue(maxInFlight.get() <= 3, "More chunks than the window were read at once");
+        assertTrue(maxInFlight.get() > 1, "The chunks were not read concurrently");
+    }
+
+    @Test
+    void testThatFailedReadsFailTheWrite() {
+        RangeReader failing = (offset, count) -> offset < 5_000 ? source.read(offset, count)
+                : Flux.error(new IOException("Read failed"));
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+
+        CompletionException exc = assertThrows(CompletionException.class,
+                () -> new ParallelRangeWriter(failing, 1000, 4, 0).write(0, 10_000, output).toCompletableFuture()
+                        .join());
+        assertTrue(exc.getCause() instanceof IOException);
+        assertTrue(output.bytes.size() <= 5_000, "Bytes after the failed chunk were written");
+    }
+}
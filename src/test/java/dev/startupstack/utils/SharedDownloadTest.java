@@ -0,0 +1,100 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.SharedDownload;
+import dev.startupstack.utils.DownloadResponseBuilderTest.BufferedAsyncOutputStream;
+
+/**
+ * SharedDownloadTest
+ */
+public class SharedDownloadTest {
+
+    byte[] data = new byte[1000];
+
+    {
+        new Random().nextBytes(data);
+    }
+
+    @Test
+    void testThatPendingReadsCompleteAsBytesArrive() throws Exception {
+        SharedDownload download = new SharedDownload(data.length);
+        BufferedAsyncOutputStream output = new BufferedAsyncOutputStream();
+
+        download.write(data, 0, 100);
+        CompletableFuture<Void> read = download.transferToAsync(50, 500, output).toCompletableFuture();
+        assertFalse(read.isDone());
+        assertArrayEquals(Arrays.copyOfRange(data, 50, 100), output.bytes.toByteArray());
+
+        download.write(ByteBuffer.wrap(data, 100, 900));
+        read.get(1, TimeUnit.SECONDS);
+        assertArrayEquals(Arrays.copyOfRange(data, 50, 550), output.bytes.toByteArray());
+    }
+
+    @Test
+    void testThatBlockingReadsWaitForTheDownload() throws Exception {
+        SharedDownload download = new SharedDownload(data.length);
+        CompletableFuture<byte[]> read = CompletableFuture.supplyAsync(() -> {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            try {
+                download.transferTo(0, data.length, output);
+            } catch (IOException exc) {
+                throw new RuntimeException(exc);
+            }
+            return output.toByteArray();
+        });
+
+        download.write(data, 0, 500);
+        download.write(data, 500, 500);
+        download.close();
+
+        assertArrayEquals(data, read.get(1, TimeUnit.SECONDS));
+        assertTrue(download.completion().toCompletableFuture().isDone());
+    }
+
+    @Test
+    void testThatAFailedDownloadFailsItsReaders() throws Exception {
+        SharedDownload download = new SharedDownload(data.length);
+        download.write(data, 0, 100);
+        CompletableFuture<Void> pending = download.transferToAsync(0, data.length, new BufferedAsyncOutputStream())
+                .toCompletableFuture();
+
+        download.fail(new IOException("connection reset"));
+
+        ExecutionException exc = assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.SECONDS));
+        assertEquals("connection reset", exc.getCause().getMessage());
+        assertThrows(IOException.class, () -> download.transferTo(0, data.length, new ByteArrayOutputStream()));
+        assertTrue(download.completion().toCompletableFuture().isCompletedExceptionally());
+
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        download.transferTo(0, 100, head);
+        assertArrayEquals(Arrays.copyOfRange(data, 0, 100), head.toByteArray());
+    }
+
+    @Test
+    void testThatTheDownloadMustHaveTheExpectedSize() throws Exception {
+        SharedDownload incomplete = new SharedDownload(data.length);
+        incomplete.write(data, 0, 999);
+        incomplete.close();
+        assertTrue(incomplete.completion().toCompletableFuture().isCompletedExceptionally());
+
+        SharedDownload oversized = new SharedDownload(data.length);
+        oversized.write(data);
+        assertThrows(IOException.class, () -> oversized.write(1));
+    }
+}
@@ -0,0 +1,64 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+
+import dev.startupstack.storageservice.utils.cache.SingleFlight;
+
+/**
+ * SingleFlightTest
+ */
+@TestInstance(Lifecycle.PER_CLASS)
+public class SingleFlightTest {
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @Test
+    void testThatConcurrentCallsAreCoalesced() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger joined = new AtomicInteger();
+        SingleFlight<String, String> flight = new SingleFlight<>(joined::incrementAndGet);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Future<String> first = executor.submit(() -> flight.execute("key", () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException exc) {
+                Thread.currentThread().interrupt();
+            }
+            return "first";
+        }));
+        started.await();
+        Future<String> second = executor.submit(() -> flight.execute("key", () -> {
+            calls.incrementAndGet();
+            return "second";
+        }));
+        while (joined.get() == 0) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("first", first.get());
+        assertEquals("first", second.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.size());
+    }
+
+    @AfterAll
+    void teardown() {
+        executor.shutdownNow();
+    }
+}
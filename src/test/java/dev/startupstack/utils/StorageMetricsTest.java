@@ -0,0 +1,78 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricID;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Tag;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.AsyncRangeWriter;
+import dev.startupstack.storageservice.utils.DownloadResponseBuilder.RangeWriter;
+import dev.startupstack.storageservice.utils.StorageMetrics;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * StorageMetricsTest
+ */
+public class StorageMetricsTest {
+
+    MetricRegistry registry = new MetricsRegistryImpl();
+
+    StorageMetrics metrics = new StorageMetrics(registry);
+
+    long inFlight() {
+        return registry.getConcurrentGauges().get(new MetricID("storage_downloads_in_flight")).getCount();
+    }
+
+    Counter downloaded(String tenantID) {
+        return registry.getCounters().get(new MetricID("storage_downloaded_bytes", new Tag("tenant", tenantID)));
+    }
+
+    @Test
+    void testThatADownloadIsMeteredOncePerResponse() throws Exception {
+        RangeWriter writer = metrics.meterDownload("tenant",
+                (offset, count, output) -> output.write(new byte[(int) count]));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        writer.write(0, 100, output);
+        assertEquals(1, inFlight());
+        writer.write(500, 50, output);
+        assertEquals(1, inFlight(), "Every range of a multipart response was counted as a download");
+
+        writer.close();
+        writer.close();
+        assertEquals(0, inFlight());
+        assertEquals(150, downloaded("tenant").getCount());
+    }
+
+    @Test
+    void testThatResponsesWithoutABodyAreNotMetered() throws Exception {
+        RangeWriter writer = metrics.meterDownload("unmodified", (offset, count, output) -> {
+        });
+
+        writer.close();
+
+        assertEquals(0, inFlight());
+        assertNull(downloaded("unmodified"));
+    }
+
+    @Test
+    void testThatAsyncDownloadsAreMeteredUntilClosed() throws Exception {
+        AsyncRangeWriter writer = metrics.meterAsyncDownload("async",
+                (offset, count, output) -> CompletableFuture.completedFuture(null));
+
+        writer.write(0, 10, null).toCompletableFuture().join();
+        writer.write(20, 30, null).toCompletableFuture().join();
+        assertEquals(1, inFlight());
+
+        writer.close();
+        assertEquals(0, inFlight());
+        assertEquals(40, downloaded("async").getCount());
+    }
+}
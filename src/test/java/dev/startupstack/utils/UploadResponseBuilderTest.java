@@ -0,0 +1,92 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+
+import org.jboss.resteasy.plugins.providers.multipart.InputPart;
+import org.junit.jupiter.api.Test;
+
+import dev.startupstack.storageservice.objects.models.ObjectUploadResultModel;
+import dev.startupstack.storageservice.utils.UploadResponseBuilder;
+
+/**
+ * UploadResponseBuilderTest
+ */
+public class UploadResponseBuilderTest {
+
+    InputPart part(String contentDisposition) {
+        MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+        headers.putSingle("Content-Disposition", contentDisposition);
+        InputPart part = mock(InputPart.class);
+        when(part.getHeaders()).thenReturn(headers);
+        return part;
+    }
+
+    InputPart part() {
+        return part("form-data; name=\"object\"; filename=\"file.txt\"");
+    }
+
+    @Test
+    void testThatTheFilenameIsTakenFromTheContentDisposition() {
+        assertEquals("file.txt", UploadResponseBuilder.getFilename(part().getHeaders()));
+    }
+
+    @Test
+    void testThatEveryPartReportsItsOutcome() {
+        ObjectUploadResultModel stored = UploadResponseBuilder.uploadPart("repo", part(), inputPart -> 42);
+        assertEquals("file.txt", stored.getObjectName());
+        assertEquals(201, stored.getStatusCode());
+        assertEquals(42, stored.getObjectSize());
+
+        ObjectUploadResultModel rejected = UploadResponseBuilder.uploadPart("repo", part(), inputPart -> {
+            throw new WebApplicationException("Object is too large", 413);
+        });
+        assertEquals(413, rejected.getStatusCode());
+        assertEquals(-1, rejected.getObjectSize());
+
+        ObjectUploadResultModel failed = UploadResponseBuilder.uploadPart("repo", part(), inputPart -> {
+            throw new IOException("connection reset");
+        });
+        assertEquals(500, failed.getStatusCode());
+        assertEquals("FAILED - connection reset", failed.getMessage());
+
+        ObjectUploadResultModel unnamed = UploadResponseBuilder.uploadPart("repo", part("form-data; name=\"object\""),
+                inputPart -> 42);
+        assertNull(unnamed.getObjectName());
+        assertEquals(400, unnamed.getStatusCode());
+    }
+
+    @Test
+    void testThatAllStoredPartsAreCreated() {
+        List<ObjectUploadResultModel> results = Arrays.asList(new ObjectUploadResultModel("a", 201, "OK", 1),
+                new ObjectUploadResultModel("b", 201, "OK", 2));
+
+        Response response = UploadResponseBuilder.build(results);
+
+        assertEquals(201, response.getStatus());
+        assertSame(results, response.getEntity());
+    }
+
+    @Test
+    void testThatAFailedPartMakesAMultiStatus() {
+        List<ObjectUploadResultModel> results = Arrays.asList(new ObjectUploadResultModel("a", 201, "OK", 1),
+                new ObjectUploadResultModel("b", 500, "FAILED - connection reset", -1));
+
+        Response response = UploadResponseBuilder.build(results);
+
+        assertEquals(UploadResponseBuilder.MULTI_STATUS, response.getStatus());
+        assertSame(results, response.getEntity());
+    }
+}
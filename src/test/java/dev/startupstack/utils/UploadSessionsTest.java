@@ -0,0 +1,186 @@
+package dev.startupstack.utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response.Status;
+
+import com.azure.storage.blob.models.Block;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import dev.startupstack.FakeBlobContainer;
+import dev.startupstack.storageservice.objects.models.UploadSessionModel;
+import dev.startupstack.storageservice.utils.azure.AzureCallMetrics;
+import dev.startupstack.storageservice.utils.azure.BlockBlobUploader;
+import dev.startupstack.storageservice.utils.azure.UploadSessions;
+import io.smallrye.metrics.MetricsRegistryImpl;
+
+/**
+ * UploadSessionsTest
+ */
+public class UploadSessionsTest {
+
+    static final String OBJECT_NAME = "dir/a b%.txt";
+
+    FakeBlobContainer container = new FakeBlobContainer();
+
+    AzureCallMetrics azureCalls = new AzureCallMetrics(new MetricsRegistryImpl());
+
+    UploadSessions sessions = new UploadSessions(container.getClient(), azureCalls);
+
+    UploadSessionModel create(Long size) {
+        return sessions.create(OBJECT_NAME, "text/plain", size, OffsetDateTime.now().plusHours(1));
+    }
+
+    UploadSessionModel append(String sessionID, long offset, int length, int blockSize) throws IOException {
+        return sessions.append(sessionID, offset, new ByteArrayInputStream(new byte[length]), blockSize);
+    }
+
+    List<String> stagedIDs() {
+        return container.getStagedBlocks(OBJECT_NAME).stream().map(Block::getName).collect(Collectors.toList());
+    }
+
+    static void assertStatus(Status status, Executable executable) {
+        WebApplicationException exc = assertThrows(WebApplicationException.class, executable);
+        assertEquals(status.getStatusCode(), exc.getResponse().getStatus());
+    }
+
+    @Test
+    void testThatBlockIDsHoldTheSessionTagAndOffset() throws IOException {
+        UploadSessionModel session = create(null);
+
+        assertEquals(10, append(session.getSessionID(), 0, 10, 4).getOffset());
+
+        byte[] bits = ByteBuffer.allocate(Long.BYTES)
+                .putLong(UUID.fromString(session.getSessionID()).getLeastSignificantBits()).array();
+        byte[] tag = Arrays.copyOfRange(bits, Long.BYTES - BlockBlobUploader.TAG_LENGTH, Long.BYTES);
+        long[] offsets = { 0, 4, 8 };
+        List<String> ids = stagedIDs();
+        assertEquals(offsets.length, ids.size());
+        for (int i = 0; i < offsets.length; i++) {
+            byte[] id = Base64.getDecoder().decode(ids.get(i));
+            assertEquals(BlockBlobUploader.BLOCK_ID_LENGTH, id.length);
+            assertArrayEquals(tag, Arrays.copyOf(id, BlockBlobUploader.TAG_LENGTH));
+            assertEquals(offsets[i], ByteBuffer.wrap(id).getLong(BlockBlobUploader.TAG_LENGTH));
+            assertEquals(BlockBlobUploader.blockID(tag, offsets[i]), ids.get(i));
+        }
+        assertEquals(List.of(4, 4, 2),
+                container.getStagedBlocks(OBJECT_NAME).stream().map(Block::getSize).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testThatTheOffsetIsRecoveredFromTheBlockList() throws IOException {
+        UploadSessionModel created = create(20L);
+        append(created.getSessionID(), 0, 10, 4);
+
+        UploadSessionModel session = new UploadSessions(container.getClient(), azureCalls).get(created.getSessionID());
+
+        assertEquals(10, session.getOffset());
+        assertEquals(OBJECT_NAME, session.getObjectName());
+        assertEquals("text/plain", session.getContentType());
+        assertEquals(20L, session.getSize());
+        assertEquals(created.getExpiresAt(), session.getExpiresAt());
+    }
+
+    @Test
+    void testThatNewSessionsStartAtZero() {
+        UploadSessionModel session = create(null);
+
+        assertEquals(0, sessions.get(session.getSessionID()).getOffset());
+    }
+
+    @Test
+    void testThatRecoveryStopsAtGaps() throws IOException {
+        String sessionID = create(null).getSessionID();
+        append(sessionID, 0, 12, 4);
+        container.getStagedBlocks(OBJECT_NAME).remove(1);
+
+        assertEquals(4, sessions.get(sessionID).getOffset(), "Blocks after a gap were counted");
+        assertEquals(12, append(sessionID, 4, 8, 4).getOffset());
+        assertEquals(12, sessions.get(sessionID).getOffset());
+    }
+
+    @Test
+    void testThatBlocksOfOtherSessionsAreIgnored() throws IOException {
+        String first = create(null).getSessionID();
+        String second = create(null).getSessionID();
+        append(first, 0, 8, 4);
+        append(second, 0, 4, 4);
+        List<Block> staged = container.getStagedBlocks(OBJECT_NAME);
+        staged.add(new Block().setName(BlockBlobUploader.blockID(new byte[] { 1, 2, 3, 4, 5, 6 }, 8)).setSize(4));
+        staged.add(new Block().setName(Base64.getEncoder().encodeToString(new byte[4])).setSize(4));
+
+        assertEquals(8, sessions.get(first).getOffset());
+        assertEquals(4, sessions.get(second).getOffset());
+    }
+
+    @Test
+    void testThatAnAppendAtTheWrongOffsetIsAConflict() throws IOException {
+        String sessionID = create(null).getSessionID();
+        append(sessionID, 0, 4, 4);
+
+        assertStatus(Status.CONFLICT, () -> append(sessionID, 0, 4, 4));
+        assertStatus(Status.CONFLICT, () -> append(sessionID, 8, 4, 4));
+        assertEquals(1, stagedIDs().size(), "A misplaced chunk was staged");
+    }
+
+    @Test
+    void testThatAnIncompleteUploadIsAConflict() throws IOException {
+        UploadSessionModel created = create(10L);
+        String sessionID = created.getSessionID();
+        append(sessionID, 0, 6, 4);
+
+        assertStatus(Status.CONFLICT, () -> sessions.complete(sessionID, Map.of("tenant_id", "tenant")));
+        assertNull(container.getCommittedBlocks(OBJECT_NAME));
+        assertTrue(container.exists(UploadSessions.PREFIX + sessionID), "The session was closed");
+
+        append(sessionID, 6, 4, 4);
+        List<String> ids = stagedIDs();
+        UploadSessionModel session = sessions.complete(sessionID, Map.of("tenant_id", "tenant"));
+
+        assertEquals(10, session.getOffset());
+        assertEquals(ids, container.getCommittedBlocks(OBJECT_NAME));
+        assertEquals(Map.of("tenant_id", "tenant"), container.getMetadata(OBJECT_NAME));
+        assertFalse(container.exists(UploadSessions.PREFIX + sessionID), "The session was left open");
+        assertStatus(Status.NOT_FOUND, () -> sessions.get(sessionID));
+    }
+
+    @Test
+    void testThatUnknownOrExpiredSessionsAreNotFound() {
+        String expired = sessions.create(OBJECT_NAME, null, null, OffsetDateTime.now().minusSeconds(1))
+                .getSessionID();
+
+        assertStatus(Status.NOT_FOUND, () -> sessions.get("not-a-session"));
+        assertStatus(Status.NOT_FOUND, () -> sessions.get(UUID.randomUUID().toString()));
+        assertStatus(Status.NOT_FOUND, () -> sessions.get(expired));
+        assertStatus(Status.NOT_FOUND, () -> sessions.abort(expired));
+    }
+
+    @Test
+    void testThatAbortedSessionsAreClosed() {
+        String sessionID = create(null).getSessionID();
+
+        sessions.abort(sessionID);
+
+        assertFalse(container.exists(UploadSessions.PREFIX + sessionID));
+        assertStatus(Status.NOT_FOUND, () -> sessions.get(sessionID));
+    }
+}